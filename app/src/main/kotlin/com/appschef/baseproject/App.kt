@@ -23,7 +23,7 @@ class App : Application() {
 
         // Initialize the account helper
         AccountHelper.init(AccountConstant.ACCOUNT_TYPE, SampleAuthActivity::class.java,
-                Pair(AccountConstant.ACCOUNT_PROVIDER_PROFILE, TimeUnit.DAYS.toMillis(7)))
+                Pair(AccountConstant.ACCOUNT_PROVIDER_PROFILE, TimeUnit.DAYS.toSeconds(7)))
     }
 
     companion object {
@@ -2,7 +2,6 @@ package com.appschef.baseproject.account.profile
 
 import android.accounts.Account
 import android.content.ContentProviderClient
-import android.content.ContentResolver
 import android.content.Context
 import android.content.SyncResult
 import android.os.Bundle
@@ -17,43 +16,40 @@ import java.util.concurrent.TimeUnit
 
 import itsmagic.present.simpleaccountmanager.AccountHelper
 import itsmagic.present.simpleaccountmanager.sync.AccountSyncAdapter
+import itsmagic.present.simpleaccountmanager.sync.SyncPolicy
+import itsmagic.present.simpleaccountmanager.util.AccountDataCache
 
 /**
  * Created by Alvin Rusli on 11/10/2016.
  *
  * The sync adapter for user's profile.
  */
-class ProfileSyncAdapter(context: Context, autoInitialize: Boolean) : AccountSyncAdapter(context, autoInitialize) {
+class ProfileSyncAdapter(context: Context, autoInitialize: Boolean) : AccountSyncAdapter(context, autoInitialize, SYNC_POLICY) {
 
     override fun onBackgroundSync(account: Account, extras: Bundle, authority: String, provider: ContentProviderClient, syncResult: SyncResult) {
         Common.log(tag = javaClass.simpleName, message = "Performing sync for account[${account.name}]")
         try {
-            // Get the current account's profile
+            // Get the synced account's profile, which isn't necessarily the selected one
             val accountHelper = AccountHelper(context)
-            val data = accountHelper.accountBundle
-            val profile = Gson().fromJson(data?.getString(AccountConstant.ACCOUNT_PROFILE), Profile::class.java)
+            val profile = accountHelper.getAccountData(account.name, PROFILE_DECODER)
             if (profile == null) {
                 Common.log(Log.ERROR, javaClass.simpleName, "Profile is null, removing account")
-                accountHelper.removeAccount()
+                accountHelper.removeAccount(account.name)
                 return
             }
 
             try {
                 // TODO: 06/15/2017 This is where your actual sync process should be done
                 // Simulate a long sync process
+                // Count the changed data in syncResult.stats, so that the sync interval adapts to it
                 Thread.sleep(3000)
 
-                // Set periodic sync every week
-                val weekDuration = TimeUnit.DAYS.toMillis(7)
-                ContentResolver.addPeriodicSync(account, authority, Bundle.EMPTY, weekDuration)
-
                 Common.log(Log.DEBUG, javaClass.simpleName, "Account sync finished successfully")
             } catch (e: InterruptedException) {
                 Common.printStackTrace(e)
 
-                // Set periodic sync to a day on failure
-                val dayDuration = TimeUnit.DAYS.toMillis(1)
-                ContentResolver.addPeriodicSync(account, authority, Bundle.EMPTY, dayDuration)
+                // Report the failure, the sync is retried with a backoff
+                syncResult.stats.numIoExceptions++
 
                 Common.log(Log.ERROR, javaClass.simpleName, "Account sync finished with some error(s)")
             }
@@ -63,4 +59,17 @@ class ProfileSyncAdapter(context: Context, autoInitialize: Boolean) : AccountSyn
         }
 
     }
+
+    companion object {
+
+        /** Syncs between every day and every week, depending on how often the profile changes, up to 3 accounts at a time */
+        private val SYNC_POLICY = SyncPolicy()
+                .setAdaptiveInterval(TimeUnit.DAYS.toSeconds(1), TimeUnit.DAYS.toSeconds(7))
+                .setMaxParallelSyncs(3)
+
+        /** Decodes the profile from the account data, which the account helper caches  */
+        private val PROFILE_DECODER = AccountDataCache.Decoder<Profile> { data ->
+            Gson().fromJson(data.getString(AccountConstant.ACCOUNT_PROFILE), Profile::class.java)
+        }
+    }
 }
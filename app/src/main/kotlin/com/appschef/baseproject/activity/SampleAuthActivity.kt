@@ -22,6 +22,7 @@ import com.appschef.baseproject.view.ProgressDialog
 import com.google.gson.Gson
 import com.google.gson.GsonBuilder
 import itsmagic.present.simpleaccountmanager.AccountHelper
+import itsmagic.present.simpleaccountmanager.util.AccountDataCache
 import kotlinx.android.synthetic.main.activity_sample_auth.*
 
 /**
@@ -78,8 +79,7 @@ class SampleAuthActivity : CoreActivity(), View.OnClickListener {
         if (accountHelper!!.isLoggedIn) {
             Common.log(Log.DEBUG, javaClass.simpleName, "User is already logged with Android's account manager")
 
-            val data = accountHelper!!.accountBundle
-            val savedAccount: SavedAccount? = Gson().fromJson(data?.getString(AccountConstant.ACCOUNT_PROFILE), SavedAccount::class.java)
+            val savedAccount: SavedAccount? = accountHelper!!.getAccountData(SAVED_ACCOUNT_DECODER)
             if (savedAccount != null) {
                 Common.log(Log.DEBUG, javaClass.simpleName, "Saved account data exists: " + savedAccount.toString())
             } else {
@@ -138,6 +138,11 @@ class SampleAuthActivity : CoreActivity(), View.OnClickListener {
 
     companion object {
 
+        /** Decodes the saved account from the account data, which the account helper caches  */
+        private val SAVED_ACCOUNT_DECODER = AccountDataCache.Decoder<SavedAccount> { data ->
+            Gson().fromJson(data.getString(AccountConstant.ACCOUNT_PROFILE), SavedAccount::class.java)
+        }
+
         /**
          * Launch this activity.
          * @param context the context
@@ -1,6 +1,7 @@
 package com.appschef.baseproject.api
 
 import com.appschef.baseproject.util.JNIUtil
+import com.appschef.baseproject.api.util.HttpCacheInterceptor
 import com.appschef.baseproject.api.util.OkHttpClientHelper
 import com.appschef.baseproject.model.remote.auth.ProfileResponse
 import com.appschef.baseproject.model.remote.auth.SignInRequest
@@ -13,6 +14,7 @@ import retrofit2.converter.gson.GsonConverterFactory
 import retrofit2.http.Body
 import retrofit2.http.GET
 import retrofit2.http.Header
+import retrofit2.http.Headers
 import retrofit2.http.POST
 import retrofit2.http.Query
 
@@ -53,8 +55,9 @@ object APIService {
                 @Body body: SignInRequest?)
                 : Call<SignInResponse>
 
-        /** Obtain the user profile */
+        /** Obtain the user profile, cached for a minute and revalidated in the background for a day */
         @GET("profile")
+        @Headers("${HttpCacheInterceptor.HEADER_CACHE_POLICY}: max-age=60, stale-while-revalidate=86400, stale-if-error=604800")
         fun getProfile(
                 // For easy visibility (test purposes), this sample will use a query
                 @Query("Api-Key") apiKey: String?,
@@ -63,8 +66,9 @@ object APIService {
 //                @Header("Token") String accessToken);
                 : Call<ProfileResponse>
 
-        /** Obtain the product list */
+        /** Obtain the product list, cached for a minute and revalidated in the background for 10 minutes */
         @GET("products")
+        @Headers("${HttpCacheInterceptor.HEADER_CACHE_POLICY}: max-age=60, stale-while-revalidate=600, stale-if-error=86400")
         fun getProducts(
                 @Header("Api-Key") apiKey: String?,
                 @Header("Token") accessToken: String?,
@@ -0,0 +1,191 @@
+package com.appschef.baseproject.api.util
+
+import android.util.Log
+import com.appschef.baseproject.util.Common
+import okhttp3.CacheControl
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.Interceptor
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
+import okio.Okio
+import java.io.IOException
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Serves GET requests from the [okhttp3.Cache] according to a per-endpoint cache policy,
+ * which is declared on the endpoint with the [HEADER_CACHE_POLICY] header, e.g.
+ * `@Headers("${HttpCacheInterceptor.HEADER_CACHE_POLICY}: max-age=60, stale-while-revalidate=600, stale-if-error=86400")`.
+ *
+ * - A response younger than `max-age` is served from the cache without a network call.
+ * - A response younger than `max-age + stale-while-revalidate` is served from the cache,
+ * and revalidated in the background so that the next call gets the fresh one.
+ * - If the network call fails, or the server answers with a 5xx,
+ * a response younger than `stale-if-error` is served from the cache instead.
+ *
+ * The policy overrides the caching headers of the server,
+ * so add this interceptor both as an application and as a network interceptor.
+ * Cached responses vary by the `Token` header, so they're never served to another user.
+ * Endpoints without a policy aren't affected,
+ * and requests with `Cache-Control: no-cache` or `max-age=0` always go to the network.
+ */
+class HttpCacheInterceptor : Interceptor {
+
+    /** The client that revalidates stale responses, set once the client has been built */
+    var client: OkHttpClient? = null
+
+    /** The urls that are being revalidated */
+    private val revalidating: MutableSet<String> = Collections.newSetFromMap(ConcurrentHashMap<String, Boolean>())
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        val policy = Policy.parse(request.header(HEADER_CACHE_POLICY))
+        if (policy == null || request.method() != "GET") return chain.proceed(request.newBuilder().removeHeader(HEADER_CACHE_POLICY).build())
+
+        // Network interceptor, strip the policy and let the cache store the response for the policy's lifetime
+        if (chain.connection() != null) {
+            val response = chain.proceed(request.newBuilder().removeHeader(HEADER_CACHE_POLICY).build())
+            if (!response.isSuccessful && response.code() != 304) return response
+
+            // Responses differ per user, so never serve one user's response to another
+            val vary = response.header("Vary")
+            return response.newBuilder()
+                    .removeHeader("Pragma")
+                    .header("Cache-Control", "max-age=" + policy.maxAge)
+                    .header("Vary", if (vary.isNullOrBlank()) HEADER_TOKEN else "$vary, $HEADER_TOKEN")
+                    .build()
+        }
+
+        // Application interceptor, serve from the cache first, unless the caller forces a refresh
+        if (request.cacheControl().noCache() || request.cacheControl().maxAgeSeconds() == 0) return chain.proceed(request)
+        val cached = getCached(chain, request, policy.maxAge + policy.staleWhileRevalidate)
+        if (cached != null) {
+            if (getAgeSeconds(cached) > policy.maxAge) revalidate(request)
+            return cached
+        }
+
+        val response = try {
+            chain.proceed(request)
+        } catch (e: IOException) {
+            return getCached(chain, request, policy.staleIfError) ?: throw e
+        }
+        if (response.code() in 500..599) {
+            val stale = getCached(chain, request, policy.staleIfError)
+            if (stale != null) {
+                response.close()
+                return stale
+            }
+        }
+        return response
+    }
+
+    /**
+     * Obtain the cached response of a request.
+     * @param chain the chain
+     * @param request the request
+     * @param maxAgeSeconds the maximum age of the response in seconds
+     * @return the cached response, or null if there is none that is young enough
+     */
+    private fun getCached(chain: Interceptor.Chain, request: Request, maxAgeSeconds: Long): Response? {
+        if (maxAgeSeconds <= 0) return null
+
+        // Allow staleness past the max age that the network interceptor stored
+        val cacheControl = CacheControl.Builder()
+                .onlyIfCached()
+                .maxStale(maxAgeSeconds.toInt(), TimeUnit.SECONDS)
+                .build()
+        val response = chain.proceed(request.newBuilder().cacheControl(cacheControl).build())
+        if (response.isSuccessful && response.cacheResponse() != null && getAgeSeconds(response) <= maxAgeSeconds) return response
+
+        response.close()
+        return null
+    }
+
+    /**
+     * Revalidates a request in the background, which replaces its cached response.
+     * Only one revalidation runs per url.
+     * @param request the request
+     */
+    private fun revalidate(request: Request) {
+        val client = client ?: return
+        val url = request.url().toString()
+        if (!revalidating.add(url)) return
+
+        // A max age of 0 makes a conditional request if the cached response has validators
+        val revalidation = request.newBuilder()
+                .cacheControl(CacheControl.Builder().maxAge(0, TimeUnit.SECONDS).build())
+                .build()
+        client.newCall(revalidation).enqueue(object : Callback {
+            override fun onResponse(call: Call, response: Response) {
+                // The cache only stores the response once its body has been read to the end
+                try {
+                    response.body()?.source()?.readAll(Okio.blackhole())
+                } catch (e: IOException) {
+                    Common.log(Log.WARN, TAG, "Unable to revalidate $url: ${e.message}")
+                } finally {
+                    revalidating.remove(url)
+                    response.close()
+                }
+            }
+
+            override fun onFailure(call: Call, e: IOException) {
+                revalidating.remove(url)
+                Common.log(Log.WARN, TAG, "Unable to revalidate $url: ${e.message}")
+            }
+        })
+    }
+
+    /**
+     * Obtain the age of a cached response in seconds.
+     * @param response the response
+     */
+    private fun getAgeSeconds(response: Response): Long {
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - response.receivedResponseAtMillis())
+    }
+
+    /** The cache policy of an endpoint, all values are in seconds */
+    private class Policy(val maxAge: Long, val staleWhileRevalidate: Long, val staleIfError: Long) {
+
+        companion object {
+
+            /**
+             * Parses a policy from the [HEADER_CACHE_POLICY] header.
+             * @param header the header value, e.g. `max-age=60, stale-while-revalidate=600`
+             * @return the policy, or null if there is no header
+             */
+            fun parse(header: String?): Policy? {
+                if (header == null) return null
+
+                var maxAge = 0L
+                var staleWhileRevalidate = 0L
+                var staleIfError = 0L
+                for (directive in header.split(',')) {
+                    val parts = directive.split('=')
+                    if (parts.size != 2) continue
+                    val value = parts[1].trim().toLongOrNull() ?: continue
+                    when (parts[0].trim().toLowerCase()) {
+                        "max-age" -> maxAge = value
+                        "stale-while-revalidate" -> staleWhileRevalidate = value
+                        "stale-if-error" -> staleIfError = value
+                    }
+                }
+                return Policy(maxAge, staleWhileRevalidate, staleIfError)
+            }
+        }
+    }
+
+    companion object {
+
+        /** The log tag */
+        private const val TAG = "HttpCacheInterceptor"
+
+        /** The request header that identifies the user, cached responses vary by it */
+        private const val HEADER_TOKEN = "Token"
+
+        /** The request header that declares the cache policy of an endpoint, it's never sent to the server */
+        const val HEADER_CACHE_POLICY = "X-Cache-Policy"
+    }
+}
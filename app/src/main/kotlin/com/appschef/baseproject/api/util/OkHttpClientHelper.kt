@@ -4,8 +4,10 @@ import com.appschef.baseproject.App
 import com.appschef.baseproject.BuildConfig
 import com.readystatesoftware.chuck.ChuckInterceptor
 
+import java.io.File
 import java.util.concurrent.TimeUnit
 
+import okhttp3.Cache
 import okhttp3.OkHttpClient
 import okhttp3.logging.HttpLoggingInterceptor
 
@@ -19,8 +21,12 @@ class OkHttpClientHelper {
      *
      * Server uses SSL, we need to install the certificate on the [OkHttpClient].
      * Debug and mock builds doesn't have valid certificates, so we'll allow all connections there.
+     *
+     * Responses are cached on disk, and served from it according to the cache policy of each endpoint,
+     * see [HttpCacheInterceptor].
+     * @param cacheSize the maximum size of the response cache in bytes
      */
-    fun initOkHttpClient(): OkHttpClient {
+    fun initOkHttpClient(cacheSize: Long = DEFAULT_CACHE_SIZE): OkHttpClient {
         val okHttpClientBuilder: OkHttpClient.Builder = OkHttpClient.Builder()
 //        try {
 //            // TODO: 10/10/2016 Will this app use SSL for API urls?
@@ -45,11 +51,20 @@ class OkHttpClientHelper {
         // Add Chuck interceptor
         okHttpClientBuilder.addInterceptor(ChuckInterceptor(App.context))
 
+        // Add the response cache, after the other interceptors so that they only see the delivered responses,
+        // not the cache lookups that the cache interceptor makes
+        val cacheInterceptor = HttpCacheInterceptor()
+        okHttpClientBuilder.cache(Cache(File(App.context.cacheDir, CACHE_DIRECTORY), cacheSize))
+        okHttpClientBuilder.addInterceptor(cacheInterceptor)
+        okHttpClientBuilder.addNetworkInterceptor(cacheInterceptor)
+
         // Set timeout duration
         okHttpClientBuilder.connectTimeout(30, TimeUnit.SECONDS)
         okHttpClientBuilder.readTimeout(30, TimeUnit.SECONDS)
 
-        return okHttpClientBuilder.build()
+        val okHttpClient = okHttpClientBuilder.build()
+        cacheInterceptor.client = okHttpClient
+        return okHttpClient
     }
 
 //    /**
@@ -151,4 +166,13 @@ class OkHttpClientHelper {
 //
 //        return okHttpClientBuilder
 //    }
+
+    companion object {
+
+        /** The directory of the response cache, in the cache directory */
+        private const val CACHE_DIRECTORY = "http"
+
+        /** The default maximum size of the response cache in bytes */
+        const val DEFAULT_CACHE_SIZE = 10L * 1024 * 1024
+    }
 }
@@ -3,11 +3,11 @@ package com.appschef.baseproject.model.core
 import com.appschef.baseproject.App
 import com.appschef.baseproject.R
 import com.appschef.baseproject.util.Common
-import com.appschef.baseproject.util.ValidationHelper
 import com.google.gson.annotations.SerializedName
 
-import org.json.JSONException
-import org.json.JSONObject
+import itsmagic.present.simpleaccountmanager.json.JSONException
+import itsmagic.present.simpleaccountmanager.json.JSONObject
+import itsmagic.present.simpleaccountmanager.json.JSONSelector
 
 /**
  * Created by Alvin on 10/10/16.
@@ -23,36 +23,33 @@ open class AppResponse() {
     constructor(response: String) : this() {
         // Check if the response is a JSON before confirming it as a success
         var isValid = true
-        if (ValidationHelper.isValidJson(response)) {
-            try {
-                val json = JSONObject(response)
+        try {
+            // Only the metadata is built, the rest of the response is just scanned
+            val json = META_SELECTOR.select(response) as? JSONObject
 
-                // Parse the metadata
-                val metaJson = json.optJSONObject("meta")
-                if (metaJson != null) {
-                    meta = Meta()
+            // Parse the metadata
+            val metaJson = json?.optJSONObject("meta")
+            if (metaJson != null) {
+                meta = Meta()
 
-                    // The response message
-                    meta!!.message = metaJson.optString("message")
+                // The response message
+                meta!!.message = metaJson.optString("message")
 
-                    // The pagination metadata
-                    val pagingJson = metaJson.optJSONObject("paging")
-                    if (pagingJson != null) {
-                        val paging = Paging()
-                        paging.total = pagingJson.optInt("total")
-                        paging.offset = pagingJson.optInt("offset")
-                        paging.limit = pagingJson.optInt("limit")
-                        meta!!.paging = paging
-                    }
-                } else {
-                    // If the response doesn't have any metadata, treat it as invalid
-                    isValid = false
+                // The pagination metadata
+                val pagingJson = metaJson.optJSONObject("paging")
+                if (pagingJson != null) {
+                    val paging = Paging()
+                    paging.total = pagingJson.optInt("total")
+                    paging.offset = pagingJson.optInt("offset")
+                    paging.limit = pagingJson.optInt("limit")
+                    meta!!.paging = paging
                 }
-            } catch (e: JSONException) {
-                Common.printStackTrace(e)
+            } else {
+                // If the response doesn't have any metadata, treat it as invalid
                 isValid = false
             }
-        } else {
+        } catch (e: JSONException) {
+            Common.printStackTrace(e)
             isValid = false
         }
 
@@ -61,4 +58,10 @@ open class AppResponse() {
             meta!!.message = App.context.resources.getString(R.string.error_json)
         }
     }
+
+    companion object {
+
+        /** The paths of a response that are read into [meta]  */
+        private val META_SELECTOR = JSONSelector.compile("meta.message", "meta.paging.*")
+    }
 }
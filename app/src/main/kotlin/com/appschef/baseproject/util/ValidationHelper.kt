@@ -4,8 +4,9 @@ import android.util.Patterns
 import android.view.View
 import android.widget.TextView
 
+import itsmagic.present.simpleaccountmanager.json.JSONValidator
+
 import org.json.JSONArray
-import org.json.JSONException
 import org.json.JSONObject
 
 import java.util.regex.Matcher
@@ -20,22 +21,12 @@ object ValidationHelper {
 
     /**
      * Check if a specified [String] is a valid [JSONObject] or [JSONArray].
+     * The [String] is only scanned, neither object is built.
      * @param message the [String] to check
      * @return true if JSON is valid
      */
     fun isValidJson(message: String): Boolean {
-        try {
-            JSONObject(message)
-        } catch (ex: JSONException) {
-            // Check if JSONArray is valid as well…
-            try {
-                JSONArray(message)
-            } catch (ex1: JSONException) {
-                return false
-            }
-        }
-
-        return true
+        return JSONValidator.isValid(message)
     }
 
     /**
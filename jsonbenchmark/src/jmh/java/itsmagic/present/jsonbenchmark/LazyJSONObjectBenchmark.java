@@ -0,0 +1,64 @@
+package itsmagic.present.jsonbenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+
+import itsmagic.present.simpleaccountmanager.json.JSONException;
+import itsmagic.present.simpleaccountmanager.json.JSONObject;
+
+/**
+ * Compares eagerly and lazily parsed {@link JSONObject}s on account data blobs,
+ * both when only a few names are read and when every value is read.
+ */
+@State(Scope.Benchmark)
+public class LazyJSONObjectBenchmark {
+
+    /** The document size in characters: 1 KB, 64 KB and 1 MB */
+    @Param({"1024", "65536", "1048576"})
+    public int size;
+
+    private String json;
+
+    @Setup
+    public void setUp() throws JSONException {
+        json = Payloads.accountData(size);
+    }
+
+    @Benchmark
+    public void eagerFewNames(Blackhole blackhole) throws JSONException {
+        readFewNames(new JSONObject(json), blackhole);
+    }
+
+    @Benchmark
+    public void lazyFewNames(Blackhole blackhole) throws JSONException {
+        readFewNames(JSONObject.lazy(json), blackhole);
+    }
+
+    @Benchmark
+    public void eagerAllValues(Blackhole blackhole) throws JSONException {
+        readAllValues(new JSONObject(json), blackhole);
+    }
+
+    @Benchmark
+    public void lazyAllValues(Blackhole blackhole) throws JSONException {
+        readAllValues(JSONObject.lazy(json), blackhole);
+    }
+
+    private static void readFewNames(JSONObject object, Blackhole blackhole) {
+        blackhole.consume(object.optString("account_name"));
+        blackhole.consume(object.optString("account_token"));
+    }
+
+    private static void readAllValues(JSONObject object, Blackhole blackhole) {
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            blackhole.consume(object.opt(keys.next()));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package itsmagic.present.jsonbenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+
+import itsmagic.present.simpleaccountmanager.json.JSONArray;
+import itsmagic.present.simpleaccountmanager.json.JSONException;
+import itsmagic.present.simpleaccountmanager.json.JSONObject;
+
+/**
+ * Measures reading values out of a parsed product page,
+ * through the {@code opt*} accessors and by iterating the keys.
+ */
+@State(Scope.Benchmark)
+public class LookupBenchmark {
+
+    @Param({Payloads.PRODUCTS_20, Payloads.PRODUCTS_200, Payloads.PRODUCTS_2000})
+    public String payload;
+
+    private JSONArray products;
+
+    @Setup
+    public void setUp() throws JSONException {
+        products = new JSONObject(Payloads.named(payload)).optJSONArray("data");
+    }
+
+    @Benchmark
+    public void optTypedValues(Blackhole blackhole) {
+        for (int i = 0, length = products.length(); i < length; i++) {
+            JSONObject product = products.optJSONObject(i);
+            blackhole.consume(product.optLong("id"));
+            blackhole.consume(product.optString("name"));
+            blackhole.consume(product.optDouble("current_bid"));
+            blackhole.consume(product.optInt("bid_count"));
+            blackhole.consume(product.optBoolean("is_closed"));
+            blackhole.consume(product.optJSONObject("seller").optString("name"));
+            blackhole.consume(product.optJSONArray("images").optString(0));
+        }
+    }
+
+    @Benchmark
+    public void optCoercedValues(Blackhole blackhole) {
+        for (int i = 0, length = products.length(); i < length; i++) {
+            JSONObject product = products.optJSONObject(i);
+            blackhole.consume(product.optString("id"));
+            blackhole.consume(product.optInt("current_bid"));
+            blackhole.consume(product.optString("is_closed"));
+        }
+    }
+
+    @Benchmark
+    public void optMissingValues(Blackhole blackhole) {
+        for (int i = 0, length = products.length(); i < length; i++) {
+            JSONObject product = products.optJSONObject(i);
+            blackhole.consume(product.optString("buyer", "none"));
+            blackhole.consume(product.optLong("closed_time", -1L));
+        }
+    }
+
+    @Benchmark
+    public void iterateKeys(Blackhole blackhole) {
+        for (int i = 0, length = products.length(); i < length; i++) {
+            JSONObject product = products.optJSONObject(i);
+            Iterator<String> keys = product.keys();
+            while (keys.hasNext()) {
+                blackhole.consume(product.opt(keys.next()));
+            }
+        }
+    }
+
+    @Benchmark
+    public void iterateNames(Blackhole blackhole) {
+        for (int i = 0, length = products.length(); i < length; i++) {
+            JSONObject product = products.optJSONObject(i);
+            JSONArray names = product.names();
+            for (int j = 0, count = names.length(); j < count; j++) {
+                blackhole.consume(product.opt(names.optString(j)));
+            }
+        }
+    }
+}
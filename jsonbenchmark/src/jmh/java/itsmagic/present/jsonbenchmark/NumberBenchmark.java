@@ -0,0 +1,65 @@
+package itsmagic.present.jsonbenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import itsmagic.present.simpleaccountmanager.json.JSONArray;
+import itsmagic.present.simpleaccountmanager.json.JSONException;
+import itsmagic.present.simpleaccountmanager.json.JSONObject;
+
+/**
+ * Measures parsing and reading number heavy documents,
+ * like bid histories and price histories.
+ */
+@State(Scope.Benchmark)
+public class NumberBenchmark {
+
+    /** The number of entries in each history */
+    @Param({"100", "10000"})
+    public int count;
+
+    private String bidHistoryJson;
+    private String priceHistoryJson;
+    private JSONArray bidHistory;
+    private JSONArray priceHistory;
+
+    @Setup
+    public void setUp() throws JSONException {
+        bidHistoryJson = Payloads.bidHistory(count).toString();
+        priceHistoryJson = Payloads.priceHistory(count).toString();
+        bidHistory = new JSONArray(bidHistoryJson);
+        priceHistory = new JSONArray(priceHistoryJson);
+    }
+
+    @Benchmark
+    public JSONArray parseBidHistory() throws JSONException {
+        return new JSONArray(bidHistoryJson);
+    }
+
+    @Benchmark
+    public JSONArray parsePriceHistory() throws JSONException {
+        return new JSONArray(priceHistoryJson);
+    }
+
+    @Benchmark
+    public double sumBidAmounts() {
+        double sum = 0;
+        for (int i = 0, length = bidHistory.length(); i < length; i++) {
+            JSONObject bid = bidHistory.optJSONObject(i);
+            sum += bid.optDouble("amount") + bid.optLong("time") + bid.optInt("lot_id");
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double sumPriceHistory() throws JSONException {
+        double sum = 0;
+        for (int i = 0, length = priceHistory.length(); i < length; i++) {
+            sum += priceHistory.getDouble(i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,102 @@
+package itsmagic.present.jsonbenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.StringReader;
+
+import itsmagic.present.simpleaccountmanager.json.JSONException;
+import itsmagic.present.simpleaccountmanager.json.JSONObject;
+import itsmagic.present.simpleaccountmanager.json.JSONReader;
+import itsmagic.present.simpleaccountmanager.json.JSONTokener;
+
+/**
+ * Measures parsing API responses into a {@link JSONObject} tree,
+ * and streaming through them with a {@link JSONReader}.
+ */
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    @Param({Payloads.PROFILE, Payloads.PRODUCTS_20, Payloads.PRODUCTS_200, Payloads.PRODUCTS_2000})
+    public String payload;
+
+    private String json;
+
+    @Setup
+    public void setUp() throws JSONException {
+        json = Payloads.named(payload);
+    }
+
+    @Benchmark
+    public JSONObject jsonObject() throws JSONException {
+        return new JSONObject(json);
+    }
+
+    @Benchmark
+    public Object tokenerNextValue() throws JSONException {
+        return new JSONTokener(json).nextValue();
+    }
+
+    @Benchmark
+    public Object tokenerNextValueInternKeys() throws JSONException {
+        return new JSONTokener(json, true).nextValue();
+    }
+
+    @Benchmark
+    public Object readerNextValue() throws JSONException {
+        return new JSONReader(json).nextValue();
+    }
+
+    @Benchmark
+    public void readerSkipValue(Blackhole blackhole) throws JSONException {
+        JSONReader reader = new JSONReader(json);
+        reader.skipValue();
+        blackhole.consume(reader.peek());
+    }
+
+    @Benchmark
+    public void readerStreamTokens(Blackhole blackhole) throws JSONException {
+        JSONReader reader = new JSONReader(new StringReader(json));
+        readTokens(reader, blackhole);
+    }
+
+    private static void readTokens(JSONReader reader, Blackhole blackhole) throws JSONException {
+        while (true) {
+            switch (reader.peek()) {
+                case BEGIN_ARRAY:
+                    reader.beginArray();
+                    break;
+                case END_ARRAY:
+                    reader.endArray();
+                    break;
+                case BEGIN_OBJECT:
+                    reader.beginObject();
+                    break;
+                case END_OBJECT:
+                    reader.endObject();
+                    break;
+                case NAME:
+                    blackhole.consume(reader.nextName());
+                    break;
+                case STRING:
+                    blackhole.consume(reader.nextString());
+                    break;
+                case NUMBER:
+                    blackhole.consume(reader.nextDouble());
+                    break;
+                case BOOLEAN:
+                    blackhole.consume(reader.nextBoolean());
+                    break;
+                case NULL:
+                    reader.nextNull();
+                    break;
+                case END_DOCUMENT:
+                    return;
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package itsmagic.present.jsonbenchmark;
+
+import itsmagic.present.simpleaccountmanager.json.JSONArray;
+import itsmagic.present.simpleaccountmanager.json.JSONException;
+import itsmagic.present.simpleaccountmanager.json.JSONObject;
+
+/**
+ * Deterministic JSON documents shaped like the data the app handles.
+ */
+final class Payloads {
+
+    /** The payload names used as a benchmark {@code @Param} */
+    static final String PROFILE = "profile";
+    static final String PRODUCTS_20 = "products_20";
+    static final String PRODUCTS_200 = "products_200";
+    static final String PRODUCTS_2000 = "products_2000";
+
+    private Payloads() {}
+
+    /**
+     * Creates the payload with the specified name.
+     * @param name one of {@link #PROFILE}, {@link #PRODUCTS_20}, {@link #PRODUCTS_200}
+     *             or {@link #PRODUCTS_2000}
+     * @return the JSON document
+     */
+    static String named(String name) throws JSONException {
+        if (PROFILE.equals(name)) return profileResponse(1).toString();
+        if (PRODUCTS_20.equals(name)) return productPage(20).toString();
+        if (PRODUCTS_200.equals(name)) return productPage(200).toString();
+        if (PRODUCTS_2000.equals(name)) return productPage(2000).toString();
+        throw new IllegalArgumentException("Unknown payload " + name);
+    }
+
+    /**
+     * Creates a profile API response, with the profile wrapped in the "data" object.
+     * @param id the profile id
+     * @return the response object
+     */
+    static JSONObject profileResponse(int id) throws JSONException {
+        JSONObject response = new JSONObject();
+        response.put("meta", meta(1, 1));
+        response.put("data", profile(id));
+        return response;
+    }
+
+    /**
+     * Creates a paged product list API response.
+     * @param items the number of products on the page
+     * @return the response object
+     */
+    static JSONObject productPage(int items) throws JSONException {
+        JSONArray products = new JSONArray();
+        for (int i = 0; i < items; i++) {
+            products.put(product(i));
+        }
+        JSONObject response = new JSONObject();
+        response.put("meta", meta(1, items));
+        response.put("data", products);
+        return response;
+    }
+
+    /**
+     * Creates the "meta" object of an API response.
+     * @param page the current page
+     * @param perPage the number of items per page
+     * @return the meta object
+     */
+    static JSONObject meta(int page, int perPage) throws JSONException {
+        JSONObject paging = new JSONObject();
+        paging.put("current_page", page);
+        paging.put("per_page", perPage);
+        paging.put("total", perPage * 10);
+        paging.put("next_url", "https://example.com/api/products?page=" + (page + 1));
+
+        JSONObject meta = new JSONObject();
+        meta.put("code", 200);
+        meta.put("message", "Success");
+        meta.put("paging", paging);
+        return meta;
+    }
+
+    /**
+     * Creates a single product of a product page.
+     * @param index the product index
+     * @return the product object
+     */
+    static JSONObject product(int index) throws JSONException {
+        JSONObject seller = new JSONObject();
+        seller.put("id", 500 + index % 13);
+        seller.put("name", "Seller " + index % 13);
+        seller.put("rating", 4.5 - (index % 5) * 0.25);
+
+        JSONArray images = new JSONArray();
+        for (int i = 0; i < 3; i++) {
+            images.put("https://example.com/products/" + index + "/" + i + ".jpg");
+        }
+
+        JSONObject product = new JSONObject();
+        product.put("id", 10000 + index);
+        product.put("name", "Vintage Item #" + index);
+        product.put("description", "A \"well kept\" item, bidding starts at the listed price.\nShipping from Jakarta.");
+        product.put("starting_price", 150000 + index * 500);
+        product.put("current_bid", 150000.5 + index * 725.25);
+        product.put("bid_count", index % 31);
+        product.put("is_closed", index % 9 == 0);
+        product.put("end_time", 1514764800000L + index * 60000L);
+        product.put("images", images);
+        product.put("seller", seller);
+        return product;
+    }
+
+    /**
+     * Creates an account data blob, as stored by the AccountHelper,
+     * padded with a bid history until it is at least {@code size} characters long.
+     * @param size the minimum length of the document
+     * @return the JSON document
+     */
+    static String accountData(int size) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("account_name", "john.doe@email.com");
+        json.put("account_token", "8f14e45fceea167a5a36dedd4bea2543");
+        json.put("account_profile", profile(1).toString());
+
+        JSONArray history = new JSONArray();
+        int length = json.toString().length() + "\"bid_history\":[]".length();
+        for (int i = 0; length < size; i++) {
+            JSONObject bid = bid(i);
+            history.put(bid);
+            length += bid.toString().length() + 1;
+        }
+        json.put("bid_history", history);
+        return json.toString();
+    }
+
+    /**
+     * Creates a user profile.
+     * @param id the profile id
+     * @return the profile object
+     */
+    static JSONObject profile(int id) throws JSONException {
+        JSONObject profile = new JSONObject();
+        profile.put("id", id);
+        profile.put("email", "john.doe" + id + "@email.com");
+        profile.put("name", "John \"Bidder\" Doe");
+        profile.put("access_token", "8f14e45fceea167a5a36dedd4bea2543");
+        profile.put("birthdate", "2000/12/31");
+        profile.put("address", "Jl. Sudirman Kav. 52-53\nJakarta");
+        profile.put("image_thumb", "https://example.com/users/" + id + "/thumb.jpg");
+        return profile;
+    }
+
+    /**
+     * Creates a bid history.
+     * @param count the number of bids
+     * @return the bid history array
+     */
+    static JSONArray bidHistory(int count) throws JSONException {
+        JSONArray history = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            history.put(bid(i));
+        }
+        return history;
+    }
+
+    /**
+     * Creates a price history, a plain array of prices.
+     * @param count the number of prices
+     * @return the price history array
+     */
+    static JSONArray priceHistory(int count) throws JSONException {
+        JSONArray history = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            history.put(150000 + i * 12.75);
+        }
+        return history;
+    }
+
+    /**
+     * Creates a single bid of a bid history.
+     * @param index the bid index
+     * @return the bid object
+     */
+    static JSONObject bid(int index) throws JSONException {
+        JSONObject bid = new JSONObject();
+        bid.put("lot_id", 10000 + index % 97);
+        bid.put("amount", 150000.5 + index * 25);
+        bid.put("time", 1514764800000L + index * 1000L);
+        bid.put("winning", index % 7 == 0);
+        return bid;
+    }
+}
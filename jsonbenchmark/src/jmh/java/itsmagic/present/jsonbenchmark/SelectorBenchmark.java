@@ -0,0 +1,50 @@
+package itsmagic.present.jsonbenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import itsmagic.present.simpleaccountmanager.json.JSONException;
+import itsmagic.present.simpleaccountmanager.json.JSONObject;
+import itsmagic.present.simpleaccountmanager.json.JSONSelector;
+
+/**
+ * Measures reading only the meta block of a product page,
+ * the way {@code AppResponse} does, by parsing the whole page
+ * and by selecting the meta paths.
+ */
+@State(Scope.Benchmark)
+public class SelectorBenchmark {
+
+    @Param({Payloads.PRODUCTS_20, Payloads.PRODUCTS_2000})
+    public String payload;
+
+    private String json;
+    private JSONSelector selector;
+
+    @Setup
+    public void setUp() throws JSONException {
+        json = Payloads.named(payload);
+        selector = JSONSelector.compile("meta.message", "meta.paging.*");
+    }
+
+    @Benchmark
+    public int parseMeta() throws JSONException {
+        JSONObject meta = new JSONObject(json).optJSONObject("meta");
+        return meta.optString("message").length() + meta.optJSONObject("paging").optInt("total");
+    }
+
+    @Benchmark
+    public int lazyMeta() throws JSONException {
+        JSONObject meta = JSONObject.lazy(json).optJSONObject("meta");
+        return meta.optString("message").length() + meta.optJSONObject("paging").optInt("total");
+    }
+
+    @Benchmark
+    public int selectMeta() throws JSONException {
+        JSONObject meta = ((JSONObject) selector.select(json)).optJSONObject("meta");
+        return meta.optString("message").length() + meta.optJSONObject("paging").optInt("total");
+    }
+}
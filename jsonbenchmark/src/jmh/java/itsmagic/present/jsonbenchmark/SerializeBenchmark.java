@@ -0,0 +1,54 @@
+package itsmagic.present.jsonbenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.StringWriter;
+
+import itsmagic.present.simpleaccountmanager.json.JSONException;
+import itsmagic.present.simpleaccountmanager.json.JSONObject;
+
+/**
+ * Measures encoding a {@link JSONObject} tree back into text,
+ * into a String, an indented String and a {@link java.io.Writer}.
+ */
+@State(Scope.Benchmark)
+public class SerializeBenchmark {
+
+    @Param({Payloads.PROFILE, Payloads.PRODUCTS_20, Payloads.PRODUCTS_200, Payloads.PRODUCTS_2000})
+    public String payload;
+
+    private JSONObject object;
+
+    @Setup
+    public void setUp() throws JSONException {
+        object = new JSONObject(Payloads.named(payload));
+    }
+
+    @Benchmark
+    public String toCompactString() {
+        return object.toString();
+    }
+
+    @Benchmark
+    public String toIndentedString() throws JSONException {
+        return object.toString(2);
+    }
+
+    @Benchmark
+    public StringWriter writeToWriter() throws JSONException {
+        StringWriter writer = new StringWriter();
+        object.write(writer);
+        return writer;
+    }
+
+    @Benchmark
+    public StringBuilder writeToStringBuilder() throws JSONException {
+        StringBuilder builder = new StringBuilder();
+        object.write(builder);
+        return builder;
+    }
+}
@@ -10,10 +10,12 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.text.TextUtils;
 
+import java.io.IOException;
+
 import itsmagic.present.simpleaccountmanager.json.JSONException;
-import itsmagic.present.simpleaccountmanager.json.JSONObject;
-import itsmagic.present.simpleaccountmanager.util.AccountBundleParser;
 import itsmagic.present.simpleaccountmanager.util.AccountConstants;
+import itsmagic.present.simpleaccountmanager.util.AccountDataCodec;
+import itsmagic.present.simpleaccountmanager.util.TokenRefreshCoordinator;
 
 /**
  * Created by Alvin Rusli on 04/04/2017.
@@ -67,13 +69,31 @@ public class AccountAuthenticator extends AbstractAccountAuthenticator {
         final AccountManager accountManager = AccountManager.get(mContext);
         String accountName = account.name;
         String accountType = AccountHelper.getAccountType();
-        String authToken = accountManager.peekAuthToken(account, authTokenType);
-        Bundle accountData = null;
+        // The token is stored under its own key, not under the account type
+        String authToken = accountManager.peekAuthToken(account, AccountConstants.KEY_ACCOUNT_TOKEN);
+        // Refresh the token if it was invalidated or is about to expire.
+        // Concurrent requests for the same account share a single refresh.
+        final TokenRefreshCoordinator tokenRefreshCoordinator = TokenRefreshCoordinator.getInstance(mContext);
         try {
-            accountData = AccountBundleParser.jsonToBundle(
-                    new JSONObject(accountManager.getUserData(account, AccountConstants.KEY_ACCOUNT_DATA)));
-        } catch (JSONException e) {
-            if (BuildConfig.DEBUG) e.printStackTrace();
+            if (TextUtils.isEmpty(authToken)) {
+                // The token was invalidated, replace the copy in the user data that it was handed out from
+                String staleToken = accountManager.getUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN);
+                if (!TextUtils.isEmpty(staleToken)) authToken = tokenRefreshCoordinator.refreshToken(account, staleToken);
+            } else {
+                authToken = tokenRefreshCoordinator.getValidToken(account);
+            }
+        } catch (IOException e) {
+            throw new NetworkErrorException(e);
+        }
+        String encodedAccountData = accountManager.getUserData(account, AccountConstants.KEY_ACCOUNT_DATA);
+        Bundle accountData = null;
+        if (encodedAccountData != null) {
+            try {
+                // Callers of getAuthToken received String values from older versions
+                accountData = AccountDataCodec.toStringBundle(AccountDataCodec.decode(encodedAccountData));
+            } catch (JSONException e) {
+                if (BuildConfig.DEBUG) e.printStackTrace();
+            }
         }
 
         if (!TextUtils.isEmpty(authToken)) {
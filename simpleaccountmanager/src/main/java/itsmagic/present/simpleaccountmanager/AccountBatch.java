@@ -0,0 +1,97 @@
+package itsmagic.present.simpleaccountmanager;
+
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A set of accounts to add or update at once, through {@link AccountHelper#addAccounts(AccountBatch)}.
+ * <p/>
+ * The accounts are written in the order they were added to the batch.
+ * Adding an account name twice replaces the earlier entry.
+ */
+public class AccountBatch {
+
+    /** The result of writing a single account */
+    public enum Result {
+
+        /** The account didn't exist and has been added */
+        ADDED,
+
+        /** The account existed, and its token or data has been updated */
+        UPDATED,
+
+        /** The account existed with the same token and data, nothing was written */
+        UNCHANGED,
+
+        /** The account couldn't be written */
+        FAILED
+    }
+
+    /** The entries by account name */
+    private final Map<String, Entry> mEntries = new LinkedHashMap<String, Entry>();
+
+    /**
+     * Adds an account to the batch.
+     * @param accountName the account name
+     * @param authToken the account auth token
+     * @return this batch
+     */
+    public AccountBatch add(
+            @NonNull final String accountName,
+            @NonNull final String authToken) {
+
+        return add(accountName, authToken, null);
+    }
+
+    /**
+     * Adds an account to the batch.
+     * @param accountName the account name
+     * @param authToken the account auth token
+     * @param accountData the account data, or null to keep the existing data of the account
+     * @return this batch
+     */
+    public AccountBatch add(
+            @NonNull final String accountName,
+            @NonNull final String authToken,
+            @Nullable final Bundle accountData) {
+
+        if (accountName.isEmpty()) throw new IllegalArgumentException("Account name must not be empty!");
+        mEntries.remove(accountName);
+        mEntries.put(accountName, new Entry(accountName, authToken, accountData));
+        return this;
+    }
+
+    /** Obtain the number of accounts in the batch. */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /** Obtain the entries in the order they were added. */
+    Collection<Entry> getEntries() {
+        return mEntries.values();
+    }
+
+    /** A single account of the batch */
+    static final class Entry {
+
+        /** The account name */
+        final String accountName;
+
+        /** The account auth token */
+        final String authToken;
+
+        /** The account data, or null to keep the existing data */
+        final Bundle accountData;
+
+        Entry(String accountName, String authToken, Bundle accountData) {
+            this.accountName = accountName;
+            this.authToken = authToken;
+            this.accountData = accountData;
+        }
+    }
+}
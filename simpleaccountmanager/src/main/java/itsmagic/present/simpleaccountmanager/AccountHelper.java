@@ -15,18 +15,26 @@ import android.os.Build;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 import android.support.v4.app.ActivityCompat;
 import android.util.Log;
 import android.util.Pair;
 
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
-import itsmagic.present.simpleaccountmanager.json.JSONException;
-import itsmagic.present.simpleaccountmanager.json.JSONObject;
-import itsmagic.present.simpleaccountmanager.util.AccountBundleParser;
 import itsmagic.present.simpleaccountmanager.util.AccountConstants;
+import itsmagic.present.simpleaccountmanager.util.AccountDataCache;
+import itsmagic.present.simpleaccountmanager.util.AccountDataCodec;
+import itsmagic.present.simpleaccountmanager.util.AccountExecutor;
 import itsmagic.present.simpleaccountmanager.util.AccountPreferenceHelper;
+import itsmagic.present.simpleaccountmanager.util.AccountRegistry;
+import itsmagic.present.simpleaccountmanager.util.TokenRefreshCoordinator;
 
 /**
  * Created by Alvin Rusli on 04/04/2017.
@@ -74,6 +82,16 @@ public class AccountHelper {
         else mSyncAdapters = Arrays.asList(syncAdapters);
     }
 
+    /**
+     * Sets the refresher that obtains new auth tokens from the server.
+     * Once set, {@link #getValidToken()} and the authenticator refresh tokens ahead of their expiry,
+     * and {@link #refreshToken(String)} refreshes rejected tokens.
+     * @param refresher the refresher, or null to stop refreshing tokens
+     */
+    public static void setTokenRefresher(@Nullable final TokenRefreshCoordinator.Refresher refresher) {
+        TokenRefreshCoordinator.setRefresher(refresher);
+    }
+
     /**
      * Checks if the account helper has been initialized.
      * @return true if it's initialized
@@ -161,13 +179,7 @@ public class AccountHelper {
             return null;
         }
 
-        Account[] list = accountManager.getAccounts();
-        for (Account account : list) {
-            if (account.type.equals(mAccountType) && account.name.equals(accountName)) {
-                return account;
-            }
-        }
-        return null;
+        return AccountRegistry.getInstance(mContext).getAccount(accountManager, mAccountType, accountName);
     }
 
     /**
@@ -192,13 +204,7 @@ public class AccountHelper {
             return false;
         }
 
-        Account[] list = accountManager.getAccounts();
-        for (Account account : list) {
-            if (account.type.equals(mAccountType)) {
-                return true;
-            }
-        }
-        return false;
+        return AccountRegistry.getInstance(mContext).getFirstAccount(accountManager, mAccountType) != null;
     }
 
     /**
@@ -228,13 +234,7 @@ public class AccountHelper {
             return false;
         }
 
-        Account[] list = accountManager.getAccounts();
-        for (Account account : list) {
-            if (account.type.equals(mAccountType) && account.name.equals(accountName)) {
-                return true;
-            }
-        }
-        return false;
+        return AccountRegistry.getInstance(mContext).getAccount(accountManager, mAccountType, accountName) != null;
     }
 
     /**
@@ -289,6 +289,44 @@ public class AccountHelper {
         addAccountOnAccountManager(accountName, authToken, accountData, callback);
     }
 
+    /**
+     * Adds an {@link Account} to the {@link AccountManager} on the {@link AccountExecutor}.
+     * If an account with the same account name already exists,
+     * this will update its token and data.
+     * @param accountName the account name
+     * @param authToken the account auth token
+     * @return the future of the addition, which can be cancelled until it starts
+     */
+    public Future<Void> addAccountAsync(
+            @NonNull final String accountName,
+            @NonNull final String authToken) {
+
+        return addAccountAsync(accountName, authToken, null);
+    }
+
+    /**
+     * Adds an {@link Account} to the {@link AccountManager} on the {@link AccountExecutor}.
+     * If an account with the same account name already exists,
+     * this will update its token and data.
+     * @param accountName the account name
+     * @param authToken the account auth token
+     * @param accountData the account data
+     * @return the future of the addition, which can be cancelled until it starts
+     */
+    public Future<Void> addAccountAsync(
+            @NonNull final String accountName,
+            @NonNull final String authToken,
+            @Nullable final Bundle accountData) {
+
+        return AccountExecutor.getInstance().submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                if (isInitialized()) addAccountExplicitly(accountName, authToken, accountData);
+                return null;
+            }
+        });
+    }
+
     /**
      * Adds an {@link Account} to the {@link AccountManager}.
      * @param accountName the account name
@@ -317,7 +355,7 @@ public class AccountHelper {
                 protected void onPostExecute(Boolean aBoolean) {
                     callback.onAccountAdded();
                 }
-            }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+            }.executeOnExecutor(AccountExecutor.getInstance());
         } else {
             addAccountExplicitly(accountName, authToken, accountData);
         }
@@ -341,44 +379,167 @@ public class AccountHelper {
         // Temporarily set the account addition sync as true to avoid immediate sync
         AccountPreferenceHelper.getInstance(mContext).saveAccountInitialAddition(accountName);
 
-        // Prepare the account manager
+        // If user has no account, set the newly added one as the selected one
+        if (!isLoggedIn()) {
+            setSelectedAccountName(accountName);
+        }
+
         AccountManager accountManager = AccountManager.get(mContext);
+        if (writeAccount(accountManager, accountName, authToken, extras) == AccountBatch.Result.ADDED) {
+            AccountRegistry.getInstance(mContext).invalidate();
+        }
 
-        // Create a new account with the specified account name
-        final Account account = new Account(accountName, mAccountType);
+        // Remove the account addition sync state
+        AccountPreferenceHelper.getInstance(mContext).removeAccountInitialAddition(accountName);
+    }
+
+    /**
+     * Adds or updates every {@link Account} of a batch in the {@link AccountManager}.
+     * Existing accounts are only written where their token or data differs,
+     * and the accounts are looked up once for the whole batch.
+     * If there was no account, the first account that is written becomes the selected one.
+     * @param batch the accounts
+     * @return the result of each account by account name, in the order of the batch
+     */
+    @NonNull
+    @WorkerThread
+    public Map<String, AccountBatch.Result> addAccounts(
+            @NonNull final AccountBatch batch) {
 
-        // Set the access token for the account
-        accountManager.setAuthToken(account, AccountConstants.KEY_ACCOUNT_TOKEN, authToken);
+        Map<String, AccountBatch.Result> results = new LinkedHashMap<String, AccountBatch.Result>();
+        if (!isInitialized()) return results;
 
-        // If user has no account, set the newly added one as the selected one
-        if (!isLoggedIn()) {
-            setSelectedAccountName(accountName);
+        AccountPreferenceHelper preferenceHelper = AccountPreferenceHelper.getInstance(mContext);
+        AccountManager accountManager = AccountManager.get(mContext);
+        boolean hasAccount = isLoggedIn(accountManager);
+        boolean isAccountAdded = false;
+
+        for (AccountBatch.Entry entry : batch.getEntries()) {
+            // Temporarily set the account addition sync as true to avoid immediate sync
+            preferenceHelper.saveAccountInitialAddition(entry.accountName);
+
+            AccountBatch.Result result;
+            try {
+                result = writeAccount(accountManager, entry.accountName, entry.authToken, entry.accountData);
+            } catch (RuntimeException e) {
+                if (BuildConfig.DEBUG) Log.e("AccountHelper", "Unable to write account " + entry.accountName, e);
+                result = AccountBatch.Result.FAILED;
+            }
+            results.put(entry.accountName, result);
+
+            if (result == AccountBatch.Result.ADDED) isAccountAdded = true;
+            // If user had no account, set the first written one as the selected one
+            if (result != AccountBatch.Result.FAILED && !hasAccount) {
+                setSelectedAccountName(entry.accountName);
+                hasAccount = true;
+            }
+        }
+
+        // Reload the accounts once for the whole batch
+        if (isAccountAdded) AccountRegistry.getInstance(mContext).invalidate();
+
+        // Remove the account addition sync states
+        for (String accountName : results.keySet()) {
+            preferenceHelper.removeAccountInitialAddition(accountName);
         }
+        return results;
+    }
+
+    /**
+     * Adds or updates every {@link Account} of a batch in the {@link AccountManager} on the {@link AccountExecutor}.
+     * @param batch the accounts
+     * @return the future of the result of each account by account name
+     * @see #addAccounts(AccountBatch)
+     */
+    public Future<Map<String, AccountBatch.Result>> addAccountsAsync(
+            @NonNull final AccountBatch batch) {
 
-        // Add the new account to the AccountManager
-        if (!isLoggedIn(accountName)) {
-            accountManager.addAccountExplicitly(account, null, null);
+        return AccountExecutor.getInstance().submit(new Callable<Map<String, AccountBatch.Result>>() {
+            @Override
+            public Map<String, AccountBatch.Result> call() {
+                return addAccounts(batch);
+            }
+        });
+    }
 
-            // Add all sync adapters
-            if (mSyncAdapters != null) {
-                for (Pair<String, Long> syncAdapter : mSyncAdapters) {
-                    // Set sync to be enabled by default (for newly added account)
-                    ContentResolver.setIsSyncable(account, syncAdapter.first, 1);
-                    ContentResolver.setSyncAutomatically(account, syncAdapter.first, true);
+    /**
+     * Writes an account to the Android's account manager, skipping the values that are unchanged.
+     * A new account is added with all of its data in a single call.
+     * Doesn't invalidate the {@link AccountRegistry}, callers do that once they're done.
+     * @param accountManager the account manager
+     * @param accountName the account name
+     * @param authToken the account auth token
+     * @param extras the bundle extras, or null to keep the existing extras
+     * @return {@link AccountBatch.Result#ADDED}, {@link AccountBatch.Result#UPDATED}
+     * or {@link AccountBatch.Result#UNCHANGED}
+     */
+    private AccountBatch.Result writeAccount(
+            @NonNull final AccountManager accountManager,
+            @NonNull final String accountName,
+            @NonNull final String authToken,
+            @Nullable final Bundle extras) {
 
-                    // Set periodic sync duration
-                    ContentResolver.addPeriodicSync(account, syncAdapter.first, Bundle.EMPTY, syncAdapter.second);
+        final Account account = new Account(accountName, mAccountType);
+        final String encodedExtras = extras != null ? AccountDataCodec.encode(extras) : null;
+
+        if (!isLoggedIn(accountName, accountManager)) {
+            // Add the new account together with its user data
+            Bundle userData = new Bundle();
+            userData.putString(AccountConstants.KEY_ACCOUNT_NAME, accountName);
+            userData.putString(AccountConstants.KEY_ACCOUNT_TOKEN, authToken);
+            if (encodedExtras != null) userData.putString(AccountConstants.KEY_ACCOUNT_DATA, encodedExtras);
+
+            // Falls through to the update if the account has been added in the meantime
+            if (accountManager.addAccountExplicitly(account, null, userData)) {
+                accountManager.setAuthToken(account, AccountConstants.KEY_ACCOUNT_TOKEN, authToken);
+                TokenRefreshCoordinator.getInstance(mContext).cancelScheduledRefresh(account);
+                AccountDataCache.getInstance(mContext).invalidate(account);
+
+                // Add all sync adapters
+                if (mSyncAdapters != null) {
+                    for (Pair<String, Long> syncAdapter : mSyncAdapters) {
+                        if (syncAdapter == null) continue;
+
+                        // Set sync to be enabled by default (for newly added account)
+                        ContentResolver.setIsSyncable(account, syncAdapter.first, 1);
+                        ContentResolver.setSyncAutomatically(account, syncAdapter.first, true);
+
+                        // Set periodic sync duration
+                        ContentResolver.addPeriodicSync(account, syncAdapter.first, Bundle.EMPTY, syncAdapter.second);
+                    }
                 }
+                return AccountBatch.Result.ADDED;
             }
         }
 
+        boolean isUpdated = false;
+        if (!authToken.equals(accountManager.peekAuthToken(account, AccountConstants.KEY_ACCOUNT_TOKEN))) {
+            accountManager.setAuthToken(account, AccountConstants.KEY_ACCOUNT_TOKEN, authToken);
+            isUpdated = true;
+        }
+
         // Adds additional information to the account extras
-        accountManager.setUserData(account, AccountConstants.KEY_ACCOUNT_NAME, accountName);
-        accountManager.setUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN, authToken);
-        if (extras != null) accountManager.setUserData(account, AccountConstants.KEY_ACCOUNT_DATA, AccountBundleParser.bundleToJson(extras).toString());
+        boolean isUserDataUpdated = false;
+        if (!accountName.equals(accountManager.getUserData(account, AccountConstants.KEY_ACCOUNT_NAME))) {
+            accountManager.setUserData(account, AccountConstants.KEY_ACCOUNT_NAME, accountName);
+            isUserDataUpdated = true;
+        }
+        if (!authToken.equals(accountManager.getUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN))) {
+            // The expiry time belongs to the previous token
+            accountManager.setUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN, authToken);
+            accountManager.setUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN_EXPIRY, null);
+            accountManager.setUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN_REFRESH_TIME, null);
+            TokenRefreshCoordinator.getInstance(mContext).cancelScheduledRefresh(account);
+            isUserDataUpdated = true;
+        }
+        if (encodedExtras != null && !encodedExtras.equals(accountManager.getUserData(account, AccountConstants.KEY_ACCOUNT_DATA))) {
+            accountManager.setUserData(account, AccountConstants.KEY_ACCOUNT_DATA, encodedExtras);
+            isUserDataUpdated = true;
+        }
+        if (isUserDataUpdated) AccountDataCache.getInstance(mContext).invalidate(account);
 
-        // Remove the account addition sync state
-        AccountPreferenceHelper.getInstance(mContext).removeAccountInitialAddition(accountName);
+        if (isUpdated || isUserDataUpdated) return AccountBatch.Result.UPDATED;
+        else return AccountBatch.Result.UNCHANGED;
     }
 
     /**
@@ -432,15 +593,20 @@ public class AccountHelper {
         if (!isInitialized()) return;
 
         AccountManager accountManager = AccountManager.get(mContext);
-        Account account = getAccount(accountName, accountManager);
+        final Account account = getAccount(accountName, accountManager);
         if (account != null) {
             final AccountManagerCallback accountManagerCallback;
 
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1 && mContext instanceof Activity) {
-                if (callback == null) accountManagerCallback = null;
-                else accountManagerCallback = new AccountManagerCallback<Bundle>() {
+                accountManagerCallback = new AccountManagerCallback<Bundle>() {
                     @Override
                     public void run(AccountManagerFuture<Bundle> future) {
+                        // Forget the removed account without waiting for the accounts update listener
+                        AccountRegistry.getInstance(mContext).invalidate();
+                        AccountDataCache.getInstance(mContext).invalidate(account);
+                        TokenRefreshCoordinator.getInstance(mContext).cancelScheduledRefresh(account);
+                        if (callback == null) return;
+
                         // Re-check the selected account still exists,
                         // otherwise remove it from prefs
                         if (!isLoggedIn(getSelectedAccountName())) {
@@ -452,10 +618,15 @@ public class AccountHelper {
                 };
                 accountManager.removeAccount(account, (Activity) mContext, accountManagerCallback, null);
             } else {
-                if (callback == null) accountManagerCallback = null;
-                else accountManagerCallback = new AccountManagerCallback<Boolean>() {
+                accountManagerCallback = new AccountManagerCallback<Boolean>() {
                     @Override
                     public void run(AccountManagerFuture<Boolean> future) {
+                        // Forget the removed account without waiting for the accounts update listener
+                        AccountRegistry.getInstance(mContext).invalidate();
+                        AccountDataCache.getInstance(mContext).invalidate(account);
+                        TokenRefreshCoordinator.getInstance(mContext).cancelScheduledRefresh(account);
+                        if (callback == null) return;
+
                         // Re-check the selected account still exists,
                         // otherwise remove it from prefs
                         if (!isLoggedIn(getSelectedAccountName())) {
@@ -471,6 +642,76 @@ public class AccountHelper {
         }
     }
 
+    /**
+     * Remove the saved {@link Account} from the {@link AccountManager} on the {@link AccountExecutor}.
+     * Uses the currently saved account name.
+     * @return the future of the removal, which can be cancelled until it starts
+     */
+    public Future<Boolean> removeAccountAsync() {
+        return AccountExecutor.getInstance().submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                final String accountName = getSelectedAccountName();
+                if (accountName == null || accountName.isEmpty()) return false;
+                else return removeAccountExplicitly(accountName);
+            }
+        });
+    }
+
+    /**
+     * Remove the saved {@link Account} from the {@link AccountManager} on the {@link AccountExecutor}.
+     * @param accountName the account name
+     * @return the future of the removal, which can be cancelled until it starts
+     */
+    public Future<Boolean> removeAccountAsync(
+            @NonNull final String accountName) {
+
+        return AccountExecutor.getInstance().submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return removeAccountExplicitly(accountName);
+            }
+        });
+    }
+
+    /**
+     * Removes an account from the Android's account manager, and waits for the removal.
+     * Must not be called on the main thread.
+     * @param accountName the account name
+     * @return true if the account has been removed
+     */
+    @SuppressWarnings("deprecation")
+    private boolean removeAccountExplicitly(
+            @NonNull final String accountName) throws Exception {
+
+        if (!isInitialized()) return false;
+
+        AccountManager accountManager = AccountManager.get(mContext);
+        Account account = getAccount(accountName, accountManager);
+        if (account == null) return false;
+
+        boolean isRemoved;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1) {
+            Bundle result = accountManager.removeAccount(account, null, null, null).getResult();
+            isRemoved = result.getBoolean(AccountManager.KEY_BOOLEAN_RESULT);
+        } else {
+            isRemoved = accountManager.removeAccount(account, null, null).getResult();
+        }
+
+        // Forget the removed account without waiting for the accounts update listener
+        AccountRegistry.getInstance(mContext).invalidate();
+        AccountDataCache.getInstance(mContext).invalidate(account);
+        TokenRefreshCoordinator.getInstance(mContext).cancelScheduledRefresh(account);
+
+        // Re-check the selected account still exists,
+        // otherwise remove it from prefs
+        if (!isLoggedIn(getSelectedAccountName())) {
+            clearSelectedAccountName();
+        }
+
+        return isRemoved;
+    }
+
     /**
      * Obtain the auth token from the saved {@link Account}.
      * Uses the currently saved account name.
@@ -485,6 +726,7 @@ public class AccountHelper {
 
     /**
      * Obtain the auth token from the saved {@link Account}.
+     * The token is cached until the account changes.
      * @param accountName the account name
      * @return the token if it exists
      */
@@ -495,13 +737,129 @@ public class AccountHelper {
         if (!isInitialized()) return null;
 
         AccountManager accountManager = AccountManager.get(mContext);
+        Account account = getAccount(accountName, accountManager);
+        if (account == null) return null;
+        else return AccountDataCache.getInstance(mContext).getToken(accountManager, account);
+    }
+
+    /**
+     * Obtain the auth token from the saved {@link Account},
+     * refreshing it first if it is about to expire.
+     * Uses the currently saved account name.
+     * @return the token if it exists
+     * @throws IOException if the token had to be refreshed, but the refresh failed
+     */
+    @Nullable
+    @WorkerThread
+    public String getValidToken() throws IOException {
+        final String accountName = AccountPreferenceHelper.getInstance(mContext).loadSelectedAccount();
+        if (accountName == null || accountName.isEmpty()) return null;
+        else return getValidToken(accountName);
+    }
+
+    /**
+     * Obtain the auth token from the saved {@link Account},
+     * refreshing it first if it is about to expire.
+     * Concurrent callers share a single refresh.
+     * @param accountName the account name
+     * @return the token if it exists
+     * @throws IOException if the token had to be refreshed, but the refresh failed
+     */
+    @Nullable
+    @WorkerThread
+    public String getValidToken(
+            @NonNull final String accountName) throws IOException {
+
+        if (!isInitialized()) return null;
+
         Account account = getAccount(accountName);
-        String authToken = null;
-        if (account != null) {
-            authToken = accountManager.getUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN);
-        }
+        if (account == null) return null;
+        else return TokenRefreshCoordinator.getInstance(mContext).getValidToken(account);
+    }
+
+    /**
+     * Refreshes the auth token of the saved {@link Account} after the server rejected it.
+     * Uses the currently saved account name.
+     * @param rejectedToken the rejected token, or null to refresh the current token
+     * @return the new token, or null if the user has to sign in again
+     * @throws IOException if the refresh failed
+     */
+    @Nullable
+    @WorkerThread
+    public String refreshToken(
+            @Nullable final String rejectedToken) throws IOException {
+
+        final String accountName = AccountPreferenceHelper.getInstance(mContext).loadSelectedAccount();
+        if (accountName == null || accountName.isEmpty()) return null;
+        else return refreshToken(accountName, rejectedToken);
+    }
+
+    /**
+     * Refreshes the auth token of the saved {@link Account} after the server rejected it.
+     * Concurrent callers share a single refresh, and callers whose token
+     * has already been replaced get the new token without another refresh.
+     * @param accountName the account name
+     * @param rejectedToken the rejected token, or null to refresh the current token
+     * @return the new token, or null if the user has to sign in again
+     * @throws IOException if the refresh failed
+     */
+    @Nullable
+    @WorkerThread
+    public String refreshToken(
+            @NonNull final String accountName,
+            @Nullable final String rejectedToken) throws IOException {
+
+        if (!isInitialized()) return null;
+
+        Account account = getAccount(accountName);
+        if (account == null) return null;
+        else return TokenRefreshCoordinator.getInstance(mContext).refreshToken(account, rejectedToken);
+    }
 
-        return authToken;
+    /**
+     * Sets the expiry time of the auth token of the saved {@link Account},
+     * so that the token is refreshed ahead of it.
+     * @param accountName the account name
+     * @param expiryTime the expiry time in milliseconds since the epoch
+     */
+    public void setTokenExpiry(
+            @NonNull final String accountName,
+            final long expiryTime) {
+
+        if (!isInitialized()) return;
+
+        Account account = getAccount(accountName);
+        if (account != null) TokenRefreshCoordinator.getInstance(mContext).setTokenExpiry(account, expiryTime);
+    }
+
+    /**
+     * Obtain the auth token from the saved {@link Account} on the {@link AccountExecutor}.
+     * Uses the currently saved account name.
+     * @return the future of the token, which can be cancelled until it starts
+     */
+    public Future<String> getTokenAsync() {
+        return AccountExecutor.getInstance().submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return getToken();
+            }
+        });
+    }
+
+    /**
+     * Obtain the auth token from the saved {@link Account} on the {@link AccountExecutor}.
+     * @param accountName the account name
+     * @return the future of the token, which can be cancelled until it starts
+     */
+    public Future<String> getTokenAsync(
+            @NonNull final String accountName) {
+
+        return AccountExecutor.getInstance().submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return getToken(accountName);
+            }
+        });
     }
 
     /**
@@ -518,6 +876,9 @@ public class AccountHelper {
 
     /**
      * Obtain the saved {@link Bundle} from the saved {@link Account}.
+     * The data is cached until the account changes, and a copy is returned.
+     * Every value is returned as a String, like the json encoding of older versions did,
+     * use {@link #getTypedAccountBundle(String)} to obtain the values with their saved types.
      * @param accountName the account name
      * @return the bundle if it exists
      */
@@ -528,20 +889,106 @@ public class AccountHelper {
         if (!isInitialized()) return null;
 
         AccountManager accountManager = AccountManager.get(mContext);
-        Account account = getAccount(accountName);
-        Bundle accountData = null;
-        if (account != null) {
-            String accountDataJson = accountManager.getUserData(account, AccountConstants.KEY_ACCOUNT_DATA);
-            if (accountDataJson != null) {
-                try {
-                    accountData = AccountBundleParser.jsonToBundle(new JSONObject(accountDataJson));
-                } catch (JSONException e) {
-                    if (BuildConfig.DEBUG) e.printStackTrace();
-                }
+        Account account = getAccount(accountName, accountManager);
+        if (account == null) return null;
+        else return AccountDataCache.getInstance(mContext).getAccountData(accountManager, account);
+    }
+
+    /**
+     * Obtain the saved {@link Bundle} from the saved {@link Account},
+     * with the value types it was saved with.
+     * Uses the currently saved account name.
+     * @return the bundle if it exists
+     */
+    @Nullable
+    public Bundle getTypedAccountBundle() {
+        final String accountName = AccountPreferenceHelper.getInstance(mContext).loadSelectedAccount();
+        if (accountName == null || accountName.isEmpty()) return null;
+        else return getTypedAccountBundle(accountName);
+    }
+
+    /**
+     * Obtain the saved {@link Bundle} from the saved {@link Account},
+     * with the value types it was saved with.
+     * The data is cached until the account changes, and a copy is returned.
+     * @param accountName the account name
+     * @return the bundle if it exists
+     */
+    @Nullable
+    public Bundle getTypedAccountBundle(
+            @NonNull final String accountName) {
+
+        if (!isInitialized()) return null;
+
+        AccountManager accountManager = AccountManager.get(mContext);
+        Account account = getAccount(accountName, accountManager);
+        if (account == null) return null;
+        else return AccountDataCache.getInstance(mContext).getTypedAccountData(accountManager, account);
+    }
+
+    /**
+     * Obtain the saved {@link Bundle} from the saved {@link Account} on the {@link AccountExecutor}.
+     * Uses the currently saved account name.
+     * @return the future of the bundle, which can be cancelled until it starts
+     */
+    public Future<Bundle> getAccountBundleAsync() {
+        return AccountExecutor.getInstance().submit(new Callable<Bundle>() {
+            @Override
+            public Bundle call() {
+                return getAccountBundle();
             }
-        }
+        });
+    }
+
+    /**
+     * Obtain the saved {@link Bundle} from the saved {@link Account} on the {@link AccountExecutor}.
+     * @param accountName the account name
+     * @return the future of the bundle, which can be cancelled until it starts
+     */
+    public Future<Bundle> getAccountBundleAsync(
+            @NonNull final String accountName) {
 
-        return accountData;
+        return AccountExecutor.getInstance().submit(new Callable<Bundle>() {
+            @Override
+            public Bundle call() {
+                return getAccountBundle(accountName);
+            }
+        });
+    }
+
+    /**
+     * Obtain an object decoded from the saved {@link Bundle} of the saved {@link Account}.
+     * Uses the currently saved account name.
+     * @param decoder the decoder, keep a single instance to decode the object only once
+     * @return the decoded object if it exists, which is shared and must not be modified
+     */
+    @Nullable
+    public <T> T getAccountData(
+            @NonNull final AccountDataCache.Decoder<T> decoder) {
+
+        final String accountName = AccountPreferenceHelper.getInstance(mContext).loadSelectedAccount();
+        if (accountName == null || accountName.isEmpty()) return null;
+        else return getAccountData(accountName, decoder);
+    }
+
+    /**
+     * Obtain an object decoded from the saved {@link Bundle} of the saved {@link Account}.
+     * The object is cached until the account changes.
+     * @param accountName the account name
+     * @param decoder the decoder, keep a single instance to decode the object only once
+     * @return the decoded object if it exists, which is shared and must not be modified
+     */
+    @Nullable
+    public <T> T getAccountData(
+            @NonNull final String accountName,
+            @NonNull final AccountDataCache.Decoder<T> decoder) {
+
+        if (!isInitialized()) return null;
+
+        AccountManager accountManager = AccountManager.get(mContext);
+        Account account = getAccount(accountName, accountManager);
+        if (account == null) return null;
+        else return AccountDataCache.getInstance(mContext).getAccountData(accountManager, account, decoder);
     }
 
     /**
@@ -570,16 +1017,8 @@ public class AccountHelper {
             return;
         }
 
-        String accountName = null;
-        Account[] list = accountManager.getAccounts();
-        for (Account account : list) {
-            if (account.type.equals(mAccountType)) {
-                accountName = account.name;
-                break;
-            }
-        }
-
-        setSelectedAccountName(accountName);
+        Account account = AccountRegistry.getInstance(mContext).getFirstAccount(accountManager, mAccountType);
+        setSelectedAccountName(account != null ? account.name : null);
     }
 
     /**
@@ -609,10 +1048,44 @@ public class AccountHelper {
         AccountPreferenceHelper.getInstance(mContext).removeSelectedAccount();
     }
 
+    /**
+     * Warms the {@link AccountDataCache} for the accounts of the account type on the {@link AccountExecutor},
+     * so that switching to any of them doesn't have to read or decode its data.
+     * The currently selected account is warmed last, as the most recently used one,
+     * and only as many accounts as the cache keeps are warmed.
+     * @return the future of the preload, which can be cancelled until it starts
+     */
+    public Future<Void> preloadAccounts() {
+        return AccountExecutor.getInstance().submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                if (!isInitialized()) return null;
+                if (ActivityCompat.checkSelfPermission(mContext, Manifest.permission.GET_ACCOUNTS) != PackageManager.PERMISSION_GRANTED) {
+                    return null;
+                }
+
+                AccountManager accountManager = AccountManager.get(mContext);
+                AccountDataCache cache = AccountDataCache.getInstance(mContext);
+                Account selectedAccount = getAccount(accountManager);
+
+                int count = selectedAccount != null ? 1 : 0;
+                for (Account account : AccountRegistry.getInstance(mContext).getAccounts(accountManager, mAccountType)) {
+                    if (count >= cache.getMaxAccounts()) break;
+                    if (account.equals(selectedAccount)) continue;
+                    cache.preload(accountManager, account);
+                    count++;
+                }
+                if (selectedAccount != null) cache.preload(accountManager, selectedAccount);
+                return null;
+            }
+        });
+    }
+
     /**
      * Shows the account selection.
      * When no account with the specified account type exists,
      * Android will open the add account activity.
+     * The accounts are {@link #preloadAccounts() preloaded} while the user chooses.
      * @param requestCode the request code
      */
     public void showAccountSelection(
@@ -622,6 +1095,7 @@ public class AccountHelper {
         if (!isInitialized()) return;
 
         mRequestCode = requestCode;
+        preloadAccounts();
         Intent intent = AccountManager.newChooseAccountIntent(
                 getAccount(),
                 null,
@@ -24,6 +24,144 @@ class JSON {
         }
         return d;
     }
+    /**
+     * Parses a numeric literal the same way {@link JSONTokener} always has:
+     * integral values are returned as an Integer or Long, in that order of
+     * preference, everything else as a Double. Returns null if the literal
+     * is not a number, in which case it should be treated as an unquoted
+     * string.
+     */
+    static Number parseNumber(String literal) {
+        /* try to parse as an integral type... */
+        if (literal.indexOf('.') == -1) {
+            int base = 10;
+            String number = literal;
+            if (number.startsWith("0x") || number.startsWith("0X")) {
+                number = number.substring(2);
+                base = 16;
+            } else if (number.startsWith("0") && number.length() > 1) {
+                number = number.substring(1);
+                base = 8;
+            }
+            try {
+                long longValue = Long.parseLong(number, base);
+                if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+                    return (int) longValue;
+                } else {
+                    return longValue;
+                }
+            } catch (NumberFormatException e) {
+                /*
+                 * This only happens for integral numbers greater than
+                 * Long.MAX_VALUE, numbers in exponential form (5e-10) and
+                 * unquoted strings. Fall through to try floating point.
+                 */
+            }
+        }
+        /* ...next try to parse as a floating point... */
+        try {
+            return Double.valueOf(literal);
+        } catch (NumberFormatException ignored) {
+        }
+        return null;
+    }
+    /**
+     * Powers of ten that are exactly representable as a double.
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    /**
+     * Parses the numeric literal between {@code start} (inclusive) and {@code
+     * end} (exclusive) of {@code in}, with the same results as {@link
+     * #parseNumber(String)}. Plain decimal integers, and decimals whose digits
+     * and exponent are small enough to be converted exactly, are decoded
+     * straight from the input. Anything else falls back to {@link
+     * #parseNumber(String)} on a substring.
+     */
+    static Number parseNumber(String in, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && in.charAt(i) == '-') {
+            negative = true;
+            i++;
+        }
+        /* a leading zero means octal or hex, unless the number is signed */
+        if (!negative && end - i > 1 && in.charAt(i) == '0') {
+            char next = in.charAt(i + 1);
+            if ((next >= '0' && next <= '9') || next == 'x' || next == 'X') {
+                return parseNumber(in.substring(start, end));
+            }
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        int integerStart = i;
+        for (; i < end; i++) {
+            char c = in.charAt(i);
+            if (c < '0' || c > '9') break;
+            mantissa = mantissa * 10 + (c - '0');
+            digits++;
+        }
+        if (i == integerStart || digits > 18) {
+            return parseNumber(in.substring(start, end));
+        }
+        if (i == end) {
+            long longValue = negative ? -mantissa : mantissa;
+            if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+                return (int) longValue;
+            } else {
+                return longValue;
+            }
+        }
+        if (in.charAt(i) == '.') {
+            int fractionStart = ++i;
+            for (; i < end; i++) {
+                char c = in.charAt(i);
+                if (c < '0' || c > '9') break;
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+            }
+            fractionDigits = i - fractionStart;
+            if (fractionDigits == 0 || digits > 18) {
+                return parseNumber(in.substring(start, end));
+            }
+        }
+        int exponent = 0;
+        if (i < end && (in.charAt(i) == 'e' || in.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (in.charAt(i) == '-' || in.charAt(i) == '+')) {
+                negativeExponent = in.charAt(i) == '-';
+                i++;
+            }
+            int exponentStart = i;
+            for (; i < end && i - exponentStart < 4; i++) {
+                char c = in.charAt(i);
+                if (c < '0' || c > '9') break;
+                exponent = exponent * 10 + (c - '0');
+            }
+            if (i == exponentStart) {
+                return parseNumber(in.substring(start, end));
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+        exponent -= fractionDigits;
+        /*
+         * Both the mantissa and the power of ten are exact, so a single
+         * multiplication or division is correctly rounded.
+         */
+        if (i != end || mantissa > (1L << 53) || exponent < -22 || exponent > 22) {
+            return parseNumber(in.substring(start, end));
+        }
+        double value = exponent < 0
+                ? mantissa / POWERS_OF_TEN[-exponent]
+                : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
     static Boolean toBoolean(Object value) {
         if (value instanceof Boolean) {
             return (Boolean) value;
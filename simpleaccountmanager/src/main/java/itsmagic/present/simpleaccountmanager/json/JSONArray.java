@@ -36,6 +36,11 @@ import java.util.List;
  * JSONObject#NULL}. In particular, {@code get} fails if the requested index
  * holds the null reference, but succeeds if it holds {@code JSONObject.NULL}.
  *
+ * <p>An array that only holds Integers, Longs or Doubles stores them in a
+ * primitive array rather than as boxed objects, and switches to ordinary
+ * storage as soon as a value of another type is added. This is invisible
+ * to callers, except that the numeric accessors don't need to unbox values.
+ *
  * <p>Instances of this class are not thread safe. Although this class is
  * nonfinal, it was not designed for inheritance and should not be subclassed.
  * In particular, self-use by overridable methods is not specified. See
@@ -43,7 +48,7 @@ import java.util.List;
  * prohibit it" for further information.
  */
 public class JSONArray {
-    private final List<Object> values;
+    private List<Object> values;
     /**
      * Creates a {@code JSONArray} with no values.
      */
@@ -90,13 +95,15 @@ public class JSONArray {
     }
     /**
      * Creates a new {@code JSONArray} with values from the JSON string.
+     * Object names that are repeated in the string share a single String
+     * instance.
      *
      * @param json a JSON-encoded string containing an array.
      * @throws JSONException if the parse fails or doesn't yield a {@code
      *     JSONArray}.
      */
     public JSONArray(String json) throws JSONException {
-        this(new JSONTokener(json));
+        this(new JSONTokener(json, true));
     }
     /**
      * Creates a new {@code JSONArray} with values from the given primitive array.
@@ -123,7 +130,7 @@ public class JSONArray {
      * @return this array.
      */
     public JSONArray put(boolean value) {
-        values.add(value);
+        values = JSONNumberList.add(values, value);
         return this;
     }
     /**
@@ -134,7 +141,7 @@ public class JSONArray {
      * @return this array.
      */
     public JSONArray put(double value) throws JSONException {
-        values.add(JSON.checkDouble(value));
+        values = JSONNumberList.add(values, JSON.checkDouble(value));
         return this;
     }
     /**
@@ -143,7 +150,7 @@ public class JSONArray {
      * @return this array.
      */
     public JSONArray put(int value) {
-        values.add(value);
+        values = JSONNumberList.add(values, value);
         return this;
     }
     /**
@@ -152,7 +159,7 @@ public class JSONArray {
      * @return this array.
      */
     public JSONArray put(long value) {
-        values.add(value);
+        values = JSONNumberList.add(values, value);
         return this;
     }
     /**
@@ -166,7 +173,7 @@ public class JSONArray {
      * @return this array.
      */
     public JSONArray put(Object value) {
-        values.add(value);
+        values = JSONNumberList.add(values, value);
         return this;
     }
     /**
@@ -237,9 +244,9 @@ public class JSONArray {
             JSON.checkDouble(((Number) value).doubleValue());
         }
         while (values.size() <= index) {
-            values.add(null);
+            values = JSONNumberList.add(values, null);
         }
-        values.set(index, value);
+        values = JSONNumberList.set(values, index, value);
         return this;
     }
     /**
@@ -327,7 +334,13 @@ public class JSONArray {
      *     cannot be coerced to a double.
      */
     public double getDouble(int index) throws JSONException {
+        if (values instanceof JSONNumberList && index >= 0 && index < values.size()) {
+            return ((JSONNumberList) values).doubleAt(index);
+        }
         Object object = get(index);
+        if (object instanceof Number) {
+            return ((Number) object).doubleValue();
+        }
         Double result = JSON.toDouble(object);
         if (result == null) {
             throw JSON.typeMismatch(index, object, "double");
@@ -346,7 +359,13 @@ public class JSONArray {
      * be coerced to a double. Returns {@code fallback} otherwise.
      */
     public double optDouble(int index, double fallback) {
+        if (values instanceof JSONNumberList && index >= 0 && index < values.size()) {
+            return ((JSONNumberList) values).doubleAt(index);
+        }
         Object object = opt(index);
+        if (object instanceof Number) {
+            return ((Number) object).doubleValue();
+        }
         Double result = JSON.toDouble(object);
         return result != null ? result : fallback;
     }
@@ -358,7 +377,13 @@ public class JSONArray {
      *     cannot be coerced to a int.
      */
     public int getInt(int index) throws JSONException {
+        if (values instanceof JSONNumberList && index >= 0 && index < values.size()) {
+            return ((JSONNumberList) values).intAt(index);
+        }
         Object object = get(index);
+        if (object instanceof Number) {
+            return ((Number) object).intValue();
+        }
         Integer result = JSON.toInteger(object);
         if (result == null) {
             throw JSON.typeMismatch(index, object, "int");
@@ -377,7 +402,13 @@ public class JSONArray {
      * can be coerced to an int. Returns {@code fallback} otherwise.
      */
     public int optInt(int index, int fallback) {
+        if (values instanceof JSONNumberList && index >= 0 && index < values.size()) {
+            return ((JSONNumberList) values).intAt(index);
+        }
         Object object = opt(index);
+        if (object instanceof Number) {
+            return ((Number) object).intValue();
+        }
         Integer result = JSON.toInteger(object);
         return result != null ? result : fallback;
     }
@@ -389,7 +420,13 @@ public class JSONArray {
      *     cannot be coerced to a long.
      */
     public long getLong(int index) throws JSONException {
+        if (values instanceof JSONNumberList && index >= 0 && index < values.size()) {
+            return ((JSONNumberList) values).longAt(index);
+        }
         Object object = get(index);
+        if (object instanceof Number) {
+            return ((Number) object).longValue();
+        }
         Long result = JSON.toLong(object);
         if (result == null) {
             throw JSON.typeMismatch(index, object, "long");
@@ -408,7 +445,13 @@ public class JSONArray {
      * can be coerced to a long. Returns {@code fallback} otherwise.
      */
     public long optLong(int index, long fallback) {
+        if (values instanceof JSONNumberList && index >= 0 && index < values.size()) {
+            return ((JSONNumberList) values).longAt(index);
+        }
         Object object = opt(index);
+        if (object instanceof Number) {
+            return ((Number) object).longValue();
+        }
         Long result = JSON.toLong(object);
         return result != null ? result : fallback;
     }
@@ -556,10 +599,32 @@ public class JSONArray {
         writeTo(stringer);
         return stringer.toString();
     }
+    /**
+     * Encodes this array as a compact JSON string to {@code out}, the same
+     * way {@link #toString()} does, without building the whole string in
+     * memory first.
+     *
+     * @param out an {@link Appendable} such as a {@link java.io.Writer} or a
+     *     {@link StringBuilder}.
+     * @throws JSONException if this array cannot be encoded or writing to
+     *     {@code out} fails.
+     */
+    public void write(Appendable out) throws JSONException {
+        JSONStringer stringer = new JSONStringer(out);
+        writeTo(stringer);
+        stringer.flush();
+    }
     void writeTo(JSONStringer stringer) throws JSONException {
         stringer.array();
-        for (Object value : values) {
-            stringer.value(value);
+        if (values instanceof JSONNumberList) {
+            JSONNumberList numbers = (JSONNumberList) values;
+            for (int i = 0, size = numbers.size(); i < size; i++) {
+                numbers.writeTo(stringer, i);
+            }
+        } else {
+            for (Object value : values) {
+                stringer.value(value);
+            }
         }
         stringer.endArray();
     }
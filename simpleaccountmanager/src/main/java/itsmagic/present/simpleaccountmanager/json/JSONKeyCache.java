@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package itsmagic.present.simpleaccountmanager.json;
+/**
+ * A small table of object names already seen by a parser, so that a name
+ * which is repeated throughout a document, like the keys of every object in
+ * an array of objects, is only allocated once.
+ *
+ * <p>Names are looked up by the character range they occupy in the input, so
+ * no substring is needed to find a name that is already in the table. The
+ * table is direct-mapped: a name that collides with another one replaces it,
+ * which keeps the memory used by a single parse bounded.
+ *
+ * <p>Instances of this class are not thread safe.
+ */
+final class JSONKeyCache {
+    /** The number of slots, must be a power of two. */
+    private static final int SIZE = 256;
+    /** Names longer than this are unlikely to repeat and are never cached. */
+    private static final int MAX_LENGTH = 32;
+    private final String[] names = new String[SIZE];
+    /**
+     * Returns the characters of {@code in} between {@code start} (inclusive)
+     * and {@code end} (exclusive) as a String, reusing the instance returned
+     * by a previous call for the same characters if there is one.
+     */
+    String get(String in, int start, int end) {
+        int length = end - start;
+        if (length > MAX_LENGTH) {
+            // a new string avoids leaking memory
+            return new String(in.substring(start, end));
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + in.charAt(i);
+        }
+        int index = (hash ^ (hash >>> 16)) & (SIZE - 1);
+        String name = names[index];
+        if (name != null && name.length() == length && name.regionMatches(0, in, start, length)) {
+            return name;
+        }
+        name = new String(in.substring(start, end));
+        names[index] = name;
+        return name;
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package itsmagic.present.simpleaccountmanager.json;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+/**
+ * The values of a {@link JSONArray} that only holds numbers, stored in a
+ * primitive array instead of as boxed objects.
+ *
+ * <p>An array of Integers is stored in an {@code int[]}. An array of Longs,
+ * or of Doubles, is stored in a {@code long[]} or a {@code double[]}; such an
+ * array may also hold Integers, which are tracked so that {@link #get} still
+ * returns an Integer for them. Every other mix of values is stored in an
+ * ordinary {@link ArrayList}. Use {@link #add} and {@link #set} to update
+ * values, they switch to a wider storage when a value doesn't fit.
+ */
+abstract class JSONNumberList extends AbstractList<Object> implements RandomAccess {
+    private static final int DEFAULT_CAPACITY = 10;
+    int size;
+    /**
+     * Appends {@code value} to {@code values}, and returns the list that now
+     * holds the values. This is {@code values} itself, unless a different
+     * storage was needed for {@code value}.
+     */
+    static List<Object> add(List<Object> values, Object value) {
+        if (values instanceof JSONNumberList) {
+            JSONNumberList numbers = (JSONNumberList) values;
+            if (numbers.addNumber(value)) {
+                return numbers;
+            }
+            JSONNumberList wider = numbers.widen(value);
+            if (wider != null && wider.addNumber(value)) {
+                return wider;
+            }
+            values = new ArrayList<Object>(numbers);
+        } else if (values.isEmpty()) {
+            JSONNumberList numbers = forValue(value);
+            if (numbers != null) {
+                numbers.addNumber(value);
+                return numbers;
+            }
+        }
+        values.add(value);
+        return values;
+    }
+    /**
+     * Replaces the value at {@code index} of {@code values}, and returns the
+     * list that now holds the values.
+     */
+    static List<Object> set(List<Object> values, int index, Object value) {
+        if (values instanceof JSONNumberList) {
+            JSONNumberList numbers = (JSONNumberList) values;
+            if (index >= 0 && index < numbers.size && numbers.setNumber(index, value)) {
+                return numbers;
+            }
+            values = new ArrayList<Object>(numbers);
+        }
+        values.set(index, value);
+        return values;
+    }
+    /**
+     * Returns an empty list that can hold {@code value}, or null if
+     * {@code value} is not a number that can be stored unboxed.
+     */
+    private static JSONNumberList forValue(Object value) {
+        if (value instanceof Integer) {
+            return new Ints(DEFAULT_CAPACITY);
+        } else if (value instanceof Long) {
+            return new Longs(DEFAULT_CAPACITY);
+        } else if (value instanceof Double) {
+            return new Doubles(DEFAULT_CAPACITY);
+        }
+        return null;
+    }
+    /**
+     * Appends {@code value} if this storage can hold it.
+     *
+     * @return false if {@code value} needs a different storage.
+     */
+    abstract boolean addNumber(Object value);
+    /**
+     * Replaces the value at {@code index} if this storage can hold it.
+     *
+     * @return false if {@code value} needs a different storage.
+     */
+    abstract boolean setNumber(int index, Object value);
+    /**
+     * Returns a copy of this list in a storage that can also hold {@code
+     * value}, or null if there is no such number storage.
+     */
+    abstract JSONNumberList widen(Object value);
+    abstract int intAt(int index);
+    abstract long longAt(int index);
+    abstract double doubleAt(int index);
+    /**
+     * Encodes the value at {@code index} to {@code stringer}, without boxing it.
+     */
+    abstract void writeTo(JSONStringer stringer, int index) throws JSONException;
+    /**
+     * Removes the value at {@code index} from the primitive array.
+     */
+    abstract void removeNumber(int index);
+    @Override public int size() {
+        return size;
+    }
+    @Override public Object remove(int index) {
+        Object removed = get(index);
+        removeNumber(index);
+        size--;
+        modCount++;
+        return removed;
+    }
+    @Override public void clear() {
+        clearMarkers();
+        size = 0;
+        modCount++;
+    }
+    /**
+     * Forgets which elements are Integers in a wider storage, so they don't
+     * apply to the elements added after {@link #clear()}.
+     */
+    void clearMarkers() {
+    }
+    void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+    static int grow(int capacity) {
+        return capacity + Math.max(DEFAULT_CAPACITY, capacity >> 1);
+    }
+    /**
+     * Removes {@code index} from the Integer markers of a wider storage.
+     */
+    static void removeMarker(BitSet ints, int index, int size) {
+        if (ints == null) {
+            return;
+        }
+        for (int i = index; i < size - 1; i++) {
+            ints.set(i, ints.get(i + 1));
+        }
+        ints.clear(size - 1);
+    }
+    /**
+     * Integers, stored in an {@code int[]}.
+     */
+    static final class Ints extends JSONNumberList {
+        private int[] data;
+        Ints(int capacity) {
+            data = new int[capacity];
+        }
+        @Override boolean addNumber(Object value) {
+            if (!(value instanceof Integer)) {
+                return false;
+            }
+            if (size == data.length) {
+                data = Arrays.copyOf(data, grow(size));
+            }
+            data[size++] = (Integer) value;
+            modCount++;
+            return true;
+        }
+        @Override boolean setNumber(int index, Object value) {
+            if (!(value instanceof Integer)) {
+                return false;
+            }
+            data[index] = (Integer) value;
+            return true;
+        }
+        @Override JSONNumberList widen(Object value) {
+            if (value instanceof Long) {
+                Longs longs = new Longs(grow(size));
+                for (int i = 0; i < size; i++) {
+                    longs.addInt(data[i]);
+                }
+                return longs;
+            } else if (value instanceof Double) {
+                Doubles doubles = new Doubles(grow(size));
+                for (int i = 0; i < size; i++) {
+                    doubles.addInt(data[i]);
+                }
+                return doubles;
+            }
+            return null;
+        }
+        @Override public Object get(int index) {
+            checkIndex(index);
+            return data[index];
+        }
+        @Override int intAt(int index) {
+            return data[index];
+        }
+        @Override long longAt(int index) {
+            return data[index];
+        }
+        @Override double doubleAt(int index) {
+            return data[index];
+        }
+        @Override void writeTo(JSONStringer stringer, int index) throws JSONException {
+            stringer.value((long) data[index]);
+        }
+        @Override void removeNumber(int index) {
+            System.arraycopy(data, index + 1, data, index, size - index - 1);
+        }
+    }
+    /**
+     * Longs and Integers, stored in a {@code long[]}.
+     */
+    static final class Longs extends JSONNumberList {
+        private long[] data;
+        /** The indices holding an Integer, or null if there are none. */
+        private BitSet ints;
+        Longs(int capacity) {
+            data = new long[capacity];
+        }
+        void addInt(int value) {
+            if (ints == null) {
+                ints = new BitSet();
+            }
+            ints.set(size);
+            addLong(value);
+        }
+        private void addLong(long value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, grow(size));
+            }
+            data[size++] = value;
+            modCount++;
+        }
+        @Override boolean addNumber(Object value) {
+            if (value instanceof Long) {
+                addLong((Long) value);
+                return true;
+            } else if (value instanceof Integer) {
+                addInt((Integer) value);
+                return true;
+            }
+            return false;
+        }
+        @Override boolean setNumber(int index, Object value) {
+            if (value instanceof Long) {
+                data[index] = (Long) value;
+                if (ints != null) {
+                    ints.clear(index);
+                }
+                return true;
+            } else if (value instanceof Integer) {
+                data[index] = (Integer) value;
+                if (ints == null) {
+                    ints = new BitSet();
+                }
+                ints.set(index);
+                return true;
+            }
+            return false;
+        }
+        @Override JSONNumberList widen(Object value) {
+            // a long can't be converted to a double without losing precision
+            return null;
+        }
+        @Override public Object get(int index) {
+            checkIndex(index);
+            if (ints != null && ints.get(index)) {
+                return (int) data[index];
+            }
+            return data[index];
+        }
+        @Override int intAt(int index) {
+            return (int) data[index];
+        }
+        @Override long longAt(int index) {
+            return data[index];
+        }
+        @Override double doubleAt(int index) {
+            return data[index];
+        }
+        @Override void writeTo(JSONStringer stringer, int index) throws JSONException {
+            stringer.value(data[index]);
+        }
+        @Override void removeNumber(int index) {
+            System.arraycopy(data, index + 1, data, index, size - index - 1);
+            removeMarker(ints, index, size);
+        }
+        @Override void clearMarkers() {
+            ints = null;
+        }
+    }
+    /**
+     * Doubles and Integers, stored in a {@code double[]}.
+     */
+    static final class Doubles extends JSONNumberList {
+        private double[] data;
+        /** The indices holding an Integer, or null if there are none. */
+        private BitSet ints;
+        Doubles(int capacity) {
+            data = new double[capacity];
+        }
+        void addInt(int value) {
+            if (ints == null) {
+                ints = new BitSet();
+            }
+            ints.set(size);
+            addDouble(value);
+        }
+        private void addDouble(double value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, grow(size));
+            }
+            data[size++] = value;
+            modCount++;
+        }
+        @Override boolean addNumber(Object value) {
+            if (value instanceof Double) {
+                addDouble((Double) value);
+                return true;
+            } else if (value instanceof Integer) {
+                addInt((Integer) value);
+                return true;
+            }
+            return false;
+        }
+        @Override boolean setNumber(int index, Object value) {
+            if (value instanceof Double) {
+                data[index] = (Double) value;
+                if (ints != null) {
+                    ints.clear(index);
+                }
+                return true;
+            } else if (value instanceof Integer) {
+                data[index] = (Integer) value;
+                if (ints == null) {
+                    ints = new BitSet();
+                }
+                ints.set(index);
+                return true;
+            }
+            return false;
+        }
+        @Override JSONNumberList widen(Object value) {
+            // a long can't be converted to a double without losing precision
+            return null;
+        }
+        @Override public Object get(int index) {
+            checkIndex(index);
+            if (ints != null && ints.get(index)) {
+                return (int) data[index];
+            }
+            return data[index];
+        }
+        @Override int intAt(int index) {
+            return (int) data[index];
+        }
+        @Override long longAt(int index) {
+            return (long) data[index];
+        }
+        @Override double doubleAt(int index) {
+            return data[index];
+        }
+        @Override void writeTo(JSONStringer stringer, int index) throws JSONException {
+            if (ints != null && ints.get(index)) {
+                stringer.value((long) data[index]);
+            } else {
+                stringer.value(data[index]);
+            }
+        }
+        @Override void removeNumber(int index) {
+            System.arraycopy(data, index + 1, data, index, size - index - 1);
+            removeMarker(ints, index, size);
+        }
+        @Override void clearMarkers() {
+            ints = null;
+        }
+    }
+}
@@ -68,6 +68,10 @@ import java.util.Set;
  * named entry from the object but {@code put(name, JSONObject.NULL)} stores an
  * entry whose value is {@code JSONObject.NULL}.
  *
+ * <p>Objects created with {@link #lazy(String)} only index their input when
+ * they are created: each value is decoded the first time it is accessed.
+ * This is cheaper for large documents of which only a few names are read.
+ *
  * <p>Instances of this class are not thread safe. Although this class is
  * nonfinal, it was not designed for inheritance and should not be subclassed.
  * In particular, self-use by overrideable methods is not specified. See
@@ -102,6 +106,11 @@ public class JSONObject {
         }
     };
     private final LinkedHashMap<String, Object> nameValuePairs;
+    /**
+     * The input of a lazily parsed object, which {@link LazyValue} offsets
+     * refer to, or null if this object was not lazily parsed.
+     */
+    private char[] lazySource;
     /**
      * Creates a {@code JSONObject} with no name/value mappings.
      */
@@ -156,13 +165,94 @@ public class JSONObject {
     /**
      * Creates a new {@code JSONObject} with name/value mappings from the JSON
      * string.
+     * Object names that are repeated in the string share a single String
+     * instance.
      *
      * @param json a JSON-encoded string containing an object.
      * @throws JSONException if the parse fails or doesn't yield a {@code
      *     JSONObject}.
      */
     public JSONObject(String json) throws JSONException {
-        this(new JSONTokener(json));
+        this(new JSONTokener(json, true));
+    }
+    /**
+     * Creates a new {@code JSONObject} with name/value mappings from the JSON
+     * string, deferring the decoding of each value until it is first accessed.
+     * The input is scanned once to locate the names and their values, and to
+     * check that the document is well formed. Nested objects are lazy as well.
+     *
+     * <p>The returned object behaves exactly like one created with {@link
+     * #JSONObject(String)}, except that errors the eager parser would report
+     * for a value, such as a non-finite number, are only detected when that
+     * value is accessed. Such values read as absent through the
+     * <code>opt<i>Type</i>()</code> methods.
+     *
+     * @param json a JSON-encoded string containing an object.
+     * @throws JSONException if the parse fails or doesn't yield a {@code
+     *     JSONObject}.
+     */
+    public static JSONObject lazy(String json) throws JSONException {
+        char[] source = json.toCharArray();
+        return lazy(source, 0, source.length);
+    }
+    /**
+     * Indexes the object encoded in {@code source[start..end)}.
+     */
+    static JSONObject lazy(char[] source, int start, int end) throws JSONException {
+        JSONReader reader = new JSONReader(source, start, end - start);
+        if (reader.peek() != JSONReader.Token.BEGIN_OBJECT) {
+            throw JSON.typeMismatch(reader.nextValue(), "JSONObject");
+        }
+        JSONObject result = new JSONObject();
+        result.lazySource = source;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            int valueStart = reader.valueStart();
+            reader.skipValue();
+            result.nameValuePairs.put(name, new LazyValue(valueStart, reader.position()));
+        }
+        reader.endObject();
+        return result;
+    }
+    /**
+     * The location of a value that has not been decoded yet.
+     */
+    private static final class LazyValue {
+        final int start;
+        final int end;
+        LazyValue(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+    /**
+     * Decodes a lazily parsed value and replaces its mapping with the result.
+     */
+    private Object decode(String name, LazyValue lazy) throws JSONException {
+        JSONReader reader = new JSONReader(lazySource, lazy.start, lazy.end - lazy.start);
+        Object value;
+        if (reader.peek() == JSONReader.Token.BEGIN_OBJECT) {
+            value = lazy(lazySource, lazy.start, lazy.end);
+        } else {
+            value = reader.nextValue();
+            if (value instanceof Number) {
+                JSON.checkDouble(((Number) value).doubleValue());
+            }
+        }
+        nameValuePairs.put(name, value);
+        return value;
+    }
+    /**
+     * Returns the value mapped by {@code name}, decoding it if necessary, or
+     * null if no such mapping exists.
+     */
+    private Object value(String name) throws JSONException {
+        Object value = nameValuePairs.get(name);
+        if (value instanceof LazyValue) {
+            return decode(name, (LazyValue) value);
+        }
+        return value;
     }
     /**
      * Creates a new {@code JSONObject} by copying mappings for the listed names
@@ -280,7 +370,7 @@ public class JSONObject {
     // TODO: Change {@code append) to {@link #append} when append is
     // unhidden.
     public JSONObject accumulate(String name, Object value) throws JSONException {
-        Object current = nameValuePairs.get(checkName(name));
+        Object current = value(checkName(name));
         if (current == null) {
             return put(name, value);
         }
@@ -307,7 +397,7 @@ public class JSONObject {
      * @hide
      */
     public JSONObject append(String name, Object value) throws JSONException {
-        Object current = nameValuePairs.get(checkName(name));
+        Object current = value(checkName(name));
         final JSONArray array;
         if (current instanceof JSONArray) {
             array = (JSONArray) current;
@@ -334,14 +424,16 @@ public class JSONObject {
      *     no such mapping.
      */
     public Object remove(String name) {
-        return nameValuePairs.remove(name);
+        Object value = opt(name);
+        nameValuePairs.remove(name);
+        return value;
     }
     /**
      * Returns true if this object has no mapping for {@code name} or if it has
      * a mapping whose value is {@link #NULL}.
      */
     public boolean isNull(String name) {
-        Object value = nameValuePairs.get(name);
+        Object value = opt(name);
         return value == null || value == NULL;
     }
     /**
@@ -357,7 +449,7 @@ public class JSONObject {
      * @throws JSONException if no such mapping exists.
      */
     public Object get(String name) throws JSONException {
-        Object result = nameValuePairs.get(name);
+        Object result = value(name);
         if (result == null) {
             throw new JSONException("No value for " + name);
         }
@@ -368,7 +460,11 @@ public class JSONObject {
      * exists.
      */
     public Object opt(String name) {
-        return nameValuePairs.get(name);
+        try {
+            return value(name);
+        } catch (JSONException e) {
+            return null;
+        }
     }
     /**
      * Returns the value mapped by {@code name} if it exists and is a boolean or
@@ -410,6 +506,9 @@ public class JSONObject {
      */
     public double getDouble(String name) throws JSONException {
         Object object = get(name);
+        if (object instanceof Number) {
+            return ((Number) object).doubleValue();
+        }
         Double result = JSON.toDouble(object);
         if (result == null) {
             throw JSON.typeMismatch(name, object, "double");
@@ -429,6 +528,9 @@ public class JSONObject {
      */
     public double optDouble(String name, double fallback) {
         Object object = opt(name);
+        if (object instanceof Number) {
+            return ((Number) object).doubleValue();
+        }
         Double result = JSON.toDouble(object);
         return result != null ? result : fallback;
     }
@@ -441,6 +543,9 @@ public class JSONObject {
      */
     public int getInt(String name) throws JSONException {
         Object object = get(name);
+        if (object instanceof Number) {
+            return ((Number) object).intValue();
+        }
         Integer result = JSON.toInteger(object);
         if (result == null) {
             throw JSON.typeMismatch(name, object, "int");
@@ -460,6 +565,9 @@ public class JSONObject {
      */
     public int optInt(String name, int fallback) {
         Object object = opt(name);
+        if (object instanceof Number) {
+            return ((Number) object).intValue();
+        }
         Integer result = JSON.toInteger(object);
         return result != null ? result : fallback;
     }
@@ -474,6 +582,9 @@ public class JSONObject {
      */
     public long getLong(String name) throws JSONException {
         Object object = get(name);
+        if (object instanceof Number) {
+            return ((Number) object).longValue();
+        }
         Long result = JSON.toLong(object);
         if (result == null) {
             throw JSON.typeMismatch(name, object, "long");
@@ -496,6 +607,9 @@ public class JSONObject {
      */
     public long optLong(String name, long fallback) {
         Object object = opt(name);
+        if (object instanceof Number) {
+            return ((Number) object).longValue();
+        }
         Long result = JSON.toLong(object);
         return result != null ? result : fallback;
     }
@@ -660,10 +774,29 @@ public class JSONObject {
         writeTo(stringer);
         return stringer.toString();
     }
+    /**
+     * Encodes this object as a compact JSON string to {@code out}, the same
+     * way {@link #toString()} does, without building the whole string in
+     * memory first.
+     *
+     * @param out an {@link Appendable} such as a {@link java.io.Writer} or a
+     *     {@link StringBuilder}.
+     * @throws JSONException if this object cannot be encoded or writing to
+     *     {@code out} fails.
+     */
+    public void write(Appendable out) throws JSONException {
+        JSONStringer stringer = new JSONStringer(out);
+        writeTo(stringer);
+        stringer.flush();
+    }
     void writeTo(JSONStringer stringer) throws JSONException {
         stringer.object();
         for (Map.Entry<String, Object> entry : nameValuePairs.entrySet()) {
-            stringer.key(entry.getKey()).value(entry.getValue());
+            Object value = entry.getValue();
+            if (value instanceof LazyValue) {
+                value = decode(entry.getKey(), (LazyValue) value);
+            }
+            stringer.key(entry.getKey()).value(value);
         }
         stringer.endObject();
     }
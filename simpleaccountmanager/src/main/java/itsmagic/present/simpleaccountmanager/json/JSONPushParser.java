@@ -0,0 +1,662 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package itsmagic.present.simpleaccountmanager.json;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+/**
+ * Parses a JSON (<a href="http://www.ietf.org/rfc/rfc4627.txt">RFC 4627</a>)
+ * encoded value from chunks of input as they arrive, and hands each value at
+ * a chosen depth to a {@link Listener} as soon as it is complete. Example
+ * usage, for a response like <code>{"items": [{...}, {...}], "total": 2}</code>:
+ * <pre>
+ * JSONPushParser parser = new JSONPushParser(2, new JSONPushParser.Listener() {
+ *     public void onValue(String name, Object item) throws JSONException {
+ *         showItem((JSONObject) item);
+ *     }
+ * });
+ * while ((count = in.read(buffer)) != -1) {
+ *     parser.feed(buffer, 0, count);
+ * }
+ * JSONObject page = (JSONObject) parser.end(); // {"items": [], "total": 2}</pre>
+ *
+ * <p>Chunks may split the input anywhere, including inside a string, an
+ * escape sequence, a number, a comment or a multi-byte UTF-8 character. The
+ * state of the parse is kept between calls to {@code feed}, so each chunk is
+ * scanned exactly once and the input is never buffered as a whole.
+ *
+ * <p>This parser accepts exactly the same lenient syntax as {@link
+ * JSONTokener} and builds the same values. Values handed to the listener are
+ * not added to their parent, so memory only grows with the part of the
+ * document that isn't listened to. Like {@link JSONTokener}, any content
+ * after the top level value is ignored.
+ *
+ * <p>Each parser may be used to parse a single top level value. Instances of
+ * this class are not thread safe.
+ */
+public class JSONPushParser {
+    /**
+     * Receives the values of a {@link JSONPushParser} as they are completed.
+     */
+    public interface Listener {
+        /**
+         * Called when a value at the parser's depth has been completely parsed.
+         *
+         * @param name the name of the value if its parent is an object, or
+         *     null if its parent is an array or it is the top level value.
+         * @param value a {@link JSONObject}, {@link JSONArray}, String,
+         *     Boolean, Integer, Long, Double or {@link JSONObject#NULL}. An
+         *     omitted array element is reported as null.
+         * @throws JSONException to stop parsing. The exception is thrown
+         *     from the current call to {@link #feed} or {@link #end}.
+         */
+        void onValue(String name, Object value) throws JSONException;
+    }
+    /* lexer states: what the next character continues */
+    private static final int LEX_DEFAULT = 0;
+    private static final int LEX_STRING = 1;
+    private static final int LEX_ESCAPE = 2;
+    private static final int LEX_UNICODE = 3;
+    private static final int LEX_LITERAL = 4;
+    /** After a '/', which must start a comment. */
+    private static final int LEX_SLASH = 5;
+    private static final int LEX_BLOCK_COMMENT = 6;
+    /** After a '*' in a block comment, which may end it. */
+    private static final int LEX_BLOCK_COMMENT_STAR = 7;
+    private static final int LEX_LINE_COMMENT = 8;
+    /** After a name separator, which may be followed by a '>'. */
+    private static final int LEX_SEPARATOR = 9;
+    /* tokens passed from the lexer to the parser */
+    private static final int BEGIN_OBJECT = 0;
+    private static final int END_OBJECT = 1;
+    private static final int BEGIN_ARRAY = 2;
+    private static final int END_ARRAY = 3;
+    private static final int NAME_SEPARATOR = 4;
+    private static final int ELEMENT_SEPARATOR = 5;
+    private static final int STRING = 6;
+    private static final int LITERAL = 7;
+    /** A character that can't start a token, such as a lone '/'. */
+    private static final int INVALID = 8;
+    /* parser states of a container */
+    private static final int OBJECT_START = 0;
+    private static final int OBJECT_NAME = 1;
+    private static final int OBJECT_SEPARATOR = 2;
+    private static final int OBJECT_VALUE = 3;
+    private static final int OBJECT_NEXT = 4;
+    private static final int ARRAY_VALUE = 5;
+    private static final int ARRAY_NEXT = 6;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final int depth;
+    private final Listener listener;
+    /** The containers that have been opened but not closed yet. */
+    private final ArrayList<Container> stack = new ArrayList<Container>();
+    private int lexState = LEX_DEFAULT;
+    /** The characters of the current string, literal or unicode escape. */
+    private final StringBuilder text = new StringBuilder();
+    private final StringBuilder hex = new StringBuilder(4);
+    private char quote;
+    /** The number of characters that have been fed so far. */
+    private long position;
+    private Object root;
+    private boolean complete;
+    private boolean ended;
+    /** The first error, which every later call rethrows. */
+    private JSONException failure;
+    /* state of the UTF-8 decoding of byte chunks */
+    private CharsetDecoder decoder;
+    private ByteBuffer pendingBytes;
+    private CharBuffer decoded;
+    /**
+     * @param depth the depth of the values to hand to {@code listener}: 0
+     *     for the top level value, 1 for its members or elements, and so on.
+     *     Use -1 to only build the value returned by {@link #end}.
+     * @param listener the listener, or null if {@code depth} is -1.
+     */
+    public JSONPushParser(int depth, Listener listener) {
+        if (depth >= 0 && listener == null) {
+            throw new NullPointerException("listener == null");
+        }
+        this.depth = depth;
+        this.listener = listener;
+    }
+    /**
+     * Parses the next {@code length} characters of {@code chars}, starting at
+     * {@code offset}.
+     *
+     * @return this parser.
+     * @throws JSONException if the input so far is malformed, or the listener
+     *     threw.
+     */
+    public JSONPushParser feed(char[] chars, int offset, int length) throws JSONException {
+        checkOpen();
+        if (decoder != null && pendingBytes.position() > 0) {
+            throw new IllegalStateException("Incomplete UTF-8 character before characters");
+        }
+        parse(chars, offset, offset + length);
+        return this;
+    }
+    /**
+     * Parses the characters of {@code chunk}.
+     *
+     * @return this parser.
+     * @throws JSONException if the input so far is malformed, or the listener
+     *     threw.
+     */
+    public JSONPushParser feed(String chunk) throws JSONException {
+        char[] chars = chunk.toCharArray();
+        return feed(chars, 0, chars.length);
+    }
+    /**
+     * Parses the next {@code length} bytes of UTF-8 encoded input from {@code
+     * bytes}, starting at {@code offset}. A character may be split between
+     * chunks. Malformed UTF-8 is replaced with U+FFFD, like {@link
+     * String#String(byte[], Charset)} does.
+     *
+     * @return this parser.
+     * @throws JSONException if the input so far is malformed, or the listener
+     *     threw.
+     */
+    public JSONPushParser feed(byte[] bytes, int offset, int length) throws JSONException {
+        checkOpen();
+        if (decoder == null) {
+            decoder = UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            pendingBytes = ByteBuffer.allocate(8);
+            decoded = CharBuffer.allocate(1024);
+        }
+        int end = offset + length;
+        // complete a character split by the previous chunk, one byte at a time
+        while (pendingBytes.position() > 0 && offset < end) {
+            pendingBytes.put(bytes[offset++]);
+            pendingBytes.flip();
+            decode(pendingBytes, false);
+            pendingBytes.compact();
+        }
+        if (offset < end) {
+            ByteBuffer in = ByteBuffer.wrap(bytes, offset, end - offset);
+            decode(in, false);
+            pendingBytes.put(in);
+        }
+        return this;
+    }
+    /**
+     * Ends the input, and returns the top level value. Values that were handed
+     * to the listener are missing from it: objects don't have their names, and
+     * arrays don't have their elements.
+     *
+     * @throws JSONException if the input is malformed or incomplete, or the
+     *     listener threw.
+     */
+    public Object end() throws JSONException {
+        checkOpen();
+        if (decoder != null) {
+            pendingBytes.flip();
+            decode(pendingBytes, true);
+            pendingBytes.clear();
+            decoded.clear();
+            decoder.flush(decoded);
+            decoded.flip();
+            parse(decoded.array(), 0, decoded.limit());
+        }
+        ended = true;
+        try {
+            if (!complete) {
+                endOfInput();
+            }
+        } catch (JSONException e) {
+            failure = e;
+            throw e;
+        }
+        return root;
+    }
+    /**
+     * Returns true once the top level value has been completely parsed. Any
+     * further input is ignored.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+    private void checkOpen() throws JSONException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (ended) {
+            throw new IllegalStateException("end() has already been called");
+        }
+    }
+    private void decode(ByteBuffer in, boolean endOfInput) throws JSONException {
+        while (true) {
+            decoded.clear();
+            CoderResult result = decoder.decode(in, decoded, endOfInput);
+            decoded.flip();
+            parse(decoded.array(), 0, decoded.limit());
+            if (!result.isOverflow()) {
+                return;
+            }
+        }
+    }
+    private void parse(char[] chars, int start, int end) throws JSONException {
+        try {
+            for (int i = start; i < end && !complete; i++) {
+                char c = chars[i];
+                // consume an optional byte order mark (BOM) if it exists
+                if (position++ == 0 && c == '\ufeff') {
+                    continue;
+                }
+                lex(c);
+            }
+        } catch (JSONException e) {
+            failure = e;
+            throw e;
+        }
+    }
+    private void lex(char c) throws JSONException {
+        switch (lexState) {
+            case LEX_STRING:
+                if (c == quote) {
+                    lexState = LEX_DEFAULT;
+                    token(STRING);
+                } else if (c == '\\') {
+                    lexState = LEX_ESCAPE;
+                } else {
+                    text.append(c);
+                }
+                return;
+            case LEX_ESCAPE:
+                lexState = LEX_STRING;
+                switch (c) {
+                    case 'u':
+                        hex.setLength(0);
+                        lexState = LEX_UNICODE;
+                        return;
+                    case 't':
+                        text.append('\t');
+                        return;
+                    case 'b':
+                        text.append('\b');
+                        return;
+                    case 'n':
+                        text.append('\n');
+                        return;
+                    case 'r':
+                        text.append('\r');
+                        return;
+                    case 'f':
+                        text.append('\f');
+                        return;
+                    default:
+                        text.append(c);
+                        return;
+                }
+            case LEX_UNICODE:
+                hex.append(c);
+                if (hex.length() == 4) {
+                    try {
+                        text.append((char) Integer.parseInt(hex.toString(), 16));
+                    } catch (NumberFormatException nfe) {
+                        throw syntaxError("Invalid escape sequence: " + hex);
+                    }
+                    lexState = LEX_STRING;
+                }
+                return;
+            case LEX_LITERAL:
+                if (isLiteralEnd(c)) {
+                    lexState = LEX_DEFAULT;
+                    token(LITERAL);
+                    // the terminating character starts the next token
+                    if (!complete) {
+                        lex(c);
+                    }
+                } else {
+                    text.append(c);
+                }
+                return;
+            case LEX_SLASH:
+                if (c == '*') {
+                    lexState = LEX_BLOCK_COMMENT;
+                } else if (c == '/') {
+                    lexState = LEX_LINE_COMMENT;
+                } else {
+                    lexState = LEX_DEFAULT;
+                    token(INVALID);
+                }
+                return;
+            case LEX_BLOCK_COMMENT:
+                if (c == '*') {
+                    lexState = LEX_BLOCK_COMMENT_STAR;
+                }
+                return;
+            case LEX_BLOCK_COMMENT_STAR:
+                if (c == '/') {
+                    lexState = LEX_DEFAULT;
+                } else if (c != '*') {
+                    lexState = LEX_BLOCK_COMMENT;
+                }
+                return;
+            case LEX_LINE_COMMENT:
+                if (c == '\r' || c == '\n') {
+                    lexState = LEX_DEFAULT;
+                }
+                return;
+            case LEX_SEPARATOR:
+                lexState = LEX_DEFAULT;
+                if (c == '>') {
+                    return;
+                }
+                break;
+        }
+        switch (c) {
+            case '\t':
+            case ' ':
+            case '\n':
+            case '\r':
+                return;
+            case '/':
+                lexState = LEX_SLASH;
+                return;
+            case '#':
+                lexState = LEX_LINE_COMMENT;
+                return;
+            case '{':
+                token(BEGIN_OBJECT);
+                return;
+            case '}':
+                token(END_OBJECT);
+                return;
+            case '[':
+                token(BEGIN_ARRAY);
+                return;
+            case ']':
+                token(END_ARRAY);
+                return;
+            case ':':
+            case '=':
+                token(NAME_SEPARATOR);
+                lexState = LEX_SEPARATOR;
+                return;
+            case ',':
+            case ';':
+                token(ELEMENT_SEPARATOR);
+                return;
+            case '"':
+            case '\'':
+                text.setLength(0);
+                quote = c;
+                lexState = LEX_STRING;
+                return;
+            case '\\':
+            case '\f':
+                // these end a literal before it starts
+                token(INVALID);
+                return;
+            default:
+                text.setLength(0);
+                text.append(c);
+                lexState = LEX_LITERAL;
+        }
+    }
+    private static boolean isLiteralEnd(char c) {
+        switch (c) {
+            case '{':
+            case '}':
+            case '[':
+            case ']':
+            case '/':
+            case '\\':
+            case ':':
+            case ',':
+            case '=':
+            case ';':
+            case '#':
+            case ' ':
+            case '\t':
+            case '\f':
+            case '\r':
+            case '\n':
+                return true;
+            default:
+                return false;
+        }
+    }
+    private void endOfInput() throws JSONException {
+        switch (lexState) {
+            case LEX_STRING:
+                throw syntaxError("Unterminated string");
+            case LEX_ESCAPE:
+            case LEX_UNICODE:
+                throw syntaxError("Unterminated escape sequence");
+            case LEX_LITERAL:
+                lexState = LEX_DEFAULT;
+                token(LITERAL);
+                if (complete) {
+                    return;
+                }
+                break;
+            case LEX_SLASH:
+                throw syntaxError("Expected literal value");
+            case LEX_BLOCK_COMMENT:
+            case LEX_BLOCK_COMMENT_STAR:
+                throw syntaxError("Unterminated comment");
+        }
+        if (stack.isEmpty()) {
+            throw syntaxError("End of input");
+        }
+        Container top = stack.get(stack.size() - 1);
+        switch (top.state) {
+            case OBJECT_START:
+            case OBJECT_NAME:
+            case OBJECT_VALUE:
+                throw syntaxError("End of input");
+            case OBJECT_SEPARATOR:
+                throw syntaxError("Expected ':' after " + top.name);
+            case OBJECT_NEXT:
+                throw syntaxError("Unterminated object");
+            default:
+                throw syntaxError("Unterminated array");
+        }
+    }
+    /**
+     * Advances the parser past {@code token}. The text of strings and
+     * literals is in {@link #text}.
+     */
+    private void token(int token) throws JSONException {
+        if (stack.isEmpty()) {
+            value(token);
+            return;
+        }
+        Container top = stack.get(stack.size() - 1);
+        switch (top.state) {
+            case OBJECT_START:
+                if (token == END_OBJECT) {
+                    close();
+                } else {
+                    top.name = name(token);
+                    top.state = OBJECT_SEPARATOR;
+                }
+                return;
+            case OBJECT_NAME:
+                top.name = name(token);
+                top.state = OBJECT_SEPARATOR;
+                return;
+            case OBJECT_SEPARATOR:
+                if (token != NAME_SEPARATOR) {
+                    throw syntaxError("Expected ':' after " + top.name);
+                }
+                top.state = OBJECT_VALUE;
+                return;
+            case OBJECT_VALUE:
+                value(token);
+                return;
+            case OBJECT_NEXT:
+                if (token == END_OBJECT) {
+                    close();
+                } else if (token == ELEMENT_SEPARATOR) {
+                    top.state = OBJECT_NAME;
+                } else {
+                    throw syntaxError("Unterminated object");
+                }
+                return;
+            case ARRAY_VALUE:
+                if (token == END_ARRAY) {
+                    if (top.hasTrailingSeparator) {
+                        add(null);
+                    }
+                    close();
+                } else if (token == ELEMENT_SEPARATOR) {
+                    /* A separator without a value first means "null". */
+                    add(null);
+                    top.hasTrailingSeparator = true;
+                    top.state = ARRAY_VALUE;
+                } else {
+                    value(token);
+                }
+                return;
+            case ARRAY_NEXT:
+                if (token == END_ARRAY) {
+                    close();
+                } else if (token == ELEMENT_SEPARATOR) {
+                    top.hasTrailingSeparator = true;
+                    top.state = ARRAY_VALUE;
+                } else {
+                    throw syntaxError("Unterminated array");
+                }
+                return;
+        }
+    }
+    /**
+     * Starts or completes the value that begins with {@code token}.
+     */
+    private void value(int token) throws JSONException {
+        switch (token) {
+            case BEGIN_OBJECT:
+                stack.add(new Container(new JSONObject(), OBJECT_START));
+                return;
+            case BEGIN_ARRAY:
+                stack.add(new Container(new JSONArray(), ARRAY_VALUE));
+                return;
+            case STRING:
+                add(text.toString());
+                return;
+            case LITERAL:
+                add(literal());
+                return;
+            default:
+                throw syntaxError("Expected literal value");
+        }
+    }
+    private String name(int token) throws JSONException {
+        Object name;
+        switch (token) {
+            case STRING:
+                return text.toString();
+            case LITERAL:
+                name = literal();
+                break;
+            case BEGIN_OBJECT:
+                throw syntaxError("Names must be strings, but an object was found");
+            case BEGIN_ARRAY:
+                throw syntaxError("Names must be strings, but an array was found");
+            default:
+                throw syntaxError("Expected literal value");
+        }
+        if (name instanceof String) {
+            return (String) name;
+        }
+        throw syntaxError("Names must be strings, but " + name
+                + " is of type " + name.getClass().getName());
+    }
+    /**
+     * Returns the null, boolean, numeric or unquoted string literal in {@link
+     * #text}, like {@link JSONTokener} does.
+     */
+    private Object literal() {
+        int length = text.length();
+        String literal = text.toString();
+        if (length == 4 && "null".equalsIgnoreCase(literal)) {
+            return JSONObject.NULL;
+        } else if (length == 4 && "true".equalsIgnoreCase(literal)) {
+            return Boolean.TRUE;
+        } else if (length == 5 && "false".equalsIgnoreCase(literal)) {
+            return Boolean.FALSE;
+        }
+        Number number = JSON.parseNumber(literal, 0, length);
+        return number != null ? number : literal;
+    }
+    /**
+     * Adds a completed value to the innermost container, or hands it to the
+     * listener if it is at the listened depth.
+     */
+    private void add(Object value) throws JSONException {
+        int valueDepth = stack.size();
+        Container parent = valueDepth > 0 ? stack.get(valueDepth - 1) : null;
+        if (parent != null && parent.object != null && value instanceof Number) {
+            // objects don't accept NaN or infinities, even when they are listened to
+            JSON.checkDouble(((Number) value).doubleValue());
+        }
+        if (valueDepth == depth) {
+            listener.onValue(parent != null && parent.object != null ? parent.name : null, value);
+        }
+        if (parent == null) {
+            root = value;
+            complete = true;
+        } else if (parent.object != null) {
+            if (valueDepth != depth) {
+                parent.object.put(parent.name, value);
+            }
+            parent.state = OBJECT_NEXT;
+        } else {
+            if (valueDepth != depth) {
+                parent.array.put(value);
+            }
+            parent.state = ARRAY_NEXT;
+        }
+    }
+    private void close() throws JSONException {
+        Container closed = stack.remove(stack.size() - 1);
+        add(closed.object != null ? closed.object : closed.array);
+    }
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + this);
+    }
+    /**
+     * Returns the number of characters parsed so far.
+     */
+    @Override public String toString() {
+        // consistent with JSONTokener
+        return " at character " + position;
+    }
+    /**
+     * An object or array that hasn't been closed yet.
+     */
+    private static final class Container {
+        final JSONObject object;
+        final JSONArray array;
+        int state;
+        /** The name of the object member being parsed. */
+        String name;
+        boolean hasTrailingSeparator;
+        Container(Object value, int state) {
+            this.object = value instanceof JSONObject ? (JSONObject) value : null;
+            this.array = value instanceof JSONArray ? (JSONArray) value : null;
+            this.state = state;
+        }
+    }
+}
@@ -0,0 +1,1175 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package itsmagic.present.simpleaccountmanager.json;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+/**
+ * Reads a JSON (<a href="http://www.ietf.org/rfc/rfc4627.txt">RFC 4627</a>)
+ * encoded value as a stream of tokens, without building a {@link JSONObject}
+ * or {@link JSONArray} tree. Example usage: <pre>
+ * JSONReader reader = new JSONReader(new StringReader(json));
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *     String name = reader.nextName();
+ *     if (name.equals("query")) {
+ *         String query = reader.nextString();
+ *     } else {
+ *         reader.skipValue();
+ *     }
+ * }
+ * reader.endObject();</pre>
+ *
+ * <p>The input is read through a reusable character buffer. Tokens are
+ * located in place: names and strings are only copied out of the buffer when
+ * {@link #nextName} or {@link #nextString} is called, numbers are decoded
+ * straight from the buffered characters, and {@link #skipValue} never
+ * allocates.
+ *
+ * <p>This reader accepts exactly the same lenient syntax as {@link
+ * JSONTokener}, including comments, unquoted and single quoted strings,
+ * {@code =} and {@code =>} name separators, {@code ;} element separators and
+ * omitted array elements (which are reported as {@link Token#NULL}).
+ * Malformed input fails with a {@link JSONException} carrying the same
+ * messages as {@link JSONTokener}. {@link #nextValue} builds the same tree
+ * that {@link JSONTokener#nextValue} would.
+ *
+ * <p>Each reader may be used to read a single top level value. Instances of
+ * this class are not thread safe.
+ */
+public class JSONReader implements Closeable {
+    /**
+     * The kind of token at the current position of a {@link JSONReader}.
+     */
+    public enum Token {
+        /** The opening of an array, {@code [}. */
+        BEGIN_ARRAY,
+        /** The closing of an array, {@code ]}. */
+        END_ARRAY,
+        /** The opening of an object, {@code {}. */
+        BEGIN_OBJECT,
+        /** The closing of an object, {@code }}. */
+        END_OBJECT,
+        /** A property name within an object. */
+        NAME,
+        /** A quoted or unquoted string value. */
+        STRING,
+        /** A numeric value. */
+        NUMBER,
+        /** A {@code true} or {@code false} literal. */
+        BOOLEAN,
+        /** A {@code null} literal or an omitted array element. */
+        NULL,
+        /** The end of the top level value. */
+        END_DOCUMENT,
+    }
+    private static final int DEFAULT_BUFFER_SIZE = 1024;
+    /* The token at the current position, if it has been peeked. */
+    private static final int PEEKED_NONE = 0;
+    private static final int PEEKED_BEGIN_OBJECT = 1;
+    private static final int PEEKED_END_OBJECT = 2;
+    private static final int PEEKED_BEGIN_ARRAY = 3;
+    private static final int PEEKED_END_ARRAY = 4;
+    private static final int PEEKED_TRUE = 5;
+    private static final int PEEKED_FALSE = 6;
+    private static final int PEEKED_NULL = 7;
+    private static final int PEEKED_IMPLICIT_NULL = 8;
+    private static final int PEEKED_QUOTED = 9;
+    private static final int PEEKED_UNQUOTED = 10;
+    private static final int PEEKED_QUOTED_NAME = 11;
+    private static final int PEEKED_UNQUOTED_NAME = 12;
+    private static final int PEEKED_NUMBER = 13;
+    private static final int PEEKED_EOF = 14;
+    /* How a peeked number has been decoded. */
+    private static final int NUMBER_INTEGRAL = 0;
+    private static final int NUMBER_DECIMAL = 1;
+    private static final int NUMBER_BOXED = 2;
+    /* Lexical scopes, equivalent to JSONStringer.Scope. */
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    /** An array whose most recent element was a separator. */
+    private static final int DANGLING_SEPARATOR = 4;
+    /** An array whose trailing separator has been reported as a null. */
+    private static final int CLOSING_ARRAY = 5;
+    private static final int EMPTY_OBJECT = 6;
+    private static final int DANGLING_NAME = 7;
+    private static final int NONEMPTY_OBJECT = 8;
+    /** The source of additional input, or null if all input is buffered. */
+    private Reader in;
+    private char[] buffer;
+    /** The index of the next character to be read from {@link #buffer}. */
+    private int pos;
+    /** The index after the last valid character in {@link #buffer}. */
+    private int limit;
+    /**
+     * The position of {@code buffer[0]} relative to the start of the input,
+     * used to report error positions.
+     */
+    private int bufferOffset;
+    /** For fully buffered input, the index of its first character. */
+    private int inputStart;
+    private int peeked = PEEKED_NONE;
+    /** For quoted tokens, the quote character. */
+    private char peekedQuote;
+    /**
+     * For literal tokens, the number of characters starting at {@link #pos}
+     * that make up the literal.
+     */
+    private int peekedLength;
+    private int peekedNumberKind;
+    private long peekedLong;
+    private Number peekedNumber;
+    /** The most recently read name, for error messages. */
+    private String lastName;
+    private int[] stack = new int[32];
+    private int stackSize = 0;
+    {
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+    /**
+     * Creates a reader that reads its input from {@code in}, buffering it
+     * internally.
+     */
+    public JSONReader(Reader in) {
+        if (in == null) {
+            throw new NullPointerException("in == null");
+        }
+        this.in = in;
+        this.buffer = new char[DEFAULT_BUFFER_SIZE];
+    }
+    /**
+     * Creates a reader over {@code length} characters of {@code buffer}
+     * starting at {@code offset}. The array is read in place and must not be
+     * modified while the reader is in use.
+     */
+    public JSONReader(char[] buffer, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > buffer.length) {
+            throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length);
+        }
+        this.in = null;
+        this.buffer = buffer;
+        this.pos = offset;
+        this.limit = offset + length;
+        this.bufferOffset = -offset;
+        this.inputStart = offset;
+    }
+    /**
+     * Creates a reader over the given JSON encoded string.
+     */
+    public JSONReader(String in) {
+        this(in.toCharArray(), 0, in.length());
+    }
+    /**
+     * Returns the type of the next token without consuming it.
+     */
+    public Token peek() throws JSONException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        switch (p) {
+            case PEEKED_BEGIN_OBJECT:
+                return Token.BEGIN_OBJECT;
+            case PEEKED_END_OBJECT:
+                return Token.END_OBJECT;
+            case PEEKED_BEGIN_ARRAY:
+                return Token.BEGIN_ARRAY;
+            case PEEKED_END_ARRAY:
+                return Token.END_ARRAY;
+            case PEEKED_QUOTED_NAME:
+            case PEEKED_UNQUOTED_NAME:
+                return Token.NAME;
+            case PEEKED_TRUE:
+            case PEEKED_FALSE:
+                return Token.BOOLEAN;
+            case PEEKED_NULL:
+            case PEEKED_IMPLICIT_NULL:
+                return Token.NULL;
+            case PEEKED_QUOTED:
+            case PEEKED_UNQUOTED:
+                return Token.STRING;
+            case PEEKED_NUMBER:
+                return Token.NUMBER;
+            default:
+                return Token.END_DOCUMENT;
+        }
+    }
+    /**
+     * Returns true if the current array or object has another element.
+     */
+    public boolean hasNext() throws JSONException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        return p != PEEKED_END_OBJECT && p != PEEKED_END_ARRAY && p != PEEKED_EOF;
+    }
+    /**
+     * Consumes the opening bracket of an array.
+     */
+    public void beginArray() throws JSONException {
+        expect(PEEKED_BEGIN_ARRAY, Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+    /**
+     * Consumes the closing bracket of the current array.
+     */
+    public void endArray() throws JSONException {
+        expect(PEEKED_END_ARRAY, Token.END_ARRAY);
+        stackSize--;
+    }
+    /**
+     * Consumes the opening brace of an object.
+     */
+    public void beginObject() throws JSONException {
+        expect(PEEKED_BEGIN_OBJECT, Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+    /**
+     * Consumes the closing brace of the current object.
+     */
+    public void endObject() throws JSONException {
+        expect(PEEKED_END_OBJECT, Token.END_OBJECT);
+        stackSize--;
+    }
+    /**
+     * Returns the next property name and consumes it.
+     *
+     * @throws JSONException if the next token is not a name.
+     */
+    public String nextName() throws JSONException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        String result;
+        if (p == PEEKED_QUOTED_NAME) {
+            result = readQuoted(peekedQuote);
+        } else if (p == PEEKED_UNQUOTED_NAME) {
+            result = new String(buffer, pos, peekedLength);
+            pos += peekedLength;
+        } else {
+            throw syntaxError("Expected a name but was " + peek());
+        }
+        peeked = PEEKED_NONE;
+        lastName = result;
+        return result;
+    }
+    /**
+     * Returns the next string value and consumes it. Numbers are returned
+     * in their literal form.
+     *
+     * @throws JSONException if the next token is not a string or a number.
+     */
+    public String nextString() throws JSONException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        String result;
+        if (p == PEEKED_QUOTED) {
+            result = readQuoted(peekedQuote);
+        } else if (p == PEEKED_UNQUOTED || p == PEEKED_NUMBER) {
+            result = new String(buffer, pos, peekedLength);
+            pos += peekedLength;
+        } else {
+            throw syntaxError("Expected a string but was " + peek());
+        }
+        peeked = PEEKED_NONE;
+        return result;
+    }
+    /**
+     * Returns the next boolean value and consumes it.
+     *
+     * @throws JSONException if the next token is not a boolean literal.
+     */
+    public boolean nextBoolean() throws JSONException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        boolean result;
+        if (p == PEEKED_TRUE) {
+            result = true;
+        } else if (p == PEEKED_FALSE) {
+            result = false;
+        } else {
+            throw syntaxError("Expected a boolean but was " + peek());
+        }
+        pos += peekedLength;
+        peeked = PEEKED_NONE;
+        return result;
+    }
+    /**
+     * Consumes the next {@code null} literal or omitted array element.
+     *
+     * @throws JSONException if the next token is not null.
+     */
+    public void nextNull() throws JSONException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        if (p == PEEKED_NULL) {
+            pos += peekedLength;
+        } else if (p != PEEKED_IMPLICIT_NULL) {
+            throw syntaxError("Expected null but was " + peek());
+        }
+        peeked = PEEKED_NONE;
+    }
+    /**
+     * Returns the next numeric value as a double and consumes it. Strings
+     * are coerced the same way {@link JSONObject#getDouble} coerces them.
+     *
+     * @throws JSONException if the next token cannot be coerced to a double.
+     */
+    public double nextDouble() throws JSONException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        if (p != PEEKED_NUMBER) {
+            String string = nextStringForNumber("double");
+            Double result = JSON.toDouble(string);
+            if (result == null) {
+                throw syntaxError("Expected a double but was " + string);
+            }
+            return result;
+        }
+        double result;
+        if (peekedNumberKind == NUMBER_INTEGRAL) {
+            result = peekedLong;
+        } else if (peekedNumberKind == NUMBER_DECIMAL) {
+            result = decimalValue();
+        } else {
+            result = peekedNumber.doubleValue();
+        }
+        pos += peekedLength;
+        peeked = PEEKED_NONE;
+        return result;
+    }
+    /**
+     * Returns the next numeric value as a long and consumes it. Values are
+     * narrowed and strings are coerced the same way {@link
+     * JSONObject#getLong} does.
+     *
+     * @throws JSONException if the next token cannot be coerced to a long.
+     */
+    public long nextLong() throws JSONException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        if (p != PEEKED_NUMBER) {
+            String string = nextStringForNumber("long");
+            Long result = JSON.toLong(string);
+            if (result == null) {
+                throw syntaxError("Expected a long but was " + string);
+            }
+            return result;
+        }
+        long result;
+        if (peekedNumberKind == NUMBER_INTEGRAL) {
+            result = peekedLong;
+        } else if (peekedNumberKind == NUMBER_DECIMAL) {
+            result = (long) decimalValue();
+        } else {
+            result = peekedNumber.longValue();
+        }
+        pos += peekedLength;
+        peeked = PEEKED_NONE;
+        return result;
+    }
+    /**
+     * Returns the next numeric value as an int and consumes it. Values are
+     * narrowed and strings are coerced the same way {@link
+     * JSONObject#getInt} does.
+     *
+     * @throws JSONException if the next token cannot be coerced to an int.
+     */
+    public int nextInt() throws JSONException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        if (p != PEEKED_NUMBER) {
+            String string = nextStringForNumber("int");
+            Integer result = JSON.toInteger(string);
+            if (result == null) {
+                throw syntaxError("Expected an int but was " + string);
+            }
+            return result;
+        }
+        int result;
+        if (peekedNumberKind == NUMBER_INTEGRAL) {
+            result = (int) peekedLong;
+        } else if (peekedNumberKind == NUMBER_DECIMAL) {
+            result = (int) decimalValue();
+        } else {
+            result = peekedNumber.intValue();
+        }
+        pos += peekedLength;
+        peeked = PEEKED_NONE;
+        return result;
+    }
+    /**
+     * Decodes the peeked decimal literal.
+     */
+    private double decimalValue() {
+        return Double.parseDouble(new String(buffer, pos, peekedLength));
+    }
+    private String nextStringForNumber(String requiredType) throws JSONException {
+        if (peeked != PEEKED_QUOTED && peeked != PEEKED_UNQUOTED) {
+            throw syntaxError("Expected " + requiredType + " but was " + peek());
+        }
+        return nextString();
+    }
+    /**
+     * Skips the next value, including any nested arrays and objects, without
+     * decoding it. Names are skipped along with their values.
+     */
+    public void skipValue() throws JSONException {
+        int depth = 0;
+        while (true) {
+            int p = peeked;
+            if (p == PEEKED_NONE) {
+                p = doPeek();
+            }
+            switch (p) {
+                case PEEKED_BEGIN_ARRAY:
+                    push(EMPTY_ARRAY);
+                    depth++;
+                    break;
+                case PEEKED_BEGIN_OBJECT:
+                    push(EMPTY_OBJECT);
+                    depth++;
+                    break;
+                case PEEKED_END_ARRAY:
+                case PEEKED_END_OBJECT:
+                    stackSize--;
+                    depth--;
+                    break;
+                case PEEKED_QUOTED:
+                case PEEKED_QUOTED_NAME:
+                    skipQuoted(peekedQuote);
+                    break;
+                case PEEKED_IMPLICIT_NULL:
+                    break;
+                case PEEKED_EOF:
+                    throw syntaxError("End of input");
+                default:
+                    pos += peekedLength;
+                    break;
+            }
+            peeked = PEEKED_NONE;
+            // a name is always followed by its value
+            if (depth == 0 && p != PEEKED_QUOTED_NAME && p != PEEKED_UNQUOTED_NAME) {
+                return;
+            }
+        }
+    }
+    /**
+     * Returns the next value from the input, building a tree of {@link
+     * JSONObject JSONObjects} and {@link JSONArray JSONArrays} the same way
+     * {@link JSONTokener#nextValue} does.
+     *
+     * @return a {@link JSONObject}, {@link JSONArray}, String, Boolean,
+     *     Integer, Long, Double, {@link JSONObject#NULL} or {@code null} for
+     *     an omitted array element.
+     * @throws JSONException if the input is malformed.
+     */
+    public Object nextValue() throws JSONException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                beginObject();
+                while (hasNext()) {
+                    String name = nextName();
+                    object.put(name, nextValue());
+                }
+                endObject();
+                return object;
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                beginArray();
+                while (hasNext()) {
+                    array.put(nextValue());
+                }
+                endArray();
+                return array;
+            case STRING:
+                return nextString();
+            case NUMBER:
+                return nextNumber();
+            case BOOLEAN:
+                return nextBoolean() ? Boolean.TRUE : Boolean.FALSE;
+            case NULL:
+                boolean implicit = peeked == PEEKED_IMPLICIT_NULL;
+                nextNull();
+                return implicit ? null : JSONObject.NULL;
+            case END_DOCUMENT:
+                throw syntaxError("End of input");
+            default:
+                throw syntaxError("Expected a value but was " + peek());
+        }
+    }
+    /**
+     * Returns the next number boxed as an Integer, Long or Double, in that
+     * order of preference, and consumes it.
+     */
+    private Number nextNumber() throws JSONException {
+        if (peekedNumberKind == NUMBER_INTEGRAL) {
+            long value = nextLong();
+            if (value <= Integer.MAX_VALUE && value >= Integer.MIN_VALUE) {
+                return (int) value;
+            }
+            return value;
+        } else if (peekedNumberKind == NUMBER_DECIMAL) {
+            return nextDouble();
+        }
+        Number result = peekedNumber;
+        pos += peekedLength;
+        peeked = PEEKED_NONE;
+        return result;
+    }
+    /**
+     * Peeks the next value and returns the buffer index of its first
+     * character. Only meaningful for fully buffered input.
+     */
+    int valueStart() throws JSONException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        switch (p) {
+            case PEEKED_BEGIN_OBJECT:
+            case PEEKED_BEGIN_ARRAY:
+            case PEEKED_QUOTED:
+                return pos - 1;
+            default:
+                return pos;
+        }
+    }
+    /**
+     * Returns the buffer index of the next character to be read. After a
+     * value has been consumed, this is the index just past its last
+     * character. Only meaningful for fully buffered input.
+     */
+    int position() {
+        return pos;
+    }
+    /**
+     * Closes the underlying reader, if any.
+     */
+    @Override public void close() throws IOException {
+        peeked = PEEKED_NONE;
+        stackSize = 0;
+        if (in != null) {
+            in.close();
+        }
+    }
+    private void expect(int expected, Token token) throws JSONException {
+        int p = peeked;
+        if (p == PEEKED_NONE) {
+            p = doPeek();
+        }
+        if (p != expected) {
+            throw syntaxError("Expected " + token + " but was " + peek());
+        }
+        peeked = PEEKED_NONE;
+    }
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+        stack[stackSize++] = scope;
+    }
+    /**
+     * Advances to the next token, consuming any separators in front of it,
+     * and records it in {@link #peeked}. Literal tokens are left in the buffer
+     * starting at {@link #pos}.
+     */
+    private int doPeek() throws JSONException {
+        if (stackSize == 0) {
+            throw new IllegalStateException("JSONReader is closed");
+        }
+        int scope = stack[stackSize - 1];
+        int c;
+        switch (scope) {
+            case EMPTY_DOCUMENT:
+                // consume an optional byte order mark (BOM) if it exists
+                if ((pos < limit || fill(1)) && buffer[pos] == '\ufeff') {
+                    pos++;
+                    bufferOffset--;
+                }
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                c = nextCleanInternal();
+                if (c == -1) {
+                    throw syntaxError("End of input");
+                }
+                return peekValue(c);
+            case NONEMPTY_DOCUMENT:
+                return peeked = PEEKED_EOF;
+            case EMPTY_ARRAY:
+                c = nextCleanInternal();
+                switch (c) {
+                    case -1:
+                        throw syntaxError("Unterminated array");
+                    case ']':
+                        return peeked = PEEKED_END_ARRAY;
+                    case ',':
+                    case ';':
+                        /* A separator without a value first means "null". */
+                        stack[stackSize - 1] = DANGLING_SEPARATOR;
+                        return peeked = PEEKED_IMPLICIT_NULL;
+                    default:
+                        stack[stackSize - 1] = NONEMPTY_ARRAY;
+                        return peekValue(c);
+                }
+            case NONEMPTY_ARRAY:
+                switch (nextCleanInternal()) {
+                    case ']':
+                        return peeked = PEEKED_END_ARRAY;
+                    case ',':
+                    case ';':
+                        stack[stackSize - 1] = DANGLING_SEPARATOR;
+                        return peekAfterSeparator();
+                    default:
+                        throw syntaxError("Unterminated array");
+                }
+            case DANGLING_SEPARATOR:
+                return peekAfterSeparator();
+            case CLOSING_ARRAY:
+                nextCleanInternal(); // the ']' that was pushed back
+                return peeked = PEEKED_END_ARRAY;
+            case EMPTY_OBJECT:
+                c = nextCleanInternal();
+                if (c == '}') {
+                    return peeked = PEEKED_END_OBJECT;
+                } else if (c == -1) {
+                    throw syntaxError("End of input");
+                }
+                stack[stackSize - 1] = DANGLING_NAME;
+                return peekName(c);
+            case DANGLING_NAME:
+                /*
+                 * Expect the name/value separator to be either a colon ':', an
+                 * equals sign '=', or an arrow "=>". The last two are bogus but we
+                 * include them because that's what the original implementation did.
+                 */
+                c = nextCleanInternal();
+                if (c != ':' && c != '=') {
+                    throw syntaxError("Expected ':' after " + (lastName != null ? lastName : "name"));
+                }
+                if ((pos < limit || fill(1)) && buffer[pos] == '>') {
+                    pos++;
+                }
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                c = nextCleanInternal();
+                if (c == -1) {
+                    throw syntaxError("End of input");
+                }
+                return peekValue(c);
+            case NONEMPTY_OBJECT:
+                switch (nextCleanInternal()) {
+                    case '}':
+                        return peeked = PEEKED_END_OBJECT;
+                    case ';':
+                    case ',':
+                        c = nextCleanInternal();
+                        if (c == -1) {
+                            throw syntaxError("End of input");
+                        }
+                        stack[stackSize - 1] = DANGLING_NAME;
+                        return peekName(c);
+                    default:
+                        throw syntaxError("Unterminated object");
+                }
+            default:
+                throw new AssertionError();
+        }
+    }
+    /**
+     * Peeks the token following an array separator. Repeated separators and
+     * a trailing separator each yield a null element.
+     */
+    private int peekAfterSeparator() throws JSONException {
+        int c = nextCleanInternal();
+        switch (c) {
+            case -1:
+                throw syntaxError("Unterminated array");
+            case ']':
+                /* to cover input that ends with ",]". */
+                pos--;
+                stack[stackSize - 1] = CLOSING_ARRAY;
+                return peeked = PEEKED_IMPLICIT_NULL;
+            case ',':
+            case ';':
+                return peeked = PEEKED_IMPLICIT_NULL;
+            default:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                return peekValue(c);
+        }
+    }
+    /**
+     * Peeks a value whose first character {@code c} has already been read.
+     */
+    private int peekValue(int c) throws JSONException {
+        switch (c) {
+            case '{':
+                return peeked = PEEKED_BEGIN_OBJECT;
+            case '[':
+                return peeked = PEEKED_BEGIN_ARRAY;
+            case '\'':
+            case '"':
+                peekedQuote = (char) c;
+                return peeked = PEEKED_QUOTED;
+            default:
+                pos--;
+                return peeked = peekLiteral();
+        }
+    }
+    /**
+     * Peeks a name whose first character {@code c} has already been read.
+     */
+    private int peekName(int c) throws JSONException {
+        if (c == '\'' || c == '"') {
+            peekedQuote = (char) c;
+            return peeked = PEEKED_QUOTED_NAME;
+        }
+        pos--;
+        int literal = (c == '{' || c == '[') ? PEEKED_NONE : peekLiteral();
+        if (literal != PEEKED_UNQUOTED) {
+            Object name = literal == PEEKED_NONE ? nextValueForError() : literalValue(literal);
+            pos += peekedLength;
+            if (name == null) {
+                throw syntaxError("Names cannot be null");
+            }
+            throw syntaxError("Names must be strings, but " + name
+                    + " is of type " + name.getClass().getName());
+        }
+        return peeked = PEEKED_UNQUOTED_NAME;
+    }
+    private Object nextValueForError() throws JSONException {
+        int c = nextCleanInternal();
+        stack[stackSize - 1] = NONEMPTY_OBJECT;
+        peekValue(c);
+        Object result = nextValue();
+        peekedLength = 0;
+        return result;
+    }
+    private Object literalValue(int literal) {
+        switch (literal) {
+            case PEEKED_TRUE:
+                return Boolean.TRUE;
+            case PEEKED_FALSE:
+                return Boolean.FALSE;
+            case PEEKED_NULL:
+                return JSONObject.NULL;
+            default:
+                return peekedNumberKind == NUMBER_BOXED
+                        ? peekedNumber
+                        : JSON.parseNumber(new String(buffer, pos, peekedLength));
+        }
+    }
+    /**
+     * Locates the null, boolean, numeric or unquoted string literal starting
+     * at {@link #pos}, making sure it is entirely buffered, and classifies it.
+     */
+    private int peekLiteral() throws JSONException {
+        int length = 0;
+        scan:
+        while (true) {
+            for (; pos + length < limit; length++) {
+                char c = buffer[pos + length];
+                if (isLiteralTerminator(c)) {
+                    break scan;
+                }
+            }
+            if (!fill(length + 1)) {
+                break;
+            }
+        }
+        peekedLength = length;
+        if (length == 0) {
+            throw syntaxError("Expected literal value");
+        } else if (literalEquals("null")) {
+            return PEEKED_NULL;
+        } else if (literalEquals("true")) {
+            return PEEKED_TRUE;
+        } else if (literalEquals("false")) {
+            return PEEKED_FALSE;
+        } else if (decodeNumber()) {
+            return PEEKED_NUMBER;
+        }
+        return PEEKED_UNQUOTED;
+    }
+    private static boolean isLiteralTerminator(char c) {
+        switch (c) {
+            case '{':
+            case '}':
+            case '[':
+            case ']':
+            case '/':
+            case '\\':
+            case ':':
+            case ',':
+            case '=':
+            case ';':
+            case '#':
+            case ' ':
+            case '\t':
+            case '\f':
+            case '\r':
+            case '\n':
+                return true;
+            default:
+                return false;
+        }
+    }
+    private boolean literalEquals(String keyword) {
+        if (peekedLength != keyword.length()) {
+            return false;
+        }
+        for (int i = 0; i < peekedLength; i++) {
+            if (Character.toLowerCase(buffer[pos + i]) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    /**
+     * Decodes the peeked literal as a number. Plain decimal integers are
+     * decoded in place; octal, hexadecimal and overflowing values fall back
+     * to {@link JSON#parseNumber} so the result always matches {@link
+     * JSONTokener}.
+     */
+    private boolean decodeNumber() {
+        int i = pos;
+        int end = pos + peekedLength;
+        char first = buffer[i];
+        boolean negative = first == '-';
+        if (first == '-' || first == '+') {
+            i++;
+        }
+        int digitsStart = i;
+        long value = 0;
+        boolean overflow = false;
+        for (; i < end && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+            int digit = buffer[i] - '0';
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                overflow = true;
+            }
+            value = value * 10 + digit;
+        }
+        int digits = i - digitsStart;
+        if (digits > 0 && i == end && !overflow && !(first == '0' && peekedLength > 1)) {
+            peekedNumberKind = NUMBER_INTEGRAL;
+            peekedLong = negative ? -value : value;
+            return true;
+        }
+        if (digits > 0 && isDecimalTail(i, end)) {
+            peekedNumberKind = NUMBER_DECIMAL;
+            return true;
+        }
+        /* ...hard cases go through the same path as JSONTokener... */
+        Number number = JSON.parseNumber(new String(buffer, pos, peekedLength));
+        if (number == null) {
+            return false;
+        }
+        peekedNumberKind = NUMBER_BOXED;
+        peekedNumber = number;
+        return true;
+    }
+    /**
+     * Returns true if {@code buffer[start..end)} is a fraction and/or
+     * exponent, as in {@code .25} or {@code .5e-3}.
+     */
+    private boolean isDecimalTail(int start, int end) {
+        int i = start;
+        if (i < end && buffer[i] == '.') {
+            int digitsStart = ++i;
+            while (i < end && buffer[i] >= '0' && buffer[i] <= '9') {
+                i++;
+            }
+            if (i == digitsStart) {
+                return false;
+            }
+        }
+        if (i < end && (buffer[i] == 'e' || buffer[i] == 'E')) {
+            i++;
+            if (i < end && (buffer[i] == '+' || buffer[i] == '-')) {
+                i++;
+            }
+            int digitsStart = i;
+            while (i < end && buffer[i] >= '0' && buffer[i] <= '9') {
+                i++;
+            }
+            if (i == digitsStart) {
+                return false;
+            }
+        }
+        return i == end && i != start;
+    }
+    /**
+     * Returns the next character that is not whitespace and does not belong
+     * to a comment, consuming it, or -1 if the input is exhausted.
+     */
+    private int nextCleanInternal() throws JSONException {
+        while (pos < limit || fill(1)) {
+            int c = buffer[pos++];
+            switch (c) {
+                case '\t':
+                case ' ':
+                case '\n':
+                case '\r':
+                    continue;
+                case '/':
+                    if (pos == limit) {
+                        pos--;
+                        boolean hasPeek = fill(2);
+                        pos++;
+                        if (!hasPeek) {
+                            return c;
+                        }
+                    }
+                    char peek = buffer[pos];
+                    switch (peek) {
+                        case '*':
+                            // skip a /* c-style comment */
+                            pos++;
+                            if (!skipTo("*/")) {
+                                throw syntaxError("Unterminated comment");
+                            }
+                            pos += 2;
+                            continue;
+                        case '/':
+                            // skip a // end-of-line comment
+                            pos++;
+                            skipToEndOfLine();
+                            continue;
+                        default:
+                            return c;
+                    }
+                case '#':
+                    /*
+                     * Skip a # hash end-of-line comment. The JSON RFC doesn't
+                     * specify this behavior, but it's required to parse
+                     * existing documents. See http://b/2571423.
+                     */
+                    skipToEndOfLine();
+                    continue;
+                default:
+                    return c;
+            }
+        }
+        return -1;
+    }
+    /**
+     * Advances the position until after the next newline character.
+     */
+    private void skipToEndOfLine() throws JSONException {
+        while (pos < limit || fill(1)) {
+            char c = buffer[pos++];
+            if (c == '\r' || c == '\n') {
+                break;
+            }
+        }
+    }
+    /**
+     * Advances the position to the start of the next occurrence of {@code
+     * toFind}. Returns false if the input is exhausted first.
+     */
+    private boolean skipTo(String toFind) throws JSONException {
+        int length = toFind.length();
+        outer:
+        for (; pos + length <= limit || fill(length); pos++) {
+            for (int i = 0; i < length; i++) {
+                if (buffer[pos + i] != toFind.charAt(i)) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+    /**
+     * Returns the string up to but not including {@code quote}, unescaping
+     * any character escape sequences encountered along the way. The opening
+     * quote should have already been read. This consumes the closing quote.
+     */
+    private String readQuoted(char quote) throws JSONException {
+        /*
+         * For strings that are free of escape sequences and don't cross a
+         * buffer refill, the result is copied straight out of the buffer.
+         */
+        StringBuilder builder = null;
+        while (true) {
+            int p = pos;
+            int start = p;
+            while (p < limit) {
+                char c = buffer[p++];
+                if (c == quote) {
+                    pos = p;
+                    if (builder == null) {
+                        return new String(buffer, start, p - start - 1);
+                    }
+                    builder.append(buffer, start, p - start - 1);
+                    return builder.toString();
+                }
+                if (c == '\\') {
+                    pos = p;
+                    if (builder == null) {
+                        builder = new StringBuilder(Math.max(2 * (p - start), 16));
+                    }
+                    builder.append(buffer, start, p - start - 1);
+                    builder.append(readEscapeCharacter());
+                    p = pos;
+                    start = p;
+                }
+            }
+            if (builder == null) {
+                builder = new StringBuilder(Math.max(2 * (p - start), 16));
+            }
+            builder.append(buffer, start, p - start);
+            pos = p;
+            if (!fill(1)) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+    /**
+     * Skips a quoted string without copying it. Escape sequences are still
+     * validated so malformed input fails the same way it would when read.
+     */
+    private void skipQuoted(char quote) throws JSONException {
+        while (pos < limit || fill(1)) {
+            char c = buffer[pos++];
+            if (c == quote) {
+                return;
+            }
+            if (c == '\\') {
+                readEscapeCharacter();
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+    /**
+     * Unescapes the character identified by the character or characters that
+     * immediately follow a backslash. The backslash '\' should have already
+     * been read. This supports both unicode escapes "u000A" and two-character
+     * escapes "\n".
+     */
+    private char readEscapeCharacter() throws JSONException {
+        if (pos == limit && !fill(1)) {
+            throw syntaxError("Unterminated escape sequence");
+        }
+        char escaped = buffer[pos++];
+        switch (escaped) {
+            case 'u':
+                if (pos + 4 > limit && !fill(4)) {
+                    throw syntaxError("Unterminated escape sequence");
+                }
+                int result = 0;
+                for (int i = pos; i < pos + 4; i++) {
+                    int digit = JSONTokener.dehexchar(buffer[i]);
+                    if (digit == -1) {
+                        // Signs and non-ASCII digits are rare, decode them exactly like JSONTokener
+                        String hex = new String(buffer, pos, 4);
+                        pos += 4;
+                        try {
+                            return (char) Integer.parseInt(hex, 16);
+                        } catch (NumberFormatException nfe) {
+                            throw syntaxError("Invalid escape sequence: " + hex);
+                        }
+                    }
+                    result = (result << 4) | digit;
+                }
+                pos += 4;
+                return (char) result;
+            case 't':
+                return '\t';
+            case 'b':
+                return '\b';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 'f':
+                return '\f';
+            case '\'':
+            case '"':
+            case '\\':
+            default:
+                return escaped;
+        }
+    }
+    /**
+     * Makes sure at least {@code minimum} characters are buffered starting at
+     * {@link #pos}, compacting or growing the buffer as needed. Returns false
+     * if the input is exhausted first.
+     */
+    private boolean fill(int minimum) throws JSONException {
+        if (in == null) {
+            return limit - pos >= minimum;
+        }
+        if (pos != 0) {
+            limit -= pos;
+            System.arraycopy(buffer, pos, buffer, 0, limit);
+            bufferOffset += pos;
+            pos = 0;
+        }
+        if (minimum > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(minimum, buffer.length * 2));
+        }
+        try {
+            while (limit < minimum) {
+                int read = in.read(buffer, limit, buffer.length - limit);
+                if (read == -1) {
+                    return false;
+                }
+                limit += read;
+            }
+        } catch (IOException e) {
+            JSONException exception = new JSONException("Unable to read input" + this);
+            exception.initCause(e);
+            throw exception;
+        }
+        return true;
+    }
+    /**
+     * Returns an exception containing the given message plus the current
+     * position and, when the entire input is buffered, the input string.
+     */
+    public JSONException syntaxError(String message) {
+        return new JSONException(message + this);
+    }
+    /**
+     * Returns the current position and, when the entire input is buffered,
+     * the input string.
+     */
+    @Override public String toString() {
+        // consistent with JSONTokener
+        String result = " at character " + (bufferOffset + pos);
+        if (in == null && buffer != null) {
+            result += " of " + new String(buffer, inputStart, limit - inputStart);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package itsmagic.present.simpleaccountmanager.json;
+import java.util.HashMap;
+import java.util.Map;
+/**
+ * Extracts a set of paths from a JSON encoded document in a single pass,
+ * without building the values that aren't selected. Example usage: <pre>
+ * JSONSelector selector = JSONSelector.compile("meta.message", "meta.paging.*");
+ * JSONObject selected = (JSONObject) selector.select(response);
+ * String message = selected.getJSONObject("meta").optString("message");</pre>
+ *
+ * <p>A path is a list of segments separated by dots. Each segment is either
+ * the name of an object member, the index of an array element, or {@code *}
+ * to match every member or element. A path selects the entire value at its
+ * end.
+ *
+ * <p>The selected values are returned in a tree of the same shape as the
+ * document, which only holds the selected values and the objects and arrays
+ * that lead to them. Arrays only hold their selected elements, so indices are
+ * not preserved. Unselected values are skipped by a {@link JSONReader}: they
+ * are only checked for syntax, and strings, numbers, names and nested
+ * containers within them are never decoded.
+ *
+ * <p>Selectors are immutable and may be shared between threads.
+ */
+public final class JSONSelector {
+    private static final String ANY = "*";
+    private final Node root;
+    private JSONSelector(Node root) {
+        this.root = root;
+    }
+    /**
+     * Returns a selector for the given paths.
+     *
+     * @throws IllegalArgumentException if a path is empty or has an empty
+     *     segment.
+     */
+    public static JSONSelector compile(String... paths) {
+        Node root = new Node();
+        for (String path : paths) {
+            Node node = root;
+            int start = 0;
+            while (true) {
+                int end = path.indexOf('.', start);
+                if (end == -1) {
+                    end = path.length();
+                }
+                if (end == start) {
+                    throw new IllegalArgumentException("Empty segment in path: " + path);
+                }
+                node = node.add(path.substring(start, end));
+                if (end == path.length()) {
+                    break;
+                }
+                start = end + 1;
+            }
+            node.selected = true;
+        }
+        root.mergeWildcards();
+        return new JSONSelector(root);
+    }
+    /**
+     * Returns the selected values of the JSON encoded {@code json}.
+     *
+     * @return a {@link JSONObject} or {@link JSONArray} of the selected
+     *     values, or null if the document is neither.
+     * @throws JSONException if the input is malformed.
+     */
+    public Object select(String json) throws JSONException {
+        return select(new JSONReader(json));
+    }
+    /**
+     * Returns the selected values of the next value of {@code reader}, and
+     * consumes it.
+     *
+     * @return a {@link JSONObject} or {@link JSONArray} of the selected
+     *     values, or null if the next value is neither.
+     * @throws JSONException if the input is malformed.
+     */
+    public Object select(JSONReader reader) throws JSONException {
+        if (root.selected) {
+            return reader.nextValue();
+        }
+        return selectIn(reader, root);
+    }
+    /**
+     * Returns the selected values of the next value of {@code reader}, which
+     * is at {@code node} of the paths, or null if it isn't a container.
+     */
+    private static Object selectIn(JSONReader reader, Node node) throws JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    Node child = node.get(name);
+                    if (child == null) {
+                        reader.skipValue();
+                    } else if (child.selected) {
+                        object.put(name, reader.nextValue());
+                    } else {
+                        Object selected = selectIn(reader, child);
+                        if (selected != null) {
+                            object.put(name, selected);
+                        }
+                    }
+                }
+                reader.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                for (int index = 0; reader.hasNext(); index++) {
+                    Node child = node.get(index);
+                    if (child == null) {
+                        reader.skipValue();
+                    } else if (child.selected) {
+                        array.put(reader.nextValue());
+                    } else {
+                        Object selected = selectIn(reader, child);
+                        if (selected != null) {
+                            array.put(selected);
+                        }
+                    }
+                }
+                reader.endArray();
+                return array;
+            default:
+                // a value that a path would have to go through
+                reader.skipValue();
+                return null;
+        }
+    }
+    /**
+     * A segment of the compiled paths.
+     */
+    private static final class Node {
+        /** True if a path ends at this segment. */
+        boolean selected;
+        /** The segments following this one by name or index, or null. */
+        Map<String, Node> children;
+        /** The segment following this one for any name or index, or null. */
+        Node any;
+        Node add(String segment) {
+            if (ANY.equals(segment)) {
+                if (any == null) {
+                    any = new Node();
+                }
+                return any;
+            }
+            if (children == null) {
+                children = new HashMap<String, Node>();
+            }
+            Node child = children.get(segment);
+            if (child == null) {
+                child = new Node();
+                children.put(segment, child);
+            }
+            return child;
+        }
+        Node get(String name) {
+            Node child = children != null ? children.get(name) : null;
+            return child != null ? child : any;
+        }
+        Node get(int index) {
+            if (children == null) {
+                return any;
+            }
+            Node child = children.get(Integer.toString(index));
+            return child != null ? child : any;
+        }
+        /**
+         * Adds the paths that follow a wildcard to the named segments next to
+         * it, which the wildcard also matches.
+         */
+        void mergeWildcards() {
+            if (children != null) {
+                for (Node child : children.values()) {
+                    if (any != null) {
+                        child.addAll(any);
+                    }
+                    child.mergeWildcards();
+                }
+            }
+            if (any != null) {
+                any.mergeWildcards();
+            }
+        }
+        private void addAll(Node other) {
+            selected |= other.selected;
+            if (other.children != null) {
+                for (Map.Entry<String, Node> entry : other.children.entrySet()) {
+                    add(entry.getKey()).addAll(entry.getValue());
+                }
+            }
+            if (other.any != null) {
+                add(ANY).addAll(other.any);
+            }
+        }
+    }
+}
@@ -14,6 +14,8 @@
  * limitations under the License.
  */
 package itsmagic.present.simpleaccountmanager.json;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -47,6 +49,12 @@ import java.util.List;
  * Attempts to create more than 20 levels of nesting may fail with a {@link
  * JSONException}.
  *
+ * <p>A stringer created with {@link #JSONStringer(Appendable)} writes its
+ * output straight to the given {@link Appendable} or {@link Writer} through a
+ * small reusable buffer, so the encoded JSON never has to exist as one big
+ * string. Call {@link #flush} once done; completing the top level array or
+ * object flushes as well.
+ *
  * <p>Each stringer may be used to encode a single top level value. Instances of
  * this class are not thread safe. Although this class is nonfinal, it was not
  * designed for inheritance and should not be subclassed. In particular,
@@ -55,8 +63,54 @@ import java.util.List;
  * information.
  */
 public class JSONStringer {
-    /** The output data, containing at most one top-level array or object. */
-    final StringBuilder out = new StringBuilder();
+    /**
+     * The number of buffered characters above which output is flushed to
+     * {@link #sink}.
+     */
+    private static final int FLUSH_THRESHOLD = 2048;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    /**
+     * The escaped form of each character below 128 that requires escaping,
+     * or null for characters that are copied as is.
+     */
+    private static final String[] REPLACEMENT_CHARS = new String[128];
+    static {
+        /*
+         * From RFC 4627, "All Unicode characters may be placed within the
+         * quotation marks except for the characters that must be escaped:
+         * quotation mark, reverse solidus, and the control characters
+         * (U+0000 through U+001F)."
+         */
+        for (int c = 0; c <= 0x1F; c++) {
+            REPLACEMENT_CHARS[c] = new String(new char[] {
+                    '\\', 'u', '0', '0', HEX_DIGITS[c >> 4], HEX_DIGITS[c & 0xF] });
+        }
+        REPLACEMENT_CHARS['"'] = "\\\"";
+        REPLACEMENT_CHARS['\\'] = "\\\\";
+        REPLACEMENT_CHARS['/'] = "\\/";
+        REPLACEMENT_CHARS['\t'] = "\\t";
+        REPLACEMENT_CHARS['\b'] = "\\b";
+        REPLACEMENT_CHARS['\n'] = "\\n";
+        REPLACEMENT_CHARS['\r'] = "\\r";
+        REPLACEMENT_CHARS['\f'] = "\\f";
+    }
+    /**
+     * The output data, containing at most one top-level array or object.
+     * When writing to a {@link #sink}, this only holds the output that hasn't
+     * been flushed yet.
+     */
+    final StringBuilder out;
+    /**
+     * The destination of flushed output, or null if the output is kept in
+     * {@link #out}.
+     */
+    private final Appendable sink;
+    /** A reusable buffer for flushing to a {@link Writer} sink. */
+    private char[] flushBuffer;
+    /** True if this stringer owns {@link #out} and may return it as a string. */
+    private final boolean ownsOutput;
+    /** True once the top-level array or object has been opened. */
+    private boolean hasRoot;
     /**
      * Lexical scoping elements within this stringer, necessary to insert the
      * appropriate separator characters (ie. commas and colons) and to detect
@@ -106,11 +160,36 @@ public class JSONStringer {
     private final String indent;
     public JSONStringer() {
         indent = null;
+        out = new StringBuilder();
+        sink = null;
+        ownsOutput = true;
     }
     JSONStringer(int indentSpaces) {
         char[] indentChars = new char[indentSpaces];
         Arrays.fill(indentChars, ' ');
         indent = new String(indentChars);
+        out = new StringBuilder();
+        sink = null;
+        ownsOutput = true;
+    }
+    /**
+     * Creates a stringer that writes its output to {@code out}. A {@link
+     * StringBuilder} is appended to directly; any other destination receives
+     * the output in chunks.
+     */
+    public JSONStringer(Appendable out) {
+        if (out == null) {
+            throw new NullPointerException("out == null");
+        }
+        indent = null;
+        ownsOutput = false;
+        if (out instanceof StringBuilder) {
+            this.out = (StringBuilder) out;
+            this.sink = null;
+        } else {
+            this.out = new StringBuilder(FLUSH_THRESHOLD + 64);
+            this.sink = out;
+        }
     }
     /**
      * Begins encoding a new array. Each call to this method must be paired with
@@ -151,8 +230,11 @@ public class JSONStringer {
      * bracket.
      */
     JSONStringer open(Scope empty, String openBracket) throws JSONException {
-        if (stack.isEmpty() && out.length() > 0) {
-            throw new JSONException("Nesting problem: multiple top-level roots");
+        if (stack.isEmpty()) {
+            if (hasRoot) {
+                throw new JSONException("Nesting problem: multiple top-level roots");
+            }
+            hasRoot = true;
         }
         beforeValue();
         stack.add(empty);
@@ -173,6 +255,11 @@ public class JSONStringer {
             newline();
         }
         out.append(closeBracket);
+        if (stack.isEmpty()) {
+            flush();
+        } else {
+            flushIfNeeded();
+        }
         return this;
     }
     /**
@@ -219,6 +306,7 @@ public class JSONStringer {
         } else {
             string(value.toString());
         }
+        flushIfNeeded();
         return this;
     }
     /**
@@ -232,6 +320,7 @@ public class JSONStringer {
         }
         beforeValue();
         out.append(value);
+        flushIfNeeded();
         return this;
     }
     /**
@@ -247,6 +336,7 @@ public class JSONStringer {
         }
         beforeValue();
         out.append(JSONObject.numberToString(value));
+        flushIfNeeded();
         return this;
     }
     /**
@@ -260,49 +350,32 @@ public class JSONStringer {
         }
         beforeValue();
         out.append(value);
+        flushIfNeeded();
         return this;
     }
     private void string(String value) {
-        out.append("\"");
+        out.append('"');
+        /*
+         * Copy runs of characters that need no escaping in bulk, and only
+         * look up a replacement for the few that do.
+         */
+        int start = 0;
         for (int i = 0, length = value.length(); i < length; i++) {
             char c = value.charAt(i);
-            /*
-             * From RFC 4627, "All Unicode characters may be placed within the
-             * quotation marks except for the characters that must be escaped:
-             * quotation mark, reverse solidus, and the control characters
-             * (U+0000 through U+001F)."
-             */
-            switch (c) {
-                case '"':
-                case '\\':
-                case '/':
-                    out.append('\\').append(c);
-                    break;
-                case '\t':
-                    out.append("\\t");
-                    break;
-                case '\b':
-                    out.append("\\b");
-                    break;
-                case '\n':
-                    out.append("\\n");
-                    break;
-                case '\r':
-                    out.append("\\r");
-                    break;
-                case '\f':
-                    out.append("\\f");
-                    break;
-                default:
-                    if (c <= 0x1F) {
-                        out.append(String.format("\\u%04x", (int) c));
-                    } else {
-                        out.append(c);
-                    }
-                    break;
+            String replacement;
+            if (c >= 128 || (replacement = REPLACEMENT_CHARS[c]) == null) {
+                continue;
             }
+            if (start < i) {
+                out.append(value, start, i);
+            }
+            out.append(replacement);
+            start = i + 1;
+        }
+        if (start < value.length()) {
+            out.append(value, start, value.length());
         }
-        out.append("\"");
+        out.append('"');
     }
     private void newline() {
         if (indent == null) {
@@ -325,6 +398,7 @@ public class JSONStringer {
         }
         beforeKey();
         string(name);
+        flushIfNeeded();
         return this;
     }
     /**
@@ -364,6 +438,40 @@ public class JSONStringer {
             throw new JSONException("Nesting problem");
         }
     }
+    /**
+     * Writes any buffered output to the {@link Appendable} this stringer was
+     * created with. Does nothing for stringers that keep their output.
+     *
+     * @return this stringer.
+     */
+    public JSONStringer flush() throws JSONException {
+        if (sink == null || out.length() == 0) {
+            return this;
+        }
+        try {
+            if (sink instanceof Writer) {
+                int length = out.length();
+                if (flushBuffer == null || flushBuffer.length < length) {
+                    flushBuffer = new char[Math.max(length, FLUSH_THRESHOLD + 64)];
+                }
+                out.getChars(0, length, flushBuffer, 0);
+                ((Writer) sink).write(flushBuffer, 0, length);
+            } else {
+                sink.append(out);
+            }
+        } catch (IOException e) {
+            JSONException exception = new JSONException("Unable to write output: " + e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        }
+        out.setLength(0);
+        return this;
+    }
+    private void flushIfNeeded() throws JSONException {
+        if (sink != null && out.length() >= FLUSH_THRESHOLD) {
+            flush();
+        }
+    }
     /**
      * Returns the encoded JSON string.
      *
@@ -372,9 +480,13 @@ public class JSONStringer {
      *
      * <p><strong>Warning:</strong> although it contradicts the general contract
      * of {@link Object#toString}, this method returns null if the stringer
-     * contains no data.
+     * contains no data, or if it was created with {@link
+     * #JSONStringer(Appendable)}.
      */
     @Override public String toString() {
+        if (!ownsOutput) {
+            return null;
+        }
         return out.length() == 0 ? null : out.toString();
     }
 }
\ No newline at end of file
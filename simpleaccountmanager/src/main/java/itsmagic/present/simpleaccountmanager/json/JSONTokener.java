@@ -49,6 +49,11 @@ package itsmagic.present.simpleaccountmanager.json;
  *   <li>Key-value pairs separated by {@code ;}.
  * </ul>
  *
+ * <p>A tokener created with {@link #JSONTokener(String, boolean)} can reuse
+ * the String instances of object names it has already read, which saves
+ * allocations on documents that repeat the same names, like arrays of
+ * objects.
+ *
  * <p>Each tokener may be used to parse a single JSON string. Instances of this
  * class are not thread safe. Although this class is nonfinal, it was not
  * designed for inheritance and should not be subclassed. In particular,
@@ -64,17 +69,30 @@ public class JSONTokener {
      * the input is exhausted, this equals the input's length.
      */
     private int pos;
+    /** The names read so far, or null if names are not reused. */
+    private final JSONKeyCache keys;
     /**
      * @param in JSON encoded string. Null is not permitted and will yield a
      *     tokener that throws {@code NullPointerExceptions} when methods are
      *     called.
      */
     public JSONTokener(String in) {
+        this(in, false);
+    }
+    /**
+     * @param in JSON encoded string. Null is not permitted and will yield a
+     *     tokener that throws {@code NullPointerExceptions} when methods are
+     *     called.
+     * @param internKeys true to return the same String instance for object
+     *     names that are repeated in the input.
+     */
+    public JSONTokener(String in, boolean internKeys) {
         // consume an optional byte order mark (BOM) if it exists
         if (in != null && in.startsWith("\ufeff")) {
             in = in.substring(1);
         }
         this.in = in;
+        this.keys = internKeys ? new JSONKeyCache() : null;
     }
     /**
      * Returns the next value from the input.
@@ -169,6 +187,13 @@ public class JSONTokener {
      * @param quote either ' or ".
      */
     public String nextString(char quote) throws JSONException {
+        return readString(quote, false);
+    }
+    /**
+     * Reads a string like {@link #nextString}, looking names up in the key
+     * cache if there is one.
+     */
+    private String readString(char quote, boolean name) throws JSONException {
         /*
          * For strings that are free of escape sequences, we can just extract
          * the result as a substring of the input. But if we encounter an escape
@@ -181,6 +206,9 @@ public class JSONTokener {
             int c = in.charAt(pos++);
             if (c == quote) {
                 if (builder == null) {
+                    if (name && keys != null) {
+                        return keys.get(in, start, pos - 1);
+                    }
                     // a new string avoids leaking memory
                     return new String(in.substring(start, pos - 1));
                 } else {
@@ -245,49 +273,25 @@ public class JSONTokener {
      * preference.
      */
     private Object readLiteral() throws JSONException {
-        String literal = nextToInternal("{}[]/\\:,=;# \t\f");
-        if (literal.length() == 0) {
+        int start = pos;
+        int end = skipToInternal("{}[]/\\:,=;# \t\f");
+        int length = end - start;
+        if (length == 0) {
             throw syntaxError("Expected literal value");
-        } else if ("null".equalsIgnoreCase(literal)) {
+        } else if (length == 4 && in.regionMatches(true, start, "null", 0, 4)) {
             return JSONObject.NULL;
-        } else if ("true".equalsIgnoreCase(literal)) {
+        } else if (length == 4 && in.regionMatches(true, start, "true", 0, 4)) {
             return Boolean.TRUE;
-        } else if ("false".equalsIgnoreCase(literal)) {
+        } else if (length == 5 && in.regionMatches(true, start, "false", 0, 5)) {
             return Boolean.FALSE;
         }
-        /* try to parse as an integral type... */
-        if (literal.indexOf('.') == -1) {
-            int base = 10;
-            String number = literal;
-            if (number.startsWith("0x") || number.startsWith("0X")) {
-                number = number.substring(2);
-                base = 16;
-            } else if (number.startsWith("0") && number.length() > 1) {
-                number = number.substring(1);
-                base = 8;
-            }
-            try {
-                long longValue = Long.parseLong(number, base);
-                if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
-                    return (int) longValue;
-                } else {
-                    return longValue;
-                }
-            } catch (NumberFormatException e) {
-                /*
-                 * This only happens for integral numbers greater than
-                 * Long.MAX_VALUE, numbers in exponential form (5e-10) and
-                 * unquoted strings. Fall through to try floating point.
-                 */
-            }
-        }
-        /* ...next try to parse as a floating point... */
-        try {
-            return Double.valueOf(literal);
-        } catch (NumberFormatException ignored) {
+        /* try to parse as a numeric type, straight from the input... */
+        Number number = JSON.parseNumber(in, start, end);
+        if (number != null) {
+            return number;
         }
         /* ... finally give up. We have an unquoted string */
-        return new String(literal); // a new string avoids leaking memory
+        return new String(in.substring(start, end)); // a new string avoids leaking memory
     }
     /**
      * Returns the string up to but not including any of the given characters or
@@ -295,13 +299,20 @@ public class JSONTokener {
      */
     private String nextToInternal(String excluded) {
         int start = pos;
+        return in.substring(start, skipToInternal(excluded));
+    }
+    /**
+     * Advances past the characters up to but not including any of the given
+     * characters or a newline character, and returns the new position.
+     */
+    private int skipToInternal(String excluded) {
         for (; pos < in.length(); pos++) {
             char c = in.charAt(pos);
             if (c == '\r' || c == '\n' || excluded.indexOf(c) != -1) {
-                return in.substring(start, pos);
+                return pos;
             }
         }
-        return in.substring(start);
+        return pos;
     }
     /**
      * Reads a sequence of key/value pairs and the trailing closing brace '}' of
@@ -317,7 +328,7 @@ public class JSONTokener {
             pos--;
         }
         while (true) {
-            Object name = nextValue();
+            Object name = nextName();
             if (!(name instanceof String)) {
                 if (name == null) {
                     throw syntaxError("Names cannot be null");
@@ -350,6 +361,21 @@ public class JSONTokener {
             }
         }
     }
+    /**
+     * Reads an object name. Quoted names are read through the key cache,
+     * anything else is read like a value so that the error for a name that
+     * is not a string stays the same.
+     */
+    private Object nextName() throws JSONException {
+        int c = nextCleanInternal();
+        if (c == '"' || c == '\'') {
+            return readString((char) c, true);
+        }
+        if (c != -1) {
+            pos--;
+        }
+        return nextValue();
+    }
     /**
      * Reads a sequence of values and the trailing closing brace ']' of an
      * array. The opening brace '[' should have already been read. Note that
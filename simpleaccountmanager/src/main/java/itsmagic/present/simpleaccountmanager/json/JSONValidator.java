@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2010 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package itsmagic.present.simpleaccountmanager.json;
+/**
+ * Checks whether a string can be parsed into a {@link JSONObject} or a {@link
+ * JSONArray}, without building either. Example usage: <pre>
+ * if (JSONValidator.isValid(response)) {
+ *     JSONObject object = new JSONObject(response);
+ *     ...
+ * }</pre>
+ *
+ * <p>The input is scanned once, with the same lenient grammar as {@link
+ * JSONTokener}, and no values are created along the way. A string is valid
+ * exactly when {@link JSONObject#JSONObject(String)} or {@link
+ * JSONArray#JSONArray(String)} would parse it. Like those constructors, any
+ * content after the first value is ignored.
+ */
+public final class JSONValidator {
+    /** Scanning a value failed. */
+    private static final int INVALID = 0;
+    private static final int OBJECT = 1;
+    private static final int ARRAY = 2;
+    private static final int STRING = 3;
+    private static final int NUMBER = 4;
+    private static final int LITERAL = 5;
+    /** A NaN or infinite number, which objects don't accept as a value. */
+    private static final int FORBIDDEN_NUMBER = 6;
+    /** Values that only need to be checked for syntax. */
+    private static final int MODE_ELEMENT = 0;
+    /** Names, which must turn out to be strings. */
+    private static final int MODE_NAME = 1;
+    /** Values of an object, which must be finite if they are numbers. */
+    private static final int MODE_OBJECT_VALUE = 2;
+    /** Returned by {@link #nextClean} for an unterminated comment. */
+    private static final int ERROR = -2;
+    private final String in;
+    private int pos;
+    private JSONValidator(String in) {
+        this.in = in;
+    }
+    /**
+     * Returns true if {@code json} is a JSON encoded object or array.
+     *
+     * @param json the string to check. Null is never valid.
+     */
+    public static boolean isValid(String json) {
+        if (json == null) {
+            return false;
+        }
+        JSONValidator validator = new JSONValidator(json);
+        // consume an optional byte order mark (BOM) if it exists
+        if (json.startsWith("\ufeff")) {
+            validator.pos = 1;
+        }
+        int type = validator.value(MODE_ELEMENT);
+        return type == OBJECT || type == ARRAY;
+    }
+    private int value(int mode) {
+        int c = nextClean();
+        switch (c) {
+            case -1:
+            case ERROR:
+                return INVALID;
+            case '{':
+                return object() ? OBJECT : INVALID;
+            case '[':
+                return array() ? ARRAY : INVALID;
+            case '\'':
+            case '"':
+                return string((char) c) ? STRING : INVALID;
+            default:
+                pos--;
+                return literal(mode);
+        }
+    }
+    private int nextClean() {
+        while (pos < in.length()) {
+            int c = in.charAt(pos++);
+            switch (c) {
+                case '\t':
+                case ' ':
+                case '\n':
+                case '\r':
+                    continue;
+                case '/':
+                    if (pos == in.length()) {
+                        return c;
+                    }
+                    char peek = in.charAt(pos);
+                    switch (peek) {
+                        case '*':
+                            pos++;
+                            int commentEnd = in.indexOf("*/", pos);
+                            if (commentEnd == -1) {
+                                return ERROR;
+                            }
+                            pos = commentEnd + 2;
+                            continue;
+                        case '/':
+                            pos++;
+                            skipToEndOfLine();
+                            continue;
+                        default:
+                            return c;
+                    }
+                case '#':
+                    skipToEndOfLine();
+                    continue;
+                default:
+                    return c;
+            }
+        }
+        return -1;
+    }
+    private void skipToEndOfLine() {
+        for (; pos < in.length(); pos++) {
+            char c = in.charAt(pos);
+            if (c == '\r' || c == '\n') {
+                pos++;
+                break;
+            }
+        }
+    }
+    private boolean string(char quote) {
+        while (pos < in.length()) {
+            char c = in.charAt(pos++);
+            if (c == quote) {
+                return true;
+            }
+            if (c == '\\') {
+                if (pos == in.length()) {
+                    return false;
+                }
+                if (in.charAt(pos++) == 'u') {
+                    if (pos + 4 > in.length() || !isHex(pos)) {
+                        return false;
+                    }
+                    pos += 4;
+                }
+            }
+        }
+        return false;
+    }
+    /**
+     * Returns true if the four characters at {@code start} are accepted by
+     * {@code Integer.parseInt(hex, 16)}, like {@link JSONTokener} requires
+     * for a unicode escape.
+     */
+    private boolean isHex(int start) {
+        int i = start;
+        char first = in.charAt(i);
+        if (first == '-' || first == '+') {
+            i++;
+        }
+        for (; i < start + 4; i++) {
+            if (Character.digit(in.charAt(i), 16) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+    private int literal(int mode) {
+        int start = pos;
+        for (; pos < in.length(); pos++) {
+            char c = in.charAt(pos);
+            if (c == '\r' || c == '\n' || "{}[]/\\:,=;# \t\f".indexOf(c) != -1) {
+                break;
+            }
+        }
+        int end = pos;
+        int length = end - start;
+        if (length == 0) {
+            return INVALID;
+        } else if (mode == MODE_ELEMENT) {
+            return LITERAL;
+        } else if ((length == 4 && in.regionMatches(true, start, "null", 0, 4))
+                || (length == 4 && in.regionMatches(true, start, "true", 0, 4))
+                || (length == 5 && in.regionMatches(true, start, "false", 0, 5))) {
+            return LITERAL;
+        }
+        /*
+         * Only decode the literal when its type matters: any number is an
+         * invalid name, but only a NaN or an infinity is an invalid value,
+         * and those need a letter or more digits than a double can hold.
+         */
+        boolean mayBeNumber = false;
+        boolean mayBeForbidden = length > 308;
+        for (int i = start; i < end; i++) {
+            char c = in.charAt(i);
+            if (Character.isDigit(c)) {
+                // integers are parsed with Character.digit, which accepts any unicode digit
+                mayBeNumber = true;
+            } else if (c == 'N' || c == 'I') {
+                mayBeNumber = true;
+                mayBeForbidden = true;
+            } else if (c == 'e' || c == 'E' || c == 'p' || c == 'P') {
+                mayBeForbidden = true;
+            }
+        }
+        if (!mayBeNumber || (mode == MODE_OBJECT_VALUE && !mayBeForbidden)) {
+            return mode == MODE_NAME ? STRING : LITERAL;
+        }
+        Number number = JSON.parseNumber(in, start, end);
+        if (number == null) {
+            return STRING;
+        }
+        double value = number.doubleValue();
+        return Double.isNaN(value) || Double.isInfinite(value) ? FORBIDDEN_NUMBER : NUMBER;
+    }
+    private boolean object() {
+        int first = nextClean();
+        if (first == '}') {
+            return true;
+        } else if (first == ERROR) {
+            return false;
+        } else if (first != -1) {
+            pos--;
+        }
+        while (true) {
+            if (value(MODE_NAME) != STRING) {
+                return false;
+            }
+            int separator = nextClean();
+            if (separator != ':' && separator != '=') {
+                return false;
+            }
+            if (pos < in.length() && in.charAt(pos) == '>') {
+                pos++;
+            }
+            int type = value(MODE_OBJECT_VALUE);
+            if (type == INVALID || type == FORBIDDEN_NUMBER) {
+                return false;
+            }
+            switch (nextClean()) {
+                case '}':
+                    return true;
+                case ';':
+                case ',':
+                    continue;
+                default:
+                    return false;
+            }
+        }
+    }
+    private boolean array() {
+        while (true) {
+            switch (nextClean()) {
+                case -1:
+                case ERROR:
+                    return false;
+                case ']':
+                    return true;
+                case ',':
+                case ';':
+                    continue;
+                default:
+                    pos--;
+            }
+            if (value(MODE_ELEMENT) == INVALID) {
+                return false;
+            }
+            switch (nextClean()) {
+                case ']':
+                    return true;
+                case ',':
+                case ';':
+                    continue;
+                default:
+                    return false;
+            }
+        }
+    }
+}
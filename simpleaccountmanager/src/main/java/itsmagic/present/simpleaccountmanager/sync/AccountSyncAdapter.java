@@ -6,21 +6,58 @@ import android.content.ContentProviderClient;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.SyncResult;
+import android.net.TrafficStats;
 import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+
 import itsmagic.present.simpleaccountmanager.util.AccountPreferenceHelper;
 
 /**
  * Created by Alvin Rusli on 04/04/2017.
  * <p/>
  * The base class for sync adapters.
+ * <p/>
+ * Sync requests go through a {@link SyncScheduler} before they reach {@link #onBackgroundSync},
+ * which coalesces bursts of requests and backs off after failures, according to the {@link SyncPolicy}.
+ * Report failures and data changes through the {@link SyncResult},
+ * the scheduler relies on them.
+ * Every request is recorded in the {@link SyncMetrics}, including the requests that are skipped.
+ * <p/>
+ * By default the syncs run one after another.
+ * If the policy {@link SyncPolicy#setMaxParallelSyncs(int) allows parallel syncs},
+ * the syncs of different accounts run at the same time on their own threads, up to the limit,
+ * while the syncs of the same account still run one after another.
  */
 public abstract class AccountSyncAdapter extends AbstractThreadedSyncAdapter {
 
-    /** The constructor for this class **/
+    /** The sync scheduler */
+    private final SyncScheduler mSyncScheduler;
+
+    /** The metrics of the recent syncs */
+    private final SyncMetrics mSyncMetrics = new SyncMetrics();
+
+    /** Limits the syncs that run at the same time, or null if the syncs run one after another */
+    private final Semaphore mParallelSyncs;
+
+    /** The sync lock by account */
+    private final ConcurrentHashMap<String, ReentrantLock> mAccountLocks = new ConcurrentHashMap<String, ReentrantLock>();
+
+    /** The constructor for this class, using the default {@link SyncPolicy} **/
     public AccountSyncAdapter(Context context, boolean autoInitialize) {
-        super(context, autoInitialize);
+        this(context, autoInitialize, new SyncPolicy());
+    }
+
+    /** The constructor for this class **/
+    public AccountSyncAdapter(Context context, boolean autoInitialize, @NonNull SyncPolicy syncPolicy) {
+        super(context, autoInitialize, syncPolicy.isParallel());
+        mSyncScheduler = new SyncScheduler(syncPolicy);
+        mParallelSyncs = syncPolicy.isParallel() ? new Semaphore(syncPolicy.getMaxParallelSyncs(), true) : null;
     }
 
     @Override
@@ -31,17 +68,130 @@ public abstract class AccountSyncAdapter extends AbstractThreadedSyncAdapter {
             final ContentProviderClient provider,
             final SyncResult syncResult) {
 
-        boolean isAccountAdditionSyncing = AccountPreferenceHelper.getInstance(getContext()).loadAccountAdditionSyncing(account.name);
-        if (isAccountAdditionSyncing) return;
+        long startTime = System.currentTimeMillis();
+        long startWallTime = SystemClock.elapsedRealtime();
+        long startCpuTime = SystemClock.currentThreadTimeMillis();
+        int uid = Process.myUid();
+        long startRxBytes = TrafficStats.getUidRxBytes(uid);
+        long startTxBytes = TrafficStats.getUidTxBytes(uid);
+        SyncMetrics.Outcome outcome = null;
+
+        try {
+            // Don't start any background sync on initial account addition
+            boolean isAccountAdditionSyncing = AccountPreferenceHelper.getInstance(getContext()).loadAccountAdditionSyncing(account.name);
+            if (isAccountAdditionSyncing) {
+                outcome = SyncMetrics.Outcome.SKIPPED_INITIAL_ADDITION;
+                return;
+            }
+
+            SyncScheduler.Decision decision = mSyncScheduler.onSyncRequested(account, authority, extras, syncResult);
+            if (decision == SyncScheduler.Decision.COALESCED) {
+                outcome = SyncMetrics.Outcome.SKIPPED_COALESCED;
+                return;
+            } else if (decision == SyncScheduler.Decision.BACKED_OFF) {
+                outcome = SyncMetrics.Outcome.SKIPPED_BACKOFF;
+                return;
+            }
+
+            // Wait for the other syncs of the account first, so that they don't hold a permit while waiting
+            ReentrantLock accountLock = getAccountLock(account);
+            try {
+                accountLock.lockInterruptibly();
+            } catch (InterruptedException e) {
+                mSyncScheduler.onSyncCanceled(account, authority);
+                outcome = SyncMetrics.Outcome.CANCELED;
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                if (mParallelSyncs != null) {
+                    try {
+                        mParallelSyncs.acquire();
+                    } catch (InterruptedException e) {
+                        mSyncScheduler.onSyncCanceled(account, authority);
+                        outcome = SyncMetrics.Outcome.CANCELED;
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+
+                // Attribute the traffic of the sync to this adapter in the network statistics
+                int previousTag = TrafficStats.getThreadStatsTag();
+                TrafficStats.setThreadStatsTag(getClass().getName().hashCode());
+                try {
+                    onBackgroundSync(account, extras, authority, provider, syncResult);
+                } catch (RuntimeException e) {
+                    // The sync manager only records the error once this method has returned,
+                    // so mark the sync as failed for the scheduler and the metrics first
+                    syncResult.databaseError = true;
+                    outcome = SyncMetrics.Outcome.FAILED;
+                    throw e;
+                } finally {
+                    TrafficStats.setThreadStatsTag(previousTag);
+                    if (mParallelSyncs != null) mParallelSyncs.release();
+                    mSyncScheduler.onSyncFinished(account, authority, syncResult);
+                }
+            } finally {
+                accountLock.unlock();
+            }
+        } finally {
+            if (outcome == null) outcome = syncResult.hasError() ? SyncMetrics.Outcome.FAILED : SyncMetrics.Outcome.COMPLETED;
+            long rxBytes = TrafficStats.getUidRxBytes(uid);
+            long txBytes = TrafficStats.getUidTxBytes(uid);
+            mSyncMetrics.record(new SyncMetrics.Record(account, authority, outcome,
+                    startTime,
+                    SystemClock.elapsedRealtime() - startWallTime,
+                    SystemClock.currentThreadTimeMillis() - startCpuTime,
+                    getDelta(startRxBytes, rxBytes),
+                    getDelta(startTxBytes, txBytes),
+                    syncResult));
+        }
+    }
+
+    /**
+     * Obtain the sync lock of an account.
+     * @param account the account
+     */
+    private ReentrantLock getAccountLock(Account account) {
+        String key = account.type + '/' + account.name;
+        ReentrantLock lock = mAccountLocks.get(key);
+        if (lock == null) {
+            lock = new ReentrantLock();
+            ReentrantLock existing = mAccountLocks.putIfAbsent(key, lock);
+            if (existing != null) lock = existing;
+        }
+        return lock;
+    }
+
+    /**
+     * Obtain the difference between two traffic counters.
+     * @param start the counter before the sync
+     * @param end the counter after the sync
+     * @return the difference, or -1 if the counters aren't supported
+     */
+    private static long getDelta(long start, long end) {
+        if (start == TrafficStats.UNSUPPORTED || end == TrafficStats.UNSUPPORTED) return -1;
+        else return end - start;
+    }
+
+    /**
+     * Obtain the metrics of the recent syncs of this sync adapter.
+     * The byte counts cover all traffic of the app during a sync,
+     * including traffic of other threads.
+     */
+    public final SyncMetrics getSyncMetrics() {
+        return mSyncMetrics;
+    }
 
-        // Don't start any background sync on initial account addition
-        onBackgroundSync(account, extras, authority, provider, syncResult);
+    /** Obtain the sync scheduler of this sync adapter. */
+    public final SyncScheduler getSyncScheduler() {
+        return mSyncScheduler;
     }
 
     /** Updates a sync adapter duration.
      * @param account the account that should be synced
      * @param authority the authority of this sync request
-     * @param duration the specified duration before doing a sync
+     * @param duration the specified duration before doing a sync, in seconds
      */
     public final void setSyncAdapterDuration(
             final @NonNull Account account,
@@ -12,6 +12,7 @@ import android.support.annotation.Nullable;
  * <p/>
  * The {@link ContentProvider} for synchronization.
  * Uses a basic dummy {@link ContentProvider}.
+ * Extend {@link SQLiteSyncProvider} instead if the synced data should be stored.
  */
 public class AccountSyncProvider extends ContentProvider {
 
@@ -5,27 +5,42 @@ import android.content.Intent;
 import android.os.IBinder;
 import android.util.Log;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
 import itsmagic.present.simpleaccountmanager.BuildConfig;
 
 /**
  * Created by Alvin Rusli on 11/10/2016.
  * <p/>
  * A service to handle Account synchronization.
+ * <p/>
+ * Each subclass keeps a single sync adapter, shared by all its bindings.
+ * To sync several accounts in parallel, let the adapter's {@link SyncPolicy} allow parallel syncs.
  */
 public abstract class AccountSyncService extends Service {
 
     /** The sync adapter lock object */
     private static final Object mSyncAdapterLock = new Object();
 
-    /** The sync adapter object */
-    private static AccountSyncAdapter mSyncAdapter = null;
+    /** The sync adapter objects by service class */
+    private static final Map<Class<?>, AccountSyncAdapter> mSyncAdapters = new HashMap<Class<?>, AccountSyncAdapter>();
+
+    /** The sync adapter object of this service */
+    private AccountSyncAdapter mSyncAdapter = null;
 
     @Override
     public void onCreate() {
         if (BuildConfig.DEBUG) Log.i(getClass().getSimpleName(), "Account synchronization service started");
 
         synchronized (mSyncAdapterLock) {
-            if (mSyncAdapter == null) mSyncAdapter = initAccountSyncAdapter();
+            mSyncAdapter = mSyncAdapters.get(getClass());
+            if (mSyncAdapter == null) {
+                mSyncAdapter = initAccountSyncAdapter();
+                mSyncAdapters.put(getClass(), mSyncAdapter);
+            }
         }
     }
 
@@ -40,6 +55,20 @@ public abstract class AccountSyncService extends Service {
         return mSyncAdapter.getSyncAdapterBinder();
     }
 
+    /**
+     * Dumps the metrics of the recent syncs,
+     * through {@code adb shell dumpsys activity service <this service>}.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (mSyncAdapter == null) {
+            writer.println("No sync adapter");
+            return;
+        }
+        writer.println(mSyncAdapter.getSyncScheduler());
+        mSyncAdapter.getSyncMetrics().dump(writer);
+    }
+
     /** Initialize the sync adapter for this service **/
     public abstract AccountSyncAdapter initAccountSyncAdapter();
 }
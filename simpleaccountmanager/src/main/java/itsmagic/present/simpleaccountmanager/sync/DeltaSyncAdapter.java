@@ -0,0 +1,144 @@
+package itsmagic.present.simpleaccountmanager.sync;
+
+import android.accounts.Account;
+import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.content.SyncResult;
+import android.os.Bundle;
+import android.os.RemoteException;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import itsmagic.present.simpleaccountmanager.BuildConfig;
+
+/**
+ * The base class for sync adapters that only fetch the changes since the previous sync.
+ * <p/>
+ * Each sync reads the {@link SyncCheckpoints checkpoint} of the account,
+ * fetches the changes after it through {@link #fetchChanges}, and commits them together with the next checkpoint.
+ * The first sync of an account, and every sync requested with {@link #EXTRA_FULL_SYNC}, starts without a checkpoint.
+ * Changes may be fetched in pages, the sync continues as long as {@link Delta#hasMore()} is true
+ * and the page has a checkpoint,
+ * and each committed page advances the checkpoint, so an interrupted sync resumes after the last committed page.
+ */
+public abstract class DeltaSyncAdapter extends AccountSyncAdapter {
+
+    /** The sync extra that requests a full sync, ignoring the checkpoint */
+    public static final String EXTRA_FULL_SYNC = "itsmagic.present.simpleaccountmanager.sync.FULL_SYNC";
+
+    /** The constructor for this class, using the default {@link SyncPolicy} **/
+    public DeltaSyncAdapter(Context context, boolean autoInitialize) {
+        super(context, autoInitialize);
+    }
+
+    /** The constructor for this class **/
+    public DeltaSyncAdapter(Context context, boolean autoInitialize, @NonNull SyncPolicy syncPolicy) {
+        super(context, autoInitialize, syncPolicy);
+    }
+
+    @Override
+    public final void onBackgroundSync(
+            final Account account,
+            final Bundle extras,
+            final String authority,
+            final ContentProviderClient provider,
+            final SyncResult syncResult) {
+
+        try {
+            String checkpoint = null;
+            if (extras == null || !extras.getBoolean(EXTRA_FULL_SYNC, false)) {
+                checkpoint = SyncCheckpoints.get(getContext(), provider, account, authority);
+            }
+
+            Delta delta;
+            do {
+                delta = fetchChanges(account, authority, checkpoint, syncResult);
+                if (delta == null) return;
+
+                SyncCheckpoints.commit(getContext(), provider, account, authority, delta.getOperations(), delta.getCheckpoint());
+                checkpoint = delta.getCheckpoint();
+
+                // A page without a checkpoint can't be followed by another one
+            } while (delta.hasMore() && checkpoint != null && !Thread.currentThread().isInterrupted());
+        } catch (IOException e) {
+            if (BuildConfig.DEBUG) Log.w(getClass().getSimpleName(), "Unable to fetch the changes of " + authority, e);
+            syncResult.stats.numIoExceptions++;
+        } catch (RemoteException e) {
+            if (BuildConfig.DEBUG) Log.w(getClass().getSimpleName(), "Unable to commit the changes of " + authority, e);
+            syncResult.databaseError = true;
+        } catch (OperationApplicationException e) {
+            if (BuildConfig.DEBUG) Log.w(getClass().getSimpleName(), "Unable to commit the changes of " + authority, e);
+            syncResult.databaseError = true;
+        }
+    }
+
+    /**
+     * Fetch the changes of an account after a checkpoint.
+     * Count the changes in the {@link android.content.SyncStats} of the sync result,
+     * the {@link SyncScheduler} adapts the sync interval to them.
+     * @param account the account that should be synced
+     * @param authority the authority of this sync request
+     * @param checkpoint the checkpoint, or null to fetch all data
+     * @param syncResult SyncAdapter-specific parameters
+     * @return the changes, or null if nothing should be committed
+     * @throws IOException if the changes can't be fetched, the checkpoint is kept
+     */
+    @Nullable
+    protected abstract Delta fetchChanges(
+            @NonNull Account account,
+            @NonNull String authority,
+            @Nullable String checkpoint,
+            @NonNull SyncResult syncResult) throws IOException;
+
+    /** The changes after a checkpoint */
+    public static class Delta {
+
+        /** The operations that apply the changes */
+        private final ArrayList<ContentProviderOperation> mOperations;
+
+        /** The checkpoint after the changes */
+        private final String mCheckpoint;
+
+        /** True if more changes follow */
+        private final boolean mHasMore;
+
+        /**
+         * Default constructor.
+         * @param operations the operations that apply the changes
+         * @param checkpoint the checkpoint after the changes, or null to keep the current checkpoint
+         * @param hasMore true if more changes follow this checkpoint
+         */
+        public Delta(
+                @NonNull ArrayList<ContentProviderOperation> operations,
+                @Nullable String checkpoint,
+                boolean hasMore) {
+
+            mOperations = operations;
+            mCheckpoint = checkpoint;
+            mHasMore = hasMore;
+        }
+
+        /** Obtain the operations that apply the changes. */
+        @NonNull
+        public ArrayList<ContentProviderOperation> getOperations() {
+            return mOperations;
+        }
+
+        /** Obtain the checkpoint after the changes, or null to keep the current checkpoint. */
+        @Nullable
+        public String getCheckpoint() {
+            return mCheckpoint;
+        }
+
+        /** Checks if more changes follow the checkpoint. */
+        public boolean hasMore() {
+            return mHasMore;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package itsmagic.present.simpleaccountmanager.sync;
+
+import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The base class for a {@link ContentProvider} for synchronization, backed by an SQLite database.
+ * <p/>
+ * Each table of the database is addressed as {@code content://authority/table},
+ * and each row as {@code content://authority/table/id}, where id is the {@link BaseColumns#_ID} of the row.
+ * Only the tables returned by {@link #getTables()} can be accessed.
+ * <p/>
+ * {@link #bulkInsert(Uri, ContentValues[])} and {@link #applyBatch(ArrayList)} run in a single transaction,
+ * and notify observers once after it has been committed.
+ * Bulk inserts compile one statement per set of columns and reuse it for every row.
+ * Queries only read the requested columns, and reject columns the table doesn't have.
+ * <p/>
+ * Add {@link #PARAM_CALLER_IS_SYNC_ADAPTER}=true to the uri of writes made by a sync adapter,
+ * so that the changes don't request another sync to upload them.
+ * <p/>
+ * The provider also keeps the {@link SyncCheckpoints} of its accounts in its own table,
+ * so that a checkpoint can be advanced in the same transaction as the changes it covers.
+ */
+public abstract class SQLiteSyncProvider extends ContentProvider {
+
+    /** The uri parameter that marks writes made by a sync adapter */
+    public static final String PARAM_CALLER_IS_SYNC_ADAPTER = "caller_is_syncadapter";
+
+    /** The database helper */
+    private SQLiteOpenHelper mOpenHelper;
+
+    /** The tables that can be accessed */
+    private Set<String> mTables;
+
+    /** True once the {@link SyncCheckpoints#TABLE checkpoints table} has been created */
+    private volatile boolean mIsCheckpointsTableCreated = false;
+
+    /** The projection map of each table, created when the table is first queried */
+    private final Map<String, Map<String, String>> mProjectionMaps = new HashMap<String, Map<String, String>>();
+
+    /** The uris changed by the batch running on the current thread, or null if no batch is running */
+    private final ThreadLocal<Set<Uri>> mBatchChanges = new ThreadLocal<Set<Uri>>();
+
+    @Override
+    public boolean onCreate() {
+        mOpenHelper = onCreateOpenHelper(getContext());
+        mTables = new HashSet<String>(Arrays.asList(getTables()));
+        mTables.add(SyncCheckpoints.TABLE);
+        return true;
+    }
+
+    /**
+     * Creates the helper that opens the database.
+     * The database is opened when it is first accessed.
+     * @param context the context
+     */
+    @NonNull
+    protected abstract SQLiteOpenHelper onCreateOpenHelper(@NonNull Context context);
+
+    /** Obtain the names of the tables that can be accessed through this provider. */
+    @NonNull
+    protected abstract String[] getTables();
+
+    /**
+     * Obtain the conflict algorithm used by inserts into a table.
+     * Defaults to {@link SQLiteDatabase#CONFLICT_REPLACE}, so that a sync can write rows it has written before.
+     * @param table the table
+     */
+    protected int getConflictAlgorithm(@NonNull String table) {
+        return SQLiteDatabase.CONFLICT_REPLACE;
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        String table = getTable(uri);
+        SQLiteDatabase db = getDatabase();
+
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(table);
+        builder.setProjectionMap(getProjectionMap(db, table));
+        if (isItem(uri)) builder.appendWhere(BaseColumns._ID + "=" + ContentUris.parseId(uri));
+
+        Cursor cursor = builder.query(db, projection, selection, selectionArgs, null, null, sortOrder);
+        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        return cursor;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        String table = getTable(uri);
+        String type = isItem(uri) ? "vnd.android.cursor.item/" : "vnd.android.cursor.dir/";
+        return type + "vnd." + uri.getAuthority() + "." + table;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, ContentValues contentValues) {
+        String table = getTable(uri);
+        if (isItem(uri)) throw new IllegalArgumentException("Unable to insert into a row: " + uri);
+
+        long id = getDatabase().insertWithOnConflict(table, null, contentValues, getInsertConflictAlgorithm(table));
+        if (id < 0) return null;
+
+        Uri itemUri = ContentUris.withAppendedId(uri, id);
+        notifyChange(uri);
+        return itemUri;
+    }
+
+    /**
+     * Inserts all rows in a single transaction.
+     * Rows with the same columns share a compiled statement.
+     * @param uri the table uri
+     * @param values the rows
+     * @return the number of inserted rows
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        String table = getTable(uri);
+        if (isItem(uri)) throw new IllegalArgumentException("Unable to insert into a row: " + uri);
+
+        int conflictAlgorithm = getInsertConflictAlgorithm(table);
+        Map<Set<String>, InsertStatement> statements = new HashMap<Set<String>, InsertStatement>();
+        InsertStatement statement = null;
+        int count = 0;
+
+        SQLiteDatabase db = getDatabase();
+        db.beginTransaction();
+        try {
+            for (ContentValues row : values) {
+                if (statement == null || !statement.matches(row)) {
+                    Set<String> columns = new LinkedHashSet<String>(row.keySet());
+                    statement = statements.get(columns);
+                    if (statement == null) {
+                        statement = new InsertStatement(db, table, columns, conflictAlgorithm);
+                        statements.put(columns, statement);
+                    }
+                }
+                if (statement.execute(row) >= 0) count++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            for (InsertStatement insertStatement : statements.values()) insertStatement.close();
+        }
+
+        if (count > 0) notifyChange(uri);
+        return count;
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
+        String table = getTable(uri);
+        int count = getDatabase().delete(table, getSelection(uri, selection), selectionArgs);
+        if (count > 0) notifyChange(uri);
+        return count;
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, ContentValues contentValues, String selection, String[] selectionArgs) {
+        String table = getTable(uri);
+        int count = getDatabase().update(table, contentValues, getSelection(uri, selection), selectionArgs);
+        if (count > 0) notifyChange(uri);
+        return count;
+    }
+
+    /**
+     * Applies all operations in a single transaction,
+     * and notifies observers of the changed uris once it has been committed.
+     * If an operation fails, none of the operations are applied.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations) throws OperationApplicationException {
+        // Nested batches join the outer one
+        if (mBatchChanges.get() != null) return super.applyBatch(operations);
+
+        Set<Uri> changes = new LinkedHashSet<Uri>();
+        SQLiteDatabase db = getDatabase();
+        ContentProviderResult[] results;
+        mBatchChanges.set(changes);
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mBatchChanges.remove();
+        }
+
+        for (Uri uri : changes) notifyChange(uri);
+        return results;
+    }
+
+    /**
+     * Notifies observers of a change, or defers it until the running batch has been committed.
+     * @param uri the changed uri
+     */
+    protected void notifyChange(@NonNull Uri uri) {
+        // Checkpoints are sync state, not synced data
+        if (SyncCheckpoints.TABLE.equals(uri.getPathSegments().get(0))) return;
+
+        Set<Uri> batchChanges = mBatchChanges.get();
+        if (batchChanges != null) {
+            batchChanges.add(uri);
+            return;
+        }
+
+        boolean isSyncAdapter = "true".equals(uri.getQueryParameter(PARAM_CALLER_IS_SYNC_ADAPTER));
+        Uri notifiedUri = uri.buildUpon().clearQuery().build();
+        getContext().getContentResolver().notifyChange(notifiedUri, null, !isSyncAdapter);
+    }
+
+    /** Obtain the database helper. */
+    @NonNull
+    protected final SQLiteOpenHelper getOpenHelper() {
+        return mOpenHelper;
+    }
+
+    /** Obtain the database, creating the checkpoints table the first time. */
+    private SQLiteDatabase getDatabase() {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        if (!mIsCheckpointsTableCreated) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + SyncCheckpoints.TABLE + " ("
+                    + SyncCheckpoints.COLUMN_ACCOUNT_TYPE + " TEXT NOT NULL, "
+                    + SyncCheckpoints.COLUMN_ACCOUNT_NAME + " TEXT NOT NULL, "
+                    + SyncCheckpoints.COLUMN_CHECKPOINT + " TEXT, "
+                    + "PRIMARY KEY (" + SyncCheckpoints.COLUMN_ACCOUNT_TYPE + ", " + SyncCheckpoints.COLUMN_ACCOUNT_NAME + "))");
+            mIsCheckpointsTableCreated = true;
+        }
+        return db;
+    }
+
+    /**
+     * Obtain the conflict algorithm of inserts into a table.
+     * Checkpoints always replace the previous checkpoint of the account.
+     * @param table the table
+     */
+    private int getInsertConflictAlgorithm(String table) {
+        if (SyncCheckpoints.TABLE.equals(table)) return SQLiteDatabase.CONFLICT_REPLACE;
+        else return getConflictAlgorithm(table);
+    }
+
+    /**
+     * Obtain the table of a uri.
+     * @param uri the uri
+     * @throws IllegalArgumentException if the table can't be accessed
+     */
+    private String getTable(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        if (segments.isEmpty() || segments.size() > 2 || !mTables.contains(segments.get(0))) {
+            throw new IllegalArgumentException("Unknown uri: " + uri);
+        }
+        return segments.get(0);
+    }
+
+    /**
+     * Checks if a uri addresses a single row.
+     * @param uri the uri
+     */
+    private static boolean isItem(Uri uri) {
+        return uri.getPathSegments().size() == 2;
+    }
+
+    /**
+     * Obtain the selection of a uri, restricted to its row if it addresses one.
+     * @param uri the uri
+     * @param selection the selection
+     */
+    private static String getSelection(Uri uri, String selection) {
+        if (!isItem(uri)) return selection;
+
+        String itemSelection = BaseColumns._ID + "=" + ContentUris.parseId(uri);
+        if (TextUtils.isEmpty(selection)) return itemSelection;
+        else return itemSelection + " AND (" + selection + ")";
+    }
+
+    /**
+     * Obtain the projection map of a table, which maps each of its columns to itself
+     * and {@link BaseColumns#_COUNT} to the row count.
+     * The columns are read once, the first time the table is queried.
+     * @param db the database
+     * @param table the table
+     */
+    private Map<String, String> getProjectionMap(SQLiteDatabase db, String table) {
+        synchronized (mProjectionMaps) {
+            Map<String, String> projectionMap = mProjectionMaps.get(table);
+            if (projectionMap != null) return projectionMap;
+
+            projectionMap = new HashMap<String, String>();
+            Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+            try {
+                int nameIndex = cursor.getColumnIndexOrThrow("name");
+                while (cursor.moveToNext()) {
+                    String column = cursor.getString(nameIndex);
+                    projectionMap.put(column, column);
+                }
+            } finally {
+                cursor.close();
+            }
+            projectionMap.put(BaseColumns._COUNT, "COUNT(*) AS " + BaseColumns._COUNT);
+
+            mProjectionMaps.put(table, projectionMap);
+            return projectionMap;
+        }
+    }
+
+    /** A compiled insert statement for a set of columns */
+    private static final class InsertStatement {
+
+        /** The columns, in the order of the statement arguments */
+        private final String[] mColumns;
+
+        /** The compiled statement */
+        private final SQLiteStatement mStatement;
+
+        InsertStatement(SQLiteDatabase db, String table, Set<String> columns, int conflictAlgorithm) {
+            mColumns = columns.toArray(new String[columns.size()]);
+
+            StringBuilder sql = new StringBuilder("INSERT");
+            sql.append(CONFLICT_VALUES[conflictAlgorithm]);
+            sql.append(" INTO ").append(table).append(" (");
+            for (int i = 0; i < mColumns.length; i++) {
+                if (i > 0) sql.append(',');
+                sql.append(mColumns[i]);
+            }
+            sql.append(") VALUES (");
+            for (int i = 0; i < mColumns.length; i++) {
+                sql.append(i > 0 ? ",?" : "?");
+            }
+            sql.append(')');
+            mStatement = db.compileStatement(sql.toString());
+        }
+
+        /**
+         * Checks if a row has exactly the columns of this statement.
+         * @param row the row
+         */
+        boolean matches(ContentValues row) {
+            if (row.size() != mColumns.length) return false;
+            for (String column : mColumns) {
+                if (!row.containsKey(column)) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Inserts a row.
+         * @param row the row, which must match this statement
+         * @return the row id, or -1 if the row was ignored
+         */
+        long execute(ContentValues row) {
+            mStatement.clearBindings();
+            for (int i = 0; i < mColumns.length; i++) {
+                bind(i + 1, row.get(mColumns[i]));
+            }
+            return mStatement.executeInsert();
+        }
+
+        /**
+         * Binds a value the way {@link SQLiteDatabase#insert} would.
+         * @param index the argument index, starting at 1
+         * @param value the value
+         */
+        private void bind(int index, Object value) {
+            if (value == null) {
+                mStatement.bindNull(index);
+            } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                mStatement.bindLong(index, ((Number) value).longValue());
+            } else if (value instanceof Double || value instanceof Float) {
+                mStatement.bindDouble(index, ((Number) value).doubleValue());
+            } else if (value instanceof Boolean) {
+                mStatement.bindLong(index, (Boolean) value ? 1 : 0);
+            } else if (value instanceof byte[]) {
+                mStatement.bindBlob(index, (byte[]) value);
+            } else {
+                mStatement.bindString(index, value.toString());
+            }
+        }
+
+        void close() {
+            mStatement.close();
+        }
+
+        /** The conflict clauses, by {@link SQLiteDatabase} conflict algorithm */
+        private static final String[] CONFLICT_VALUES = new String[] {
+                "", " OR ROLLBACK", " OR ABORT", " OR FAIL", " OR IGNORE", " OR REPLACE"
+        };
+    }
+}
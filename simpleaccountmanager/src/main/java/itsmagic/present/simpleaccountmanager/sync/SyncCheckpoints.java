@@ -0,0 +1,173 @@
+package itsmagic.present.simpleaccountmanager.sync;
+
+import android.accounts.Account;
+import android.accounts.AccountManager;
+import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+
+import itsmagic.present.simpleaccountmanager.util.AccountConstants;
+
+/**
+ * The sync checkpoints of accounts, one per account and authority.
+ * <p/>
+ * A checkpoint is an opaque value from the server, such as a since-token or an ETag,
+ * that marks up to where the data of an account has been synced.
+ * A delta sync fetches only the changes after the checkpoint,
+ * and advances the checkpoint once those changes have been committed.
+ * <p/>
+ * If the provider of the authority is an {@link SQLiteSyncProvider} in this process,
+ * the checkpoint is kept in its database and {@link #commit} advances it in the same transaction as the changes.
+ * Otherwise the checkpoint is kept in the account's user data,
+ * and {@link #commit} advances it after the changes have been applied,
+ * so a sync that is interrupted in between fetches the same changes again.
+ *
+ * @see DeltaSyncAdapter
+ */
+public final class SyncCheckpoints {
+
+    /** The table of an {@link SQLiteSyncProvider} that keeps the checkpoints */
+    public static final String TABLE = "_sync_checkpoints";
+
+    /** The account type column */
+    public static final String COLUMN_ACCOUNT_TYPE = "account_type";
+
+    /** The account name column */
+    public static final String COLUMN_ACCOUNT_NAME = "account_name";
+
+    /** The checkpoint column */
+    public static final String COLUMN_CHECKPOINT = "checkpoint";
+
+    /** The selection of the checkpoint of an account */
+    private static final String SELECTION = COLUMN_ACCOUNT_TYPE + "=? AND " + COLUMN_ACCOUNT_NAME + "=?";
+
+    /** Static methods only */
+    private SyncCheckpoints() {}
+
+    /**
+     * Obtain the checkpoint of an account.
+     * @param context the context
+     * @param provider the provider of the authority
+     * @param account the account
+     * @param authority the authority
+     * @return the checkpoint, or null if the account hasn't been synced yet
+     */
+    @Nullable
+    public static String get(
+            @NonNull Context context,
+            @NonNull ContentProviderClient provider,
+            @NonNull Account account,
+            @NonNull String authority) throws RemoteException {
+
+        if (!isInProvider(provider)) {
+            return AccountManager.get(context).getUserData(account, AccountConstants.KEY_SYNC_CHECKPOINT_PREFIX + authority);
+        }
+
+        Cursor cursor = provider.query(getUri(authority), new String[] { COLUMN_CHECKPOINT },
+                SELECTION, new String[] { account.type, account.name }, null);
+        if (cursor == null) return null;
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Applies the changes fetched since the checkpoint of an account, then advances its checkpoint.
+     * @param context the context
+     * @param provider the provider of the authority
+     * @param account the account
+     * @param authority the authority
+     * @param operations the changes
+     * @param checkpoint the checkpoint after the changes, or null to keep the current checkpoint
+     * @return the results of the changes
+     */
+    @NonNull
+    public static ContentProviderResult[] commit(
+            @NonNull Context context,
+            @NonNull ContentProviderClient provider,
+            @NonNull Account account,
+            @NonNull String authority,
+            @NonNull ArrayList<ContentProviderOperation> operations,
+            @Nullable String checkpoint) throws RemoteException, OperationApplicationException {
+
+        if (isInProvider(provider)) {
+            // Advance the checkpoint in the same transaction as the changes
+            ArrayList<ContentProviderOperation> batch = new ArrayList<ContentProviderOperation>(operations);
+            if (checkpoint != null) batch.add(ContentProviderOperation.newInsert(getUri(authority)).withValues(getValues(account, checkpoint)).build());
+            ContentProviderResult[] results = provider.applyBatch(batch);
+            if (results.length == operations.size()) return results;
+
+            ContentProviderResult[] changeResults = new ContentProviderResult[operations.size()];
+            System.arraycopy(results, 0, changeResults, 0, changeResults.length);
+            return changeResults;
+        }
+
+        ContentProviderResult[] results = operations.isEmpty() ? new ContentProviderResult[0] : provider.applyBatch(operations);
+        if (checkpoint != null) {
+            AccountManager.get(context).setUserData(account, AccountConstants.KEY_SYNC_CHECKPOINT_PREFIX + authority, checkpoint);
+        }
+        return results;
+    }
+
+    /**
+     * Clears the checkpoint of an account, so that its next sync is a full sync.
+     * @param context the context
+     * @param provider the provider of the authority
+     * @param account the account
+     * @param authority the authority
+     */
+    public static void clear(
+            @NonNull Context context,
+            @NonNull ContentProviderClient provider,
+            @NonNull Account account,
+            @NonNull String authority) throws RemoteException {
+
+        if (isInProvider(provider)) {
+            provider.delete(getUri(authority), SELECTION, new String[] { account.type, account.name });
+        } else {
+            AccountManager.get(context).setUserData(account, AccountConstants.KEY_SYNC_CHECKPOINT_PREFIX + authority, null);
+        }
+    }
+
+    /**
+     * Obtain the uri of the checkpoints of an authority.
+     * @param authority the authority
+     */
+    @NonNull
+    public static Uri getUri(@NonNull String authority) {
+        return new Uri.Builder().scheme("content").authority(authority).appendPath(TABLE).build();
+    }
+
+    /**
+     * Checks if the checkpoints are kept by the provider.
+     * @param provider the provider
+     */
+    private static boolean isInProvider(ContentProviderClient provider) {
+        return provider.getLocalContentProvider() instanceof SQLiteSyncProvider;
+    }
+
+    /**
+     * Obtain the row of the checkpoint of an account.
+     * @param account the account
+     * @param checkpoint the checkpoint
+     */
+    private static ContentValues getValues(Account account, String checkpoint) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_ACCOUNT_TYPE, account.type);
+        values.put(COLUMN_ACCOUNT_NAME, account.name);
+        values.put(COLUMN_CHECKPOINT, checkpoint);
+        return values;
+    }
+}
@@ -0,0 +1,253 @@
+package itsmagic.present.simpleaccountmanager.sync;
+
+import android.accounts.Account;
+import android.content.SyncResult;
+import android.support.annotation.NonNull;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the metrics of the most recent syncs of an {@link AccountSyncAdapter}.
+ * <p/>
+ * The records are kept in a fixed-size ring buffer, which is written without locks,
+ * so recording never blocks a sync. Once the buffer is full, the oldest record is overwritten.
+ * The records can be read through {@link #getRecords()},
+ * or dumped with {@code adb shell dumpsys activity service <sync service>}.
+ */
+public class SyncMetrics {
+
+    /** The number of records kept by default */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /** How a sync request ended */
+    public enum Outcome {
+
+        /** The sync ran and succeeded */
+        COMPLETED,
+
+        /** The sync ran and reported an error */
+        FAILED,
+
+        /** The sync was skipped, because the account was being added */
+        SKIPPED_INITIAL_ADDITION,
+
+        /** The sync was skipped, because it was coalesced into another sync */
+        SKIPPED_COALESCED,
+
+        /** The sync was skipped, because of the backoff after a failed sync */
+        SKIPPED_BACKOFF,
+
+        /** The sync was canceled while it waited for another sync */
+        CANCELED
+    }
+
+    /** The records */
+    private final AtomicReferenceArray<Record> mRecords;
+
+    /** The number of records written so far, the next record goes to this index modulo the capacity */
+    private final AtomicLong mCount = new AtomicLong();
+
+    /** Creates the metrics with the {@link #DEFAULT_CAPACITY default capacity} */
+    public SyncMetrics() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Default constructor.
+     * @param capacity the number of records kept
+     */
+    public SyncMetrics(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive!");
+        mRecords = new AtomicReferenceArray<Record>(capacity);
+    }
+
+    /**
+     * Records a sync.
+     * @param record the record
+     */
+    public void record(@NonNull Record record) {
+        long index = mCount.getAndIncrement();
+        mRecords.set((int) (index % mRecords.length()), record);
+    }
+
+    /** Obtain the number of syncs recorded so far, including the records that have been overwritten. */
+    public long getRecordedCount() {
+        return mCount.get();
+    }
+
+    /**
+     * Obtain the kept records, oldest first.
+     * Records written while reading may be missing or appear out of order.
+     */
+    @NonNull
+    public List<Record> getRecords() {
+        long count = mCount.get();
+        int capacity = mRecords.length();
+        List<Record> records = new ArrayList<Record>(capacity);
+        for (long i = Math.max(0, count - capacity); i < count; i++) {
+            Record record = mRecords.get((int) (i % capacity));
+            if (record != null) records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * Writes the kept records, and a summary per account and authority.
+     * @param writer the writer
+     */
+    public void dump(@NonNull PrintWriter writer) {
+        List<Record> records = getRecords();
+        writer.println("Sync metrics: " + records.size() + " of " + getRecordedCount() + " syncs kept");
+
+        Map<String, long[]> summaries = new LinkedHashMap<String, long[]>();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+        for (Record record : records) {
+            writer.println("  " + format.format(new Date(record.startTime)) + " " + record);
+
+            String key = record.accountType + "/" + record.accountName + " " + record.authority;
+            long[] summary = summaries.get(key);
+            if (summary == null) {
+                summary = new long[4];
+                summaries.put(key, summary);
+            }
+            summary[0]++;
+            if (record.outcome == Outcome.COMPLETED || record.outcome == Outcome.FAILED) {
+                summary[1]++;
+                summary[2] += record.wallTimeMillis;
+                summary[3] += Math.max(0, record.rxBytes) + Math.max(0, record.txBytes);
+            }
+        }
+
+        writer.println("Per account and authority:");
+        for (Map.Entry<String, long[]> entry : summaries.entrySet()) {
+            long[] summary = entry.getValue();
+            writer.println("  " + entry.getKey() + ": requests=" + summary[0]
+                    + ", runs=" + summary[1]
+                    + ", wallMs=" + summary[2]
+                    + ", bytes=" + summary[3]);
+        }
+    }
+
+    /** The metrics of a single sync request */
+    public static final class Record {
+
+        /** The account type */
+        public final String accountType;
+
+        /** The account name */
+        public final String accountName;
+
+        /** The authority */
+        public final String authority;
+
+        /** How the request ended */
+        public final Outcome outcome;
+
+        /** When the request started, in milliseconds since the epoch */
+        public final long startTime;
+
+        /** The wall time of the sync in milliseconds */
+        public final long wallTimeMillis;
+
+        /** The CPU time of the sync thread in milliseconds */
+        public final long cpuTimeMillis;
+
+        /** The bytes received by the app during the sync, or -1 if unknown */
+        public final long rxBytes;
+
+        /** The bytes sent by the app during the sync, or -1 if unknown */
+        public final long txBytes;
+
+        /** The number of entries processed, as reported by the sync */
+        public final long numEntries;
+
+        /** The number of inserted entries */
+        public final long numInserts;
+
+        /** The number of updated entries */
+        public final long numUpdates;
+
+        /** The number of deleted entries */
+        public final long numDeletes;
+
+        /** The number of skipped entries */
+        public final long numSkippedEntries;
+
+        /** The number of IO exceptions */
+        public final long numIoExceptions;
+
+        /** The number of parse exceptions */
+        public final long numParseExceptions;
+
+        /** The number of authentication exceptions */
+        public final long numAuthExceptions;
+
+        /**
+         * Default constructor.
+         * @param account the account
+         * @param authority the authority
+         * @param outcome how the request ended
+         * @param startTime when the request started, in milliseconds since the epoch
+         * @param wallTimeMillis the wall time in milliseconds
+         * @param cpuTimeMillis the CPU time in milliseconds
+         * @param rxBytes the received bytes, or -1 if unknown
+         * @param txBytes the sent bytes, or -1 if unknown
+         * @param syncResult the sync result, whose stats are copied
+         */
+        public Record(
+                @NonNull Account account,
+                @NonNull String authority,
+                @NonNull Outcome outcome,
+                long startTime,
+                long wallTimeMillis,
+                long cpuTimeMillis,
+                long rxBytes,
+                long txBytes,
+                @NonNull SyncResult syncResult) {
+
+            this.accountType = account.type;
+            this.accountName = account.name;
+            this.authority = authority;
+            this.outcome = outcome;
+            this.startTime = startTime;
+            this.wallTimeMillis = wallTimeMillis;
+            this.cpuTimeMillis = cpuTimeMillis;
+            this.rxBytes = rxBytes;
+            this.txBytes = txBytes;
+            this.numEntries = syncResult.stats.numEntries;
+            this.numInserts = syncResult.stats.numInserts;
+            this.numUpdates = syncResult.stats.numUpdates;
+            this.numDeletes = syncResult.stats.numDeletes;
+            this.numSkippedEntries = syncResult.stats.numSkippedEntries;
+            this.numIoExceptions = syncResult.stats.numIoExceptions;
+            this.numParseExceptions = syncResult.stats.numParseExceptions;
+            this.numAuthExceptions = syncResult.stats.numAuthExceptions;
+        }
+
+        @Override
+        public String toString() {
+            return accountType + "/" + accountName + " " + authority + " " + outcome
+                    + " wallMs=" + wallTimeMillis
+                    + " cpuMs=" + cpuTimeMillis
+                    + " rx=" + rxBytes
+                    + " tx=" + txBytes
+                    + " entries=" + numEntries
+                    + " ins=" + numInserts
+                    + " upd=" + numUpdates
+                    + " del=" + numDeletes
+                    + " skip=" + numSkippedEntries
+                    + " ioErr=" + numIoExceptions
+                    + " parseErr=" + numParseExceptions
+                    + " authErr=" + numAuthExceptions;
+        }
+    }
+}
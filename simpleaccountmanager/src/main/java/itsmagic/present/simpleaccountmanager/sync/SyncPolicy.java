@@ -0,0 +1,130 @@
+package itsmagic.present.simpleaccountmanager.sync;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Determines how an {@link AccountSyncAdapter} schedules its syncs.
+ * <p/>
+ * By default, sync requests that arrive shortly after a successful sync are coalesced into it,
+ * and failed syncs are retried with an exponential backoff.
+ * The periodic sync interval is only adapted once {@link #setAdaptiveInterval(long, long)} has been called,
+ * and the syncs of different accounts only run in parallel once {@link #setMaxParallelSyncs(int)} has been called.
+ */
+public class SyncPolicy {
+
+    /** How long after a successful sync other requests are coalesced into it */
+    private long mCoalesceWindowMillis = TimeUnit.SECONDS.toMillis(30);
+
+    /** The backoff after the first failure */
+    private long mMinBackoffMillis = TimeUnit.SECONDS.toMillis(30);
+
+    /** The longest backoff */
+    private long mMaxBackoffMillis = TimeUnit.HOURS.toMillis(1);
+
+    /** The shortest periodic sync interval, or 0 if the interval isn't adapted */
+    private long mMinIntervalSeconds = 0;
+
+    /** The longest periodic sync interval, or 0 if the interval isn't adapted */
+    private long mMaxIntervalSeconds = 0;
+
+    /** The number of accounts that may sync at the same time */
+    private int mMaxParallelSyncs = 1;
+
+    /**
+     * Sets how long after a successful sync other sync requests are coalesced into it.
+     * Manual and upload requests are never coalesced,
+     * and a single sync is requested again once the window has passed if any request was coalesced.
+     * @param coalesceWindowMillis the window in milliseconds, or 0 to run every request
+     * @return this policy
+     */
+    public SyncPolicy setCoalesceWindow(long coalesceWindowMillis) {
+        if (coalesceWindowMillis < 0) throw new IllegalArgumentException("Coalesce window must not be negative!");
+        mCoalesceWindowMillis = coalesceWindowMillis;
+        return this;
+    }
+
+    /**
+     * Sets the backoff after failed syncs.
+     * The backoff doubles with every consecutive failure, up to the maximum,
+     * and is randomized to spread the retries of many devices.
+     * Manual requests ignore the backoff.
+     * @param minBackoffMillis the backoff after the first failure in milliseconds, or 0 to retry immediately
+     * @param maxBackoffMillis the longest backoff in milliseconds
+     * @return this policy
+     */
+    public SyncPolicy setBackoff(long minBackoffMillis, long maxBackoffMillis) {
+        if (minBackoffMillis < 0 || maxBackoffMillis < minBackoffMillis) throw new IllegalArgumentException("Invalid backoff range!");
+        mMinBackoffMillis = minBackoffMillis;
+        mMaxBackoffMillis = maxBackoffMillis;
+        return this;
+    }
+
+    /**
+     * Lets the periodic sync interval adapt to how often the synced data changes.
+     * The interval halves after syncs that changed data, and doubles after syncs that didn't,
+     * as reported through the {@link android.content.SyncStats} of the sync result.
+     * @param minIntervalSeconds the shortest interval in seconds
+     * @param maxIntervalSeconds the longest interval in seconds
+     * @return this policy
+     */
+    public SyncPolicy setAdaptiveInterval(long minIntervalSeconds, long maxIntervalSeconds) {
+        if (minIntervalSeconds <= 0 || maxIntervalSeconds < minIntervalSeconds) throw new IllegalArgumentException("Invalid interval range!");
+        mMinIntervalSeconds = minIntervalSeconds;
+        mMaxIntervalSeconds = maxIntervalSeconds;
+        return this;
+    }
+
+    /**
+     * Lets the syncs of different accounts run at the same time, up to a limit.
+     * Two syncs of the same account never overlap.
+     * The sync adapter xml must also declare {@code android:allowParallelSyncs="true"},
+     * otherwise the sync manager still requests one sync at a time.
+     * @param maxParallelSyncs the number of accounts that may sync at the same time, 1 to sync them one after another
+     * @return this policy
+     */
+    public SyncPolicy setMaxParallelSyncs(int maxParallelSyncs) {
+        if (maxParallelSyncs < 1) throw new IllegalArgumentException("Parallel syncs must be at least 1!");
+        mMaxParallelSyncs = maxParallelSyncs;
+        return this;
+    }
+
+    /** Obtain how long after a successful sync other requests are coalesced into it, in milliseconds. */
+    public long getCoalesceWindowMillis() {
+        return mCoalesceWindowMillis;
+    }
+
+    /** Obtain the backoff after the first failure, in milliseconds. */
+    public long getMinBackoffMillis() {
+        return mMinBackoffMillis;
+    }
+
+    /** Obtain the longest backoff, in milliseconds. */
+    public long getMaxBackoffMillis() {
+        return mMaxBackoffMillis;
+    }
+
+    /** Obtain the shortest periodic sync interval in seconds, or 0 if the interval isn't adapted. */
+    public long getMinIntervalSeconds() {
+        return mMinIntervalSeconds;
+    }
+
+    /** Obtain the longest periodic sync interval in seconds, or 0 if the interval isn't adapted. */
+    public long getMaxIntervalSeconds() {
+        return mMaxIntervalSeconds;
+    }
+
+    /** Checks if the periodic sync interval is adapted. */
+    public boolean isIntervalAdaptive() {
+        return mMinIntervalSeconds > 0;
+    }
+
+    /** Obtain the number of accounts that may sync at the same time. */
+    public int getMaxParallelSyncs() {
+        return mMaxParallelSyncs;
+    }
+
+    /** Checks if the syncs of different accounts run in parallel. */
+    public boolean isParallel() {
+        return mMaxParallelSyncs > 1;
+    }
+}
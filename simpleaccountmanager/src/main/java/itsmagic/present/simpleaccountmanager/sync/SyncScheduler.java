@@ -0,0 +1,355 @@
+package itsmagic.present.simpleaccountmanager.sync;
+
+import android.accounts.Account;
+import android.content.ContentResolver;
+import android.content.PeriodicSync;
+import android.content.SyncResult;
+import android.os.Bundle;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import itsmagic.present.simpleaccountmanager.BuildConfig;
+
+/**
+ * Decides which sync requests of an {@link AccountSyncAdapter} run, according to its {@link SyncPolicy}.
+ * <p/>
+ * The state is kept per account and authority:
+ * <ul>
+ *     <li>Requests that arrive while a sync is running, or within the coalesce window after a successful sync,
+ *     are coalesced into it, unless they are manual or upload requests.
+ *     The sync may not have seen the change behind a coalesced request,
+ *     so a single sync is requested again once the window has passed.</li>
+ *     <li>After a failed sync, requests are skipped until the backoff has passed, unless they are manual.
+ *     The backoff is also reported to the sync manager through {@link SyncResult#delayUntil}.</li>
+ *     <li>After a successful sync, the periodic sync interval is adapted to whether the sync changed any data,
+ *     starting from the interval that is registered with the sync manager.</li>
+ * </ul>
+ */
+public class SyncScheduler {
+
+    /** The log tag */
+    private static final String TAG = "SyncScheduler";
+
+    /** Whether a sync request runs */
+    public enum Decision {
+
+        /** The sync runs */
+        RUN,
+
+        /** The request is coalesced into another sync */
+        COALESCED,
+
+        /** The request is skipped because of the backoff after a failed sync */
+        BACKED_OFF
+    }
+
+    /** The policy */
+    private final SyncPolicy mPolicy;
+
+    /** The sync state by account and authority */
+    private final ConcurrentHashMap<String, State> mStates = new ConcurrentHashMap<String, State>();
+
+    /** Randomizes the backoff */
+    private final Random mRandom = new Random();
+
+    /** Requests the deferred syncs, created when it's first needed */
+    private ScheduledThreadPoolExecutor mScheduler = null;
+
+    /** The number of requests coalesced into another sync */
+    private final AtomicLong mCoalescedCount = new AtomicLong();
+
+    /** The number of requests skipped because of a backoff */
+    private final AtomicLong mBackedOffCount = new AtomicLong();
+
+    /** The number of syncs that failed */
+    private final AtomicLong mFailureCount = new AtomicLong();
+
+    /**
+     * Default constructor.
+     * @param policy the policy
+     */
+    public SyncScheduler(@NonNull SyncPolicy policy) {
+        mPolicy = policy;
+    }
+
+    /**
+     * Decides whether a sync request runs, and marks it as running if it does.
+     * Every request that runs must be followed by {@link #onSyncFinished(Account, String, SyncResult)},
+     * or by {@link #onSyncCanceled(Account, String)} if it's canceled before it runs.
+     * @param account the account
+     * @param authority the authority
+     * @param extras the sync extras
+     * @param syncResult the sync result, which receives the backoff if the request is skipped because of it
+     * @return {@link Decision#RUN} if the sync should run, otherwise why it's skipped
+     */
+    @NonNull
+    public Decision onSyncRequested(
+            @NonNull Account account,
+            @NonNull String authority,
+            @Nullable Bundle extras,
+            @NonNull SyncResult syncResult) {
+
+        boolean isManual = extras != null && extras.getBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, false);
+        boolean isUpload = extras != null && extras.getBoolean(ContentResolver.SYNC_EXTRAS_UPLOAD, false);
+        long now = System.currentTimeMillis();
+
+        State state = getState(account, authority);
+        synchronized (state) {
+            if (state.runningCount > 0 && !isManual && !isUpload) {
+                mCoalescedCount.incrementAndGet();
+                if (BuildConfig.DEBUG) Log.d(TAG, "Coalescing sync of " + authority + " into the running one");
+                deferSync(account, authority, extras, state, mPolicy.getCoalesceWindowMillis());
+                return Decision.COALESCED;
+            }
+            if (!isManual && now < state.backoffUntil) {
+                mBackedOffCount.incrementAndGet();
+                syncResult.delayUntil = state.backoffUntil / 1000;
+                if (BuildConfig.DEBUG) Log.d(TAG, "Backing off sync of " + authority + " for " + (state.backoffUntil - now) + "ms");
+                return Decision.BACKED_OFF;
+            }
+            if (!isManual && !isUpload && now - state.lastSuccessTime < mPolicy.getCoalesceWindowMillis()) {
+                mCoalescedCount.incrementAndGet();
+                if (BuildConfig.DEBUG) Log.d(TAG, "Coalescing sync of " + authority + " into the previous one");
+                deferSync(account, authority, extras, state, state.lastSuccessTime + mPolicy.getCoalesceWindowMillis() - now);
+                return Decision.COALESCED;
+            }
+            state.runningCount++;
+            return Decision.RUN;
+        }
+    }
+
+    /**
+     * Records the result of a sync that was allowed by {@link #onSyncRequested(Account, String, Bundle, SyncResult)}.
+     * Starts or clears the backoff, and adapts the periodic sync interval.
+     * @param account the account
+     * @param authority the authority
+     * @param syncResult the sync result, which receives the backoff if the sync failed
+     */
+    public void onSyncFinished(
+            @NonNull Account account,
+            @NonNull String authority,
+            @NonNull SyncResult syncResult) {
+
+        long now = System.currentTimeMillis();
+        long interval = 0;
+
+        State state = getState(account, authority);
+
+        // Adapt the interval that is registered, which survives process restarts
+        long registeredInterval = 0;
+        if (mPolicy.isIntervalAdaptive() && !syncResult.hasError() && state.intervalSeconds == 0) {
+            registeredInterval = getRegisteredInterval(account, authority);
+        }
+
+        synchronized (state) {
+            state.runningCount--;
+            if (syncResult.hasError()) {
+                mFailureCount.incrementAndGet();
+                state.failureCount++;
+                state.backoffUntil = now + getBackoffMillis(state.failureCount);
+                if (syncResult.delayUntil < state.backoffUntil / 1000) syncResult.delayUntil = state.backoffUntil / 1000;
+                return;
+            }
+
+            state.failureCount = 0;
+            state.backoffUntil = 0;
+            state.lastSuccessTime = now;
+
+            if (mPolicy.isIntervalAdaptive()) {
+                if (state.intervalSeconds == 0) state.intervalSeconds = registeredInterval;
+                long current = state.intervalSeconds > 0 ? state.intervalSeconds : mPolicy.getMinIntervalSeconds();
+                long next = isChanged(syncResult) ? current / 2 : current * 2;
+                next = Math.max(mPolicy.getMinIntervalSeconds(), Math.min(mPolicy.getMaxIntervalSeconds(), next));
+                if (next != state.intervalSeconds) {
+                    state.intervalSeconds = next;
+                    interval = next;
+                }
+            }
+        }
+
+        // Only reschedule when the interval changes, each change is a call to the sync manager
+        if (interval > 0) {
+            if (BuildConfig.DEBUG) Log.d(TAG, "Periodic sync of " + authority + " every " + interval + "s");
+            ContentResolver.addPeriodicSync(account, authority, Bundle.EMPTY, interval);
+        }
+    }
+
+    /**
+     * Releases a sync that was allowed by {@link #onSyncRequested(Account, String, Bundle, SyncResult)},
+     * but was canceled before it ran. The state of the account is kept as it was before the request.
+     * @param account the account
+     * @param authority the authority
+     */
+    public void onSyncCanceled(@NonNull Account account, @NonNull String authority) {
+        State state = getState(account, authority);
+        synchronized (state) {
+            state.runningCount--;
+        }
+    }
+
+    /** Obtain the number of requests coalesced into another sync. */
+    public long getCoalescedCount() {
+        return mCoalescedCount.get();
+    }
+
+    /** Obtain the number of requests skipped because of a backoff. */
+    public long getBackedOffCount() {
+        return mBackedOffCount.get();
+    }
+
+    /** Obtain the number of syncs that failed. */
+    public long getFailureCount() {
+        return mFailureCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return TAG + "{coalesced=" + getCoalescedCount()
+                + ", backedOff=" + getBackedOffCount()
+                + ", failures=" + getFailureCount() + "}";
+    }
+
+    /**
+     * Requests a sync once a delay has passed, unless one has already been deferred.
+     * The deferred request goes through {@link #onSyncRequested(Account, String, Bundle, SyncResult)} again,
+     * so it is deferred once more if a sync is still running by then.
+     * Must be called while holding the lock of the state.
+     * @param account the account
+     * @param authority the authority
+     * @param extras the extras of the coalesced request, or null
+     * @param state the sync state of the account and authority
+     * @param delayMillis the delay in milliseconds
+     */
+    private void deferSync(
+            @NonNull final Account account,
+            @NonNull final String authority,
+            @Nullable Bundle extras,
+            @NonNull final State state,
+            long delayMillis) {
+
+        if (state.isSyncDeferred) return;
+        state.isSyncDeferred = true;
+
+        final Bundle deferredExtras = extras != null ? new Bundle(extras) : new Bundle();
+        getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (state) {
+                    state.isSyncDeferred = false;
+                }
+                if (BuildConfig.DEBUG) Log.d(TAG, "Requesting the deferred sync of " + authority);
+                ContentResolver.requestSync(account, authority, deferredExtras);
+            }
+        }, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+    }
+
+    /** Obtain the executor that requests the deferred syncs on a low priority thread. */
+    private synchronized ScheduledThreadPoolExecutor getScheduler() {
+        if (mScheduler == null) {
+            mScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, TAG);
+                }
+            });
+        }
+        return mScheduler;
+    }
+
+    /**
+     * Obtain the backoff after a number of consecutive failures.
+     * The backoff doubles with every failure, up to the maximum,
+     * and a random half of it is dropped so that devices don't retry in lockstep.
+     * @param failureCount the number of consecutive failures
+     */
+    private long getBackoffMillis(int failureCount) {
+        long backoff = mPolicy.getMinBackoffMillis();
+        for (int i = 1; i < failureCount && backoff < mPolicy.getMaxBackoffMillis(); i++) backoff *= 2;
+        backoff = Math.min(backoff, mPolicy.getMaxBackoffMillis());
+
+        long half = backoff / 2;
+        if (half <= 0) return backoff;
+        synchronized (mRandom) {
+            return backoff - half + (long) (mRandom.nextDouble() * half);
+        }
+    }
+
+    /**
+     * Obtain the periodic sync interval that is registered with the sync manager,
+     * by {@link ContentResolver#addPeriodicSync(Account, String, Bundle, long)} without extras.
+     * @param account the account
+     * @param authority the authority
+     * @return the interval in seconds, or 0 if there is none
+     */
+    private static long getRegisteredInterval(Account account, String authority) {
+        try {
+            for (PeriodicSync periodicSync : ContentResolver.getPeriodicSyncs(account, authority)) {
+                if (periodicSync.extras == null || periodicSync.extras.isEmpty()) return periodicSync.period;
+            }
+        } catch (SecurityException e) {
+            if (BuildConfig.DEBUG) Log.w(TAG, "Unable to read the periodic syncs of " + authority, e);
+        }
+        return 0;
+    }
+
+    /**
+     * Checks if a sync changed any data.
+     * @param syncResult the sync result
+     */
+    private static boolean isChanged(SyncResult syncResult) {
+        return syncResult.stats.numInserts + syncResult.stats.numUpdates + syncResult.stats.numDeletes > 0;
+    }
+
+    /**
+     * Obtain the state of an account and authority.
+     * @param account the account
+     * @param authority the authority
+     */
+    private State getState(Account account, String authority) {
+        String key = account.type + '/' + account.name + '/' + authority;
+        State state = mStates.get(key);
+        if (state == null) {
+            state = new State();
+            State existing = mStates.putIfAbsent(key, state);
+            if (existing != null) state = existing;
+        }
+        return state;
+    }
+
+    /** The sync state of an account and authority */
+    private static final class State {
+
+        /** The number of syncs that are running, more than one only for manual and upload requests */
+        int runningCount = 0;
+
+        /** When the last successful sync finished */
+        long lastSuccessTime = 0;
+
+        /** The number of consecutive failed syncs */
+        int failureCount = 0;
+
+        /** Until when requests are backed off */
+        long backoffUntil = 0;
+
+        /** The current periodic sync interval in seconds, or 0 if it hasn't been set */
+        long intervalSeconds = 0;
+
+        /** Whether a sync has been deferred for the coalesced requests */
+        boolean isSyncDeferred = false;
+    }
+}
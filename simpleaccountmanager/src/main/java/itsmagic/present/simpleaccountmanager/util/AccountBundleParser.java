@@ -10,6 +10,8 @@ import java.util.Set;
 import itsmagic.present.simpleaccountmanager.BuildConfig;
 import itsmagic.present.simpleaccountmanager.json.JSONException;
 import itsmagic.present.simpleaccountmanager.json.JSONObject;
+import itsmagic.present.simpleaccountmanager.json.JSONReader;
+import itsmagic.present.simpleaccountmanager.json.JSONStringer;
 
 /**
  * Created by Alvin Rusli on 04/04/2017.
@@ -35,6 +37,37 @@ public class AccountBundleParser {
         return bundle;
     }
 
+    /**
+     * Convert a json String into an android {@link Bundle}.
+     * The json is read straight into the bundle, without building an intermediate json Object.
+     * Values are stored the same way {@link #jsonToBundle(JSONObject)} stores them.
+     * @param json the json String, containing a json Object
+     * @return the bundle
+     */
+    @NonNull
+    public static Bundle jsonStringToBundle(String json) throws JSONException {
+        Bundle bundle = new Bundle();
+        JSONReader reader = new JSONReader(json);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (reader.peek() == JSONReader.Token.STRING) {
+                bundle.putString(key, reader.nextString());
+            } else {
+                Object value = reader.nextValue();
+                if (value instanceof Number) {
+                    double doubleValue = ((Number) value).doubleValue();
+                    if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+                        throw new JSONException("Forbidden numeric value: " + value);
+                    }
+                }
+                bundle.putString(key, String.valueOf(value));
+            }
+        }
+        reader.endObject();
+        return bundle;
+    }
+
     /**
      * Convert an android {@link Bundle} into a json Object
      * @param bundle the bundle
@@ -55,4 +88,43 @@ public class AccountBundleParser {
         return json;
     }
 
+    /**
+     * Convert an android {@link Bundle} into a json String.
+     * The bundle is encoded directly, without building an intermediate json Object.
+     * @param bundle the bundle
+     * @return the json String
+     */
+    @NonNull
+    public static String bundleToJsonString(Bundle bundle) {
+        StringBuilder json = new StringBuilder();
+        writeBundleAsJson(bundle, json);
+        return json.toString();
+    }
+
+    /**
+     * Write an android {@link Bundle} as a json Object into the specified output.
+     * Values are encoded the same way {@link #bundleToJson(Bundle)} encodes them,
+     * values that can't be encoded are skipped.
+     * @param bundle the bundle
+     * @param out the output, e.g. a {@link StringBuilder} or a {@link java.io.Writer}
+     */
+    public static void writeBundleAsJson(Bundle bundle, Appendable out) {
+        try {
+            JSONStringer stringer = new JSONStringer(out);
+            stringer.object();
+            Set<String> keys = bundle.keySet();
+            for (String key : keys) {
+                Object value = JSONObject.wrap(bundle.get(key));
+                if (value == null) continue;
+                if (value instanceof Number) {
+                    double doubleValue = ((Number) value).doubleValue();
+                    if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) continue;
+                }
+                stringer.key(key).value(value);
+            }
+            stringer.endObject();
+        } catch (JSONException e) {
+            if (BuildConfig.DEBUG) e.printStackTrace();
+        }
+    }
 }
@@ -11,6 +11,15 @@ public class AccountConstants {
     /** Key for the authorization token */
     public static final String KEY_ACCOUNT_TOKEN = "account_token";
 
+    /** Key for the expiry time of the authorization token, in milliseconds since the epoch */
+    public static final String KEY_ACCOUNT_TOKEN_EXPIRY = "account_token_expiry";
+
+    /** Key for the time the authorization token is refreshed ahead of its expiry, in milliseconds since the epoch */
+    public static final String KEY_ACCOUNT_TOKEN_REFRESH_TIME = "account_token_refresh_time";
+
     /** Key for the additional data */
     public static final String KEY_ACCOUNT_DATA = "account_data";
+
+    /** Key prefix for the sync checkpoint of an authority, followed by the authority */
+    public static final String KEY_SYNC_CHECKPOINT_PREFIX = "sync_checkpoint:";
 }
@@ -0,0 +1,328 @@
+package itsmagic.present.simpleaccountmanager.util;
+
+import android.accounts.Account;
+import android.accounts.AccountManager;
+import android.accounts.OnAccountsUpdateListener;
+import android.content.Context;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import itsmagic.present.simpleaccountmanager.BuildConfig;
+import itsmagic.present.simpleaccountmanager.json.JSONException;
+
+/**
+ * A per-account cache of the auth token, the decoded account data,
+ * and the typed objects that callers decode from it.
+ * <p/>
+ * Reading the account data is a Binder call to the {@link AccountManager} followed by a decode,
+ * and callers usually decode a typed object from the result as well.
+ * The cache does both once per account, until the account is invalidated.
+ * Only the {@link #DEFAULT_MAX_ACCOUNTS most recently used accounts} are kept,
+ * and {@link #preload(AccountManager, Account)} warms an account before it's used,
+ * so switching to a recently used account doesn't read or decode anything.
+ * An account is invalidated by {@link #invalidate(Account)} whenever this library writes or removes it,
+ * and every account is invalidated when the {@link AccountRegistry} reports a change made outside of this library.
+ * <p/>
+ * The cache may be read from any thread.
+ * Data is only cached while the {@link AccountRegistry} {@link AccountRegistry#isListening() is listening},
+ * otherwise external changes couldn't be seen and every read goes to the {@link AccountManager}.
+ */
+public class AccountDataCache {
+
+    /** The log tag */
+    private static final String TAG = "AccountDataCache";
+
+    /** The number of accounts kept by default */
+    public static final int DEFAULT_MAX_ACCOUNTS = 4;
+
+    /** Use a singleton instance to make sure only one cache exists */
+    private static AccountDataCache mInstance = null;
+
+    /**
+     * Obtain the singleton instance of {@link AccountDataCache}.
+     * @param context the context
+     */
+    public static synchronized AccountDataCache getInstance(@NonNull Context context) {
+        if (mInstance == null) mInstance = new AccountDataCache(context.getApplicationContext());
+        return mInstance;
+    }
+
+    /** The account registry, which reports external account changes */
+    private final AccountRegistry mRegistry;
+
+    /** The cached data by account, least recently used first, guarded by this cache */
+    private final LinkedHashMap<Account, Entry> mEntries = new LinkedHashMap<Account, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Account, Entry> eldest) {
+            return size() > mMaxAccounts;
+        }
+    };
+
+    /** The number of accounts kept, guarded by this cache */
+    private int mMaxAccounts = DEFAULT_MAX_ACCOUNTS;
+
+    /** The decoders that {@link #preload(AccountManager, Account)} decodes ahead of use */
+    private final List<Decoder<?>> mPreloadDecoders = new CopyOnWriteArrayList<Decoder<?>>();
+
+    /** Increased on every invalidation, so that a read started before it isn't cached */
+    private int mGeneration = 0;
+
+    /**
+     * Private constructor.
+     * @param context the context
+     */
+    private AccountDataCache(Context context) {
+        mRegistry = AccountRegistry.getInstance(context);
+        mRegistry.addOnAccountsUpdatedListener(new OnAccountsUpdateListener() {
+            @Override
+            public void onAccountsUpdated(Account[] accounts) {
+                clear();
+            }
+        });
+    }
+
+    /**
+     * Sets the number of most recently used accounts that are kept,
+     * the least recently used accounts beyond it are discarded.
+     * @param maxAccounts the number of accounts
+     */
+    public void setMaxAccounts(int maxAccounts) {
+        if (maxAccounts < 1) throw new IllegalArgumentException("Max accounts must be at least 1!");
+        synchronized (this) {
+            mMaxAccounts = maxAccounts;
+            while (mEntries.size() > maxAccounts) {
+                mEntries.remove(mEntries.keySet().iterator().next());
+            }
+        }
+    }
+
+    /** Obtain the number of most recently used accounts that are kept. */
+    public synchronized int getMaxAccounts() {
+        return mMaxAccounts;
+    }
+
+    /**
+     * Adds a decoder whose object is decoded by {@link #preload(AccountManager, Account)},
+     * so that it's ready before the account is used.
+     * @param decoder the decoder, the same instance that is passed to {@link #getAccountData(AccountManager, Account, Decoder)}
+     */
+    public void addPreloadDecoder(@NonNull Decoder<?> decoder) {
+        if (!mPreloadDecoders.contains(decoder)) mPreloadDecoders.add(decoder);
+    }
+
+    /**
+     * Removes a decoder added by {@link #addPreloadDecoder(Decoder)}.
+     * @param decoder the decoder
+     */
+    public void removePreloadDecoder(@NonNull Decoder<?> decoder) {
+        mPreloadDecoders.remove(decoder);
+    }
+
+    /**
+     * Reads the token and the account data of an account, and decodes the objects of the preload decoders,
+     * unless they are cached already. The account becomes the most recently used one.
+     * Call this on a background thread before switching to the account.
+     * @param accountManager the account manager, used when the data isn't cached
+     * @param account the account
+     */
+    public void preload(
+            @NonNull AccountManager accountManager,
+            @NonNull Account account) {
+
+        for (Decoder<?> decoder : mPreloadDecoders) {
+            getAccountData(accountManager, account, decoder);
+        }
+        getEntry(accountManager, account);
+    }
+
+    /**
+     * Obtain the auth token of an account, as saved in its user data.
+     * @param accountManager the account manager, used when the token isn't cached
+     * @param account the account
+     * @return the token, or null if the account has none
+     */
+    @Nullable
+    public String getToken(
+            @NonNull AccountManager accountManager,
+            @NonNull Account account) {
+
+        return getEntry(accountManager, account).token;
+    }
+
+    /**
+     * Obtain the account data of an account, with every value as a String,
+     * the way older versions returned it, see {@link AccountDataCodec#toStringBundle(Bundle)}.
+     * @param accountManager the account manager, used when the data isn't cached
+     * @param account the account
+     * @return a copy of the account data, or null if the account has none
+     */
+    @Nullable
+    public Bundle getAccountData(
+            @NonNull AccountManager accountManager,
+            @NonNull Account account) {
+
+        Entry entry = getEntry(accountManager, account);
+        if (entry.data == null) return null;
+
+        // Converted once per entry, concurrent conversions produce equal bundles
+        Bundle stringData = entry.stringData;
+        if (stringData == null) {
+            stringData = AccountDataCodec.toStringBundle(entry.data);
+            entry.stringData = stringData;
+        }
+        return new Bundle(stringData);
+    }
+
+    /**
+     * Obtain the account data of an account, with the value types it was saved with.
+     * @param accountManager the account manager, used when the data isn't cached
+     * @param account the account
+     * @return a copy of the account data, or null if the account has none
+     */
+    @Nullable
+    public Bundle getTypedAccountData(
+            @NonNull AccountManager accountManager,
+            @NonNull Account account) {
+
+        Bundle data = getEntry(accountManager, account).data;
+        if (data == null) return null;
+        else return new Bundle(data);
+    }
+
+    /**
+     * Obtain an object decoded from the account data of an account.
+     * The object is decoded once per decoder, until the account is invalidated,
+     * so keep a single instance of each decoder.
+     * The object is shared with every other caller, and must not be modified.
+     * The decoder receives the account data with the value types it was saved with.
+     * @param accountManager the account manager, used when the data isn't cached
+     * @param account the account
+     * @param decoder the decoder
+     * @return the decoded object, or null if the account has no data or the decoder returned null
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T> T getAccountData(
+            @NonNull AccountManager accountManager,
+            @NonNull Account account,
+            @NonNull Decoder<T> decoder) {
+
+        Entry entry = getEntry(accountManager, account);
+        if (entry.data == null) return null;
+
+        Object value = entry.decoded.get(decoder);
+        if (value == null) {
+            value = decoder.decode(new Bundle(entry.data));
+            if (value == null) return null;
+
+            // Keep the first decoded object if another thread decoded it concurrently
+            Object existing = entry.decoded.putIfAbsent(decoder, value);
+            if (existing != null) value = existing;
+        }
+        return (T) value;
+    }
+
+    /**
+     * Discards the cached data of an account.
+     * Call this whenever the account data is written, or the account is removed.
+     * @param account the account
+     */
+    public void invalidate(@NonNull Account account) {
+        synchronized (this) {
+            mGeneration++;
+            mEntries.remove(account);
+        }
+    }
+
+    /** Discards the cached data of every account */
+    public void clear() {
+        synchronized (this) {
+            mGeneration++;
+            mEntries.clear();
+        }
+    }
+
+    /** Obtain the number of accounts that are cached */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Obtain the cache entry of an account, reading the data if it isn't cached.
+     * @param accountManager the account manager
+     * @param account the account
+     */
+    private Entry getEntry(AccountManager accountManager, Account account) {
+        int generation;
+        synchronized (this) {
+            Entry entry = mEntries.get(account);
+            if (entry != null) return entry;
+            generation = mGeneration;
+        }
+
+        Bundle data = null;
+        String encodedAccountData = accountManager.getUserData(account, AccountConstants.KEY_ACCOUNT_DATA);
+        if (encodedAccountData != null) {
+            try {
+                data = AccountDataCodec.decode(encodedAccountData);
+            } catch (JSONException e) {
+                if (BuildConfig.DEBUG) Log.w(TAG, "Unable to decode the account data of " + account.name, e);
+            }
+        }
+        Entry entry = new Entry(accountManager.getUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN), data);
+
+        synchronized (this) {
+            if (generation == mGeneration && mRegistry.isListening()) {
+                // Keep the entry of another thread that read the account concurrently
+                Entry existing = mEntries.get(account);
+                if (existing != null) entry = existing;
+                else mEntries.put(account, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Decodes a typed object from the account data.
+     * Each decoder receives its own copy of the account data.
+     */
+    public interface Decoder<T> {
+
+        /**
+         * Decodes the typed object.
+         * @param accountData the account data
+         * @return the decoded object, or null if there is none
+         */
+        @Nullable
+        T decode(@NonNull Bundle accountData);
+    }
+
+    /** The cached data of an account */
+    private static final class Entry {
+
+        /** The auth token, or null if the account has none */
+        final String token;
+
+        /** The decoded account data, or null if the account has none */
+        final Bundle data;
+
+        /** The account data with String values, converted on first use */
+        volatile Bundle stringData;
+
+        /** The objects decoded from the data, by decoder */
+        final ConcurrentHashMap<Decoder<?>, Object> decoded = new ConcurrentHashMap<Decoder<?>, Object>();
+
+        Entry(@Nullable String token, @Nullable Bundle data) {
+            this.token = token;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,629 @@
+package itsmagic.present.simpleaccountmanager.util;
+
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import itsmagic.present.simpleaccountmanager.BuildConfig;
+import itsmagic.present.simpleaccountmanager.json.JSONException;
+
+/**
+ * A compact, versioned encoding for the account data {@link Bundle}
+ * stored in the {@link android.accounts.AccountManager}.
+ * <p/>
+ * The AccountManager only stores Strings, so the encoding is a String as well.
+ * It starts with a header that can never start a json document,
+ * followed by typed, length-prefixed entries.
+ * Numbers and lengths are written as variable length integers using printable ASCII characters,
+ * so the encoded data stays small and doesn't need any escaping.
+ * <p/>
+ * Account data stored as json by older versions is still decoded by {@link #decode(String)}.
+ * <p/>
+ * Every value a {@link Bundle} can hold is supported, except for
+ * {@link android.os.Parcelable Parcelables} and {@link android.os.IBinder IBinders}
+ * that aren't {@link Serializable}, as they are only valid within the process that created them.
+ * Those values are skipped.
+ */
+public final class AccountDataCodec {
+
+    /** The first character of the encoded data */
+    private static final char HEADER = '\u0001';
+
+    /** The current version of the encoding */
+    private static final int VERSION = 1;
+
+    /** The tag that ends a bundle */
+    private static final char END = '.';
+
+    private static final char TAG_NULL = 'N';
+    private static final char TAG_STRING = 'S';
+    private static final char TAG_CHAR_SEQUENCE = 'Q';
+    private static final char TAG_BOOLEAN = 'Z';
+    private static final char TAG_BYTE = 'B';
+    private static final char TAG_CHAR = 'C';
+    private static final char TAG_SHORT = 'H';
+    private static final char TAG_INT = 'I';
+    private static final char TAG_LONG = 'J';
+    private static final char TAG_FLOAT = 'F';
+    private static final char TAG_DOUBLE = 'D';
+    private static final char TAG_BOOLEAN_ARRAY = 'z';
+    private static final char TAG_BYTE_ARRAY = 'b';
+    private static final char TAG_CHAR_ARRAY = 'c';
+    private static final char TAG_SHORT_ARRAY = 'h';
+    private static final char TAG_INT_ARRAY = 'i';
+    private static final char TAG_LONG_ARRAY = 'j';
+    private static final char TAG_FLOAT_ARRAY = 'f';
+    private static final char TAG_DOUBLE_ARRAY = 'd';
+    private static final char TAG_STRING_ARRAY = 's';
+    private static final char TAG_CHAR_SEQUENCE_ARRAY = 'q';
+    private static final char TAG_STRING_LIST = 'L';
+    private static final char TAG_INTEGER_LIST = 'M';
+    private static final char TAG_CHAR_SEQUENCE_LIST = 'P';
+    private static final char TAG_BUNDLE = 'U';
+    private static final char TAG_SERIALIZABLE = 'X';
+
+    /**
+     * Variable length integers are written 5 bits per character, least significant bits first.
+     * Every character but the last one is in the continuation range.
+     */
+    private static final char VARINT_FINAL = '@';
+    private static final char VARINT_CONTINUATION = '`';
+
+    /** Byte arrays are written 6 bits per character, starting from this character */
+    private static final char BYTES_BASE = '0';
+
+    private final String in;
+    private int pos;
+
+    private AccountDataCodec(String in, int pos) {
+        this.in = in;
+        this.pos = pos;
+    }
+
+    /**
+     * Encode an android {@link Bundle} into the account data encoding.
+     * @param bundle the bundle
+     * @return the encoded String
+     */
+    @NonNull
+    public static String encode(Bundle bundle) {
+        StringBuilder out = new StringBuilder();
+        out.append(HEADER);
+        writeVarInt(out, VERSION);
+        writeBundle(out, bundle);
+        return out.toString();
+    }
+
+    /**
+     * Decode the account data into an android {@link Bundle}.
+     * Account data that was stored as a json String is decoded as well.
+     * @param data the encoded String
+     * @return the bundle
+     * @throws JSONException if the data is malformed
+     */
+    @NonNull
+    public static Bundle decode(String data) throws JSONException {
+        if (!isEncoded(data)) return AccountBundleParser.jsonStringToBundle(data);
+
+        AccountDataCodec reader = new AccountDataCodec(data, 1);
+        try {
+            long version = reader.readVarInt();
+            if (version > VERSION) {
+                throw new JSONException("Unsupported account data version " + version);
+            }
+            return reader.readBundle();
+        } catch (IndexOutOfBoundsException e) {
+            throw reader.malformed("End of input");
+        }
+    }
+
+    /**
+     * Convert decoded account data into the form that older versions returned,
+     * where every value is the String that the json round trip produced,
+     * e.g. an int 5 becomes "5" and a String array becomes "[\"a\",\"b\"]".
+     * Values that couldn't be stored as json are left out, like they were.
+     * @param bundle the decoded account data
+     * @return the account data with String values
+     */
+    @NonNull
+    public static Bundle toStringBundle(@NonNull Bundle bundle) {
+        try {
+            return AccountBundleParser.jsonStringToBundle(AccountBundleParser.bundleToJsonString(bundle));
+        } catch (JSONException e) {
+            if (BuildConfig.DEBUG) e.printStackTrace();
+            return new Bundle();
+        }
+    }
+
+    /**
+     * Check whether the account data uses this encoding, instead of the legacy json.
+     * @param data the account data
+     * @return true if the data uses this encoding
+     */
+    public static boolean isEncoded(String data) {
+        return data != null && data.length() > 0 && data.charAt(0) == HEADER;
+    }
+
+    private static void writeBundle(StringBuilder out, Bundle bundle) {
+        for (String key : bundle.keySet()) {
+            Object value = bundle.get(key);
+            char tag = tagOf(value);
+            byte[] serialized = null;
+            if (tag == TAG_SERIALIZABLE) {
+                serialized = serialize((Serializable) value);
+                if (serialized == null) continue;
+            } else if (tag == 0) {
+                continue;
+            }
+            out.append(tag);
+            writeString(out, key);
+            if (serialized != null) writeBytes(out, serialized);
+            else writeValue(out, tag, value);
+        }
+        out.append(END);
+    }
+
+    /**
+     * Find the tag of a value.
+     * @param value the value
+     * @return the tag, or 0 if the value can't be encoded
+     */
+    private static char tagOf(Object value) {
+        if (value == null) return TAG_NULL;
+        else if (value instanceof String) return TAG_STRING;
+        else if (value instanceof Integer) return TAG_INT;
+        else if (value instanceof Long) return TAG_LONG;
+        else if (value instanceof Boolean) return TAG_BOOLEAN;
+        else if (value instanceof Double) return TAG_DOUBLE;
+        else if (value instanceof Float) return TAG_FLOAT;
+        else if (value instanceof Byte) return TAG_BYTE;
+        else if (value instanceof Character) return TAG_CHAR;
+        else if (value instanceof Short) return TAG_SHORT;
+        else if (value instanceof CharSequence) return TAG_CHAR_SEQUENCE;
+        else if (value instanceof Bundle) return TAG_BUNDLE;
+        else if (value instanceof boolean[]) return TAG_BOOLEAN_ARRAY;
+        else if (value instanceof byte[]) return TAG_BYTE_ARRAY;
+        else if (value instanceof char[]) return TAG_CHAR_ARRAY;
+        else if (value instanceof short[]) return TAG_SHORT_ARRAY;
+        else if (value instanceof int[]) return TAG_INT_ARRAY;
+        else if (value instanceof long[]) return TAG_LONG_ARRAY;
+        else if (value instanceof float[]) return TAG_FLOAT_ARRAY;
+        else if (value instanceof double[]) return TAG_DOUBLE_ARRAY;
+        else if (value instanceof String[]) return TAG_STRING_ARRAY;
+        else if (value instanceof CharSequence[]) return TAG_CHAR_SEQUENCE_ARRAY;
+        else if (value instanceof ArrayList) {
+            char tag = listTagOf((ArrayList<?>) value);
+            if (tag != 0) return tag;
+        }
+        if (value instanceof Serializable) return TAG_SERIALIZABLE;
+        return 0;
+    }
+
+    /**
+     * Find the tag of a list that can be put into a {@link Bundle} as a list.
+     * @param list the list
+     * @return the tag, or 0 if the list has to be serialized
+     */
+    private static char listTagOf(List<?> list) {
+        boolean strings = true;
+        boolean integers = true;
+        boolean charSequences = true;
+        for (Object element : list) {
+            if (element == null) continue;
+            strings &= element instanceof String;
+            integers &= element instanceof Integer;
+            charSequences &= element instanceof CharSequence;
+        }
+        if (strings) return TAG_STRING_LIST;
+        else if (integers) return TAG_INTEGER_LIST;
+        else if (charSequences) return TAG_CHAR_SEQUENCE_LIST;
+        else return 0;
+    }
+
+    private static void writeValue(StringBuilder out, char tag, Object value) {
+        switch (tag) {
+            case TAG_NULL:
+                break;
+            case TAG_STRING:
+            case TAG_CHAR_SEQUENCE:
+                writeString(out, value.toString());
+                break;
+            case TAG_BOOLEAN:
+                writeVarInt(out, (Boolean) value ? 1 : 0);
+                break;
+            case TAG_BYTE:
+            case TAG_SHORT:
+            case TAG_INT:
+            case TAG_LONG:
+                writeSignedVarInt(out, ((Number) value).longValue());
+                break;
+            case TAG_CHAR:
+                writeVarInt(out, (Character) value);
+                break;
+            case TAG_FLOAT:
+                writeFloat(out, (Float) value);
+                break;
+            case TAG_DOUBLE:
+                writeDouble(out, (Double) value);
+                break;
+            case TAG_BUNDLE:
+                writeBundle(out, (Bundle) value);
+                break;
+            case TAG_BOOLEAN_ARRAY: {
+                boolean[] array = (boolean[]) value;
+                writeVarInt(out, array.length);
+                for (boolean element : array) writeVarInt(out, element ? 1 : 0);
+                break;
+            }
+            case TAG_BYTE_ARRAY:
+                writeBytes(out, (byte[]) value);
+                break;
+            case TAG_CHAR_ARRAY:
+                writeString(out, new String((char[]) value));
+                break;
+            case TAG_SHORT_ARRAY: {
+                short[] array = (short[]) value;
+                writeVarInt(out, array.length);
+                for (short element : array) writeSignedVarInt(out, element);
+                break;
+            }
+            case TAG_INT_ARRAY: {
+                int[] array = (int[]) value;
+                writeVarInt(out, array.length);
+                for (int element : array) writeSignedVarInt(out, element);
+                break;
+            }
+            case TAG_LONG_ARRAY: {
+                long[] array = (long[]) value;
+                writeVarInt(out, array.length);
+                for (long element : array) writeSignedVarInt(out, element);
+                break;
+            }
+            case TAG_FLOAT_ARRAY: {
+                float[] array = (float[]) value;
+                writeVarInt(out, array.length);
+                for (float element : array) writeFloat(out, element);
+                break;
+            }
+            case TAG_DOUBLE_ARRAY: {
+                double[] array = (double[]) value;
+                writeVarInt(out, array.length);
+                for (double element : array) writeDouble(out, element);
+                break;
+            }
+            case TAG_STRING_ARRAY:
+            case TAG_CHAR_SEQUENCE_ARRAY: {
+                CharSequence[] array = (CharSequence[]) value;
+                writeVarInt(out, array.length);
+                for (CharSequence element : array) writeString(out, element == null ? null : element.toString());
+                break;
+            }
+            case TAG_STRING_LIST:
+            case TAG_INTEGER_LIST:
+            case TAG_CHAR_SEQUENCE_LIST: {
+                List<?> list = (List<?>) value;
+                writeVarInt(out, list.size());
+                for (Object element : list) {
+                    char elementTag = tagOf(element);
+                    out.append(elementTag);
+                    writeValue(out, elementTag, element);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Write a String, prefixed with its length plus one, or 0 for a null String.
+     */
+    private static void writeString(StringBuilder out, String value) {
+        if (value == null) {
+            writeVarInt(out, 0);
+        } else {
+            writeVarInt(out, value.length() + 1L);
+            out.append(value);
+        }
+    }
+
+    private static void writeVarInt(StringBuilder out, long value) {
+        while ((value & ~0x1FL) != 0) {
+            out.append((char) (VARINT_CONTINUATION + (int) (value & 0x1F)));
+            value >>>= 5;
+        }
+        out.append((char) (VARINT_FINAL + (int) value));
+    }
+
+    /**
+     * Write a signed integer, zigzag encoded so that small negative numbers stay short.
+     */
+    private static void writeSignedVarInt(StringBuilder out, long value) {
+        writeVarInt(out, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Write a float, with its bits reversed so that round numbers,
+     * which only use the high bits of the mantissa, stay short.
+     */
+    private static void writeFloat(StringBuilder out, float value) {
+        writeVarInt(out, Integer.reverse(Float.floatToRawIntBits(value)) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Write a double, with its bits reversed so that round numbers,
+     * which only use the high bits of the mantissa, stay short.
+     */
+    private static void writeDouble(StringBuilder out, double value) {
+        writeVarInt(out, Long.reverse(Double.doubleToRawLongBits(value)));
+    }
+
+    private static void writeBytes(StringBuilder out, byte[] bytes) {
+        writeVarInt(out, bytes.length);
+        int bits = 0;
+        int bitCount = 0;
+        for (byte b : bytes) {
+            bits = (bits << 8) | (b & 0xFF);
+            bitCount += 8;
+            while (bitCount >= 6) {
+                bitCount -= 6;
+                out.append((char) (BYTES_BASE + ((bits >> bitCount) & 0x3F)));
+            }
+        }
+        if (bitCount > 0) out.append((char) (BYTES_BASE + ((bits << (6 - bitCount)) & 0x3F)));
+    }
+
+    private static byte[] serialize(Serializable value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(value);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            if (BuildConfig.DEBUG) e.printStackTrace();
+            return null;
+        }
+    }
+
+    private Bundle readBundle() throws JSONException {
+        Bundle bundle = new Bundle();
+        while (true) {
+            char tag = in.charAt(pos++);
+            if (tag == END) return bundle;
+            String key = readString();
+            readValue(bundle, key, tag);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readValue(Bundle bundle, String key, char tag) throws JSONException {
+        switch (tag) {
+            case TAG_NULL:
+                bundle.putString(key, null);
+                break;
+            case TAG_STRING:
+                bundle.putString(key, readString());
+                break;
+            case TAG_CHAR_SEQUENCE:
+                bundle.putCharSequence(key, readString());
+                break;
+            case TAG_BOOLEAN:
+                bundle.putBoolean(key, readVarInt() != 0);
+                break;
+            case TAG_BYTE:
+                bundle.putByte(key, (byte) readSignedVarInt());
+                break;
+            case TAG_CHAR:
+                bundle.putChar(key, (char) readVarInt());
+                break;
+            case TAG_SHORT:
+                bundle.putShort(key, (short) readSignedVarInt());
+                break;
+            case TAG_INT:
+                bundle.putInt(key, (int) readSignedVarInt());
+                break;
+            case TAG_LONG:
+                bundle.putLong(key, readSignedVarInt());
+                break;
+            case TAG_FLOAT:
+                bundle.putFloat(key, readFloat());
+                break;
+            case TAG_DOUBLE:
+                bundle.putDouble(key, readDouble());
+                break;
+            case TAG_BUNDLE:
+                bundle.putBundle(key, readBundle());
+                break;
+            case TAG_BOOLEAN_ARRAY: {
+                boolean[] array = new boolean[readLength()];
+                for (int i = 0; i < array.length; i++) array[i] = readVarInt() != 0;
+                bundle.putBooleanArray(key, array);
+                break;
+            }
+            case TAG_BYTE_ARRAY:
+                bundle.putByteArray(key, readBytes());
+                break;
+            case TAG_CHAR_ARRAY: {
+                String string = readString();
+                bundle.putCharArray(key, string == null ? null : string.toCharArray());
+                break;
+            }
+            case TAG_SHORT_ARRAY: {
+                short[] array = new short[readLength()];
+                for (int i = 0; i < array.length; i++) array[i] = (short) readSignedVarInt();
+                bundle.putShortArray(key, array);
+                break;
+            }
+            case TAG_INT_ARRAY: {
+                int[] array = new int[readLength()];
+                for (int i = 0; i < array.length; i++) array[i] = (int) readSignedVarInt();
+                bundle.putIntArray(key, array);
+                break;
+            }
+            case TAG_LONG_ARRAY: {
+                long[] array = new long[readLength()];
+                for (int i = 0; i < array.length; i++) array[i] = readSignedVarInt();
+                bundle.putLongArray(key, array);
+                break;
+            }
+            case TAG_FLOAT_ARRAY: {
+                float[] array = new float[readLength()];
+                for (int i = 0; i < array.length; i++) array[i] = readFloat();
+                bundle.putFloatArray(key, array);
+                break;
+            }
+            case TAG_DOUBLE_ARRAY: {
+                double[] array = new double[readLength()];
+                for (int i = 0; i < array.length; i++) array[i] = readDouble();
+                bundle.putDoubleArray(key, array);
+                break;
+            }
+            case TAG_STRING_ARRAY: {
+                String[] array = new String[readLength()];
+                for (int i = 0; i < array.length; i++) array[i] = readString();
+                bundle.putStringArray(key, array);
+                break;
+            }
+            case TAG_CHAR_SEQUENCE_ARRAY: {
+                CharSequence[] array = new CharSequence[readLength()];
+                for (int i = 0; i < array.length; i++) array[i] = readString();
+                bundle.putCharSequenceArray(key, array);
+                break;
+            }
+            case TAG_STRING_LIST:
+                bundle.putStringArrayList(key, (ArrayList<String>) readList());
+                break;
+            case TAG_INTEGER_LIST:
+                bundle.putIntegerArrayList(key, (ArrayList<Integer>) readList());
+                break;
+            case TAG_CHAR_SEQUENCE_LIST:
+                bundle.putCharSequenceArrayList(key, (ArrayList<CharSequence>) readList());
+                break;
+            case TAG_SERIALIZABLE:
+                bundle.putSerializable(key, deserialize(readBytes()));
+                break;
+            default:
+                throw malformed("Unknown tag " + tag);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private ArrayList readList() throws JSONException {
+        int size = readLength();
+        ArrayList<Object> list = new ArrayList<Object>(size);
+        for (int i = 0; i < size; i++) {
+            char tag = in.charAt(pos++);
+            switch (tag) {
+                case TAG_NULL:
+                    list.add(null);
+                    break;
+                case TAG_STRING:
+                case TAG_CHAR_SEQUENCE:
+                    list.add(readString());
+                    break;
+                case TAG_INT:
+                    list.add((int) readSignedVarInt());
+                    break;
+                default:
+                    throw malformed("Unknown list element tag " + tag);
+            }
+        }
+        return list;
+    }
+
+    private String readString() throws JSONException {
+        long length = readVarInt();
+        if (length == 0) return null;
+        if (length - 1 > in.length() - pos) throw malformed("String length " + (length - 1));
+        int start = pos;
+        pos += (int) (length - 1);
+        return in.substring(start, pos);
+    }
+
+    private int readLength() throws JSONException {
+        long length = readVarInt();
+        if (length > in.length() - pos) throw malformed("Array length " + length);
+        return (int) length;
+    }
+
+    private long readVarInt() throws JSONException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 5) {
+            char c = in.charAt(pos++);
+            if (c >= VARINT_CONTINUATION && c < VARINT_CONTINUATION + 32) {
+                value |= (long) (c - VARINT_CONTINUATION) << shift;
+            } else if (c >= VARINT_FINAL && c < VARINT_FINAL + 32) {
+                return value | (long) (c - VARINT_FINAL) << shift;
+            } else {
+                pos--;
+                throw malformed("Invalid number character " + c);
+            }
+        }
+        throw malformed("Number too long");
+    }
+
+    private long readSignedVarInt() throws JSONException {
+        long value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private float readFloat() throws JSONException {
+        return Float.intBitsToFloat(Integer.reverse((int) readVarInt()));
+    }
+
+    private double readDouble() throws JSONException {
+        return Double.longBitsToDouble(Long.reverse(readVarInt()));
+    }
+
+    private byte[] readBytes() throws JSONException {
+        byte[] bytes = new byte[readLength()];
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            while (bitCount < 8) {
+                int c = in.charAt(pos++) - BYTES_BASE;
+                if (c < 0 || c > 0x3F) {
+                    pos--;
+                    throw malformed("Invalid byte character " + (char) (c + BYTES_BASE));
+                }
+                bits = (bits << 6) | c;
+                bitCount += 6;
+            }
+            bitCount -= 8;
+            bytes[i] = (byte) (bits >> bitCount);
+        }
+        return bytes;
+    }
+
+    private Serializable deserialize(byte[] bytes) throws JSONException {
+        try {
+            ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return (Serializable) objectIn.readObject();
+            } finally {
+                objectIn.close();
+            }
+        } catch (IOException e) {
+            throw malformed("Invalid serialized value", e);
+        } catch (ClassNotFoundException e) {
+            throw malformed("Invalid serialized value", e);
+        }
+    }
+
+    private JSONException malformed(String message, Exception cause) {
+        JSONException exception = malformed(message);
+        exception.initCause(cause);
+        return exception;
+    }
+
+    private JSONException malformed(String message) {
+        return new JSONException("Malformed account data, " + message + " at character " + pos);
+    }
+}
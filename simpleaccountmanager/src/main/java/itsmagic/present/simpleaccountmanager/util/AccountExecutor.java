@@ -0,0 +1,117 @@
+package itsmagic.present.simpleaccountmanager.util;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The executor that runs the account operations of this library in the background.
+ * <p/>
+ * It is separate from {@link android.os.AsyncTask#THREAD_POOL_EXECUTOR},
+ * so account operations don't wait behind the app's background work, and don't hold it up either.
+ * It runs a small number of low priority threads, which stop when they are idle,
+ * and queues a bounded number of operations.
+ * When the queue is full, new operations are rejected with a {@link RejectedExecutionException}.
+ */
+public class AccountExecutor extends ThreadPoolExecutor {
+
+    /** The maximum number of operations that run at the same time */
+    private static final int THREAD_COUNT = 2;
+
+    /** The maximum number of operations that wait for a thread */
+    private static final int QUEUE_CAPACITY = 64;
+
+    /** The time an idle thread waits for an operation before it stops */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /** Use a singleton instance to make sure only one executor exists */
+    private static AccountExecutor mInstance = null;
+
+    /** Obtain the singleton instance of {@link AccountExecutor}. */
+    public static synchronized AccountExecutor getInstance() {
+        if (mInstance == null) mInstance = new AccountExecutor();
+        return mInstance;
+    }
+
+    /** The highest number of operations that have waited in the queue at the same time */
+    private final AtomicInteger mPeakQueueDepth = new AtomicInteger();
+
+    /** The number of operations that have been rejected because the queue was full */
+    private final AtomicLong mRejectedCount = new AtomicLong();
+
+    /** Private constructor. */
+    private AccountExecutor() {
+        super(THREAD_COUNT, THREAD_COUNT, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), new AccountThreadFactory());
+        allowCoreThreadTimeOut(true);
+        setRejectedExecutionHandler(new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                mRejectedCount.incrementAndGet();
+                throw new RejectedExecutionException("Too many pending account operations: " + executor.getQueue().size());
+            }
+        });
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        super.execute(command);
+
+        // Record the queue depth right after the operation was queued
+        int depth = getQueue().size();
+        int peak = mPeakQueueDepth.get();
+        while (depth > peak && !mPeakQueueDepth.compareAndSet(peak, depth)) {
+            peak = mPeakQueueDepth.get();
+        }
+    }
+
+    /** Obtain the number of operations that are waiting for a thread. */
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    /** Obtain the highest number of operations that have waited for a thread at the same time. */
+    public int getPeakQueueDepth() {
+        return mPeakQueueDepth.get();
+    }
+
+    /** Obtain the number of operations that have been rejected because the queue was full. */
+    public long getRejectedCount() {
+        return mRejectedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "AccountExecutor{active=" + getActiveCount()
+                + ", queued=" + getQueueDepth()
+                + ", peakQueued=" + getPeakQueueDepth()
+                + ", completed=" + getCompletedTaskCount()
+                + ", rejected=" + getRejectedCount() + "}";
+    }
+
+    /** Creates the low priority threads of the executor */
+    private static class AccountThreadFactory implements ThreadFactory {
+
+        /** The number of threads created so far, to name them */
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "AccountExecutor #" + mCount.incrementAndGet());
+        }
+    }
+}
@@ -1,73 +1,95 @@
 package itsmagic.present.simpleaccountmanager.util;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.Log;
 
+import java.io.File;
+import java.io.IOException;
+
+import itsmagic.present.simpleaccountmanager.BuildConfig;
 import itsmagic.present.simpleaccountmanager.R;
 
 /**
  * Created by Alvin Rusli on 04/04/2017.
  * <p/>
- * A {@link SharedPreferences} helper class.
+ * The preferences helper class.
+ * <p/>
+ * The preferences are kept in an {@link AccountPreferenceStore},
+ * a {@link MappedPreferenceStore} unless another store has been set through {@link #setStore(AccountPreferenceStore)}.
+ * The values of the {@link SharedPreferences} used by earlier versions are moved to it on first use.
  */
 public class AccountPreferenceHelper {
 
-    /** The context */
-    private Context mContext = null;
+    /** The log tag */
+    private static final String TAG = "AccountPreferenceHelper";
+
+    /** The name of the {@link SharedPreferences} file used by earlier versions */
+    private static final String PREFS_NAME = "simaccmgr_prefs";
 
-    /** The {@link SharedPreferences} object */
-    private SharedPreferences mPrefs;
+    /** The name of the {@link MappedPreferenceStore} file */
+    private static final String STORE_FILE_NAME = "simaccmgr_prefs.kv";
 
-    /** The {@link SharedPreferences.Editor} object */
-    private SharedPreferences.Editor mPrefsEditor;
+    /** The store */
+    private final AccountPreferenceStore mStore;
+
+    /** The key of the selected account name, resolved once */
+    private final String mSelectedAccountKey;
 
     /** Use a singleton instance to make sure only one helper exists */
     private static AccountPreferenceHelper mInstance = null;
 
+    /** The store set by the app, used when the helper is created */
+    private static AccountPreferenceStore mCustomStore = null;
+
     /**
      * Obtain the singleton instance of {@link AccountPreferenceHelper}.
      * @param context the context
      */
-    public static AccountPreferenceHelper getInstance(Context context) {
+    public static synchronized AccountPreferenceHelper getInstance(Context context) {
         if (mInstance == null) mInstance = new AccountPreferenceHelper(context.getApplicationContext());
         return mInstance;
     }
 
     /**
-     * Private constructor.
-     * @param context the context
+     * Sets the store that keeps the preferences.
+     * Call this before the library is used, the values of the previous store aren't moved.
+     * @param store the store, or null to use the default {@link MappedPreferenceStore}
      */
-    private AccountPreferenceHelper(Context context) {
-        mContext = context;
-        initSharedPreferences();
+    public static synchronized void setStore(@Nullable AccountPreferenceStore store) {
+        mCustomStore = store;
+        mInstance = null;
     }
 
     /**
-     * Obtain the key for a pref item.
-     * @param prefResId the preferences {@link String} resource
-     * @return the pref key
+     * Private constructor.
+     * @param context the context
      */
-    private String getPrefKey(int prefResId) {
-        return mContext.getResources().getString(prefResId);
+    private AccountPreferenceHelper(Context context) {
+        mSelectedAccountKey = context.getString(R.string.itsmagic_present_simpleaccountmanager_selected_account_name);
+        mStore = mCustomStore != null ? mCustomStore : openDefaultStore(context);
     }
 
     /**
-     * Initialize the app's default {@link SharedPreferences}
-     * and its {@link SharedPreferences.Editor}.
+     * Opens the {@link MappedPreferenceStore},
+     * or falls back to the {@link SharedPreferences} if it can't be opened.
+     * @param context the context
      */
-    @SuppressLint("CommitPrefEdits")
-    private void initSharedPreferences() {
-        mPrefs = mContext.getSharedPreferences("simaccmgr_prefs", Context.MODE_PRIVATE);
-        mPrefsEditor = mPrefs.edit();
+    private static AccountPreferenceStore openDefaultStore(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        try {
+            return new MappedPreferenceStore(new File(context.getFilesDir(), STORE_FILE_NAME), prefs);
+        } catch (IOException e) {
+            if (BuildConfig.DEBUG) Log.e(TAG, "Unable to open the preferences store, using shared preferences", e);
+            return new SharedPreferenceStore(prefs);
+        }
     }
 
     /** Clears all currently saved entries from prefs */
     public void removeEverything() {
-        mPrefsEditor.clear();
-        mPrefsEditor.apply();
+        mStore.clear();
     }
 
     /**
@@ -75,8 +97,7 @@ public class AccountPreferenceHelper {
      * @param accountName the account name
      */
     public void saveAccountInitialAddition(@NonNull String accountName) {
-        mPrefsEditor.putBoolean(accountName, true);
-        mPrefsEditor.apply();
+        mStore.putBoolean(accountName, true);
     }
 
     /**
@@ -85,7 +106,7 @@ public class AccountPreferenceHelper {
      * @return true if the specified account is initially added
      */
     public boolean loadAccountAdditionSyncing(@NonNull String accountName) {
-        return mPrefs.contains(accountName);
+        return mStore.contains(accountName);
     }
 
     /**
@@ -93,8 +114,7 @@ public class AccountPreferenceHelper {
      * @param accountName the account name
      */
     public void removeAccountInitialAddition(@NonNull String accountName) {
-        mPrefsEditor.remove(accountName);
-        mPrefsEditor.apply();
+        mStore.remove(accountName);
     }
 
     /**
@@ -102,8 +122,7 @@ public class AccountPreferenceHelper {
      * @param accountName the account name
      */
     public void saveSelectedAccount(@NonNull String accountName) {
-        mPrefsEditor.putString(mContext.getString(R.string.itsmagic_present_simpleaccountmanager_selected_account_name), accountName);
-        mPrefsEditor.apply();
+        mStore.putString(mSelectedAccountKey, accountName);
     }
 
     /**
@@ -112,12 +131,11 @@ public class AccountPreferenceHelper {
      */
     @Nullable
     public String loadSelectedAccount() {
-        return mPrefs.getString(mContext.getString(R.string.itsmagic_present_simpleaccountmanager_selected_account_name), null);
+        return mStore.getString(mSelectedAccountKey);
     }
 
     /** Clears the currently selected account name from prefs */
     public void removeSelectedAccount() {
-        mPrefsEditor.remove(mContext.getString(R.string.itsmagic_present_simpleaccountmanager_selected_account_name));
-        mPrefsEditor.apply();
+        mStore.remove(mSelectedAccountKey);
     }
 }
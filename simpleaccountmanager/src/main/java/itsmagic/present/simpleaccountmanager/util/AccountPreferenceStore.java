@@ -0,0 +1,54 @@
+package itsmagic.present.simpleaccountmanager.util;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * The storage backend of {@link AccountPreferenceHelper}.
+ * <p/>
+ * Implementations must be safe to use from any thread,
+ * and reads should be answered from memory.
+ *
+ * @see MappedPreferenceStore
+ * @see SharedPreferenceStore
+ */
+public interface AccountPreferenceStore {
+
+    /**
+     * Checks if a value is stored for a key.
+     * @param key the key
+     * @return true if a value is stored
+     */
+    boolean contains(@NonNull String key);
+
+    /**
+     * Obtain the string stored for a key.
+     * @param key the key
+     * @return the string, or null if no string is stored for the key
+     */
+    @Nullable
+    String getString(@NonNull String key);
+
+    /**
+     * Stores a string.
+     * @param key the key
+     * @param value the string, or null to remove the key
+     */
+    void putString(@NonNull String key, @Nullable String value);
+
+    /**
+     * Stores a boolean.
+     * @param key the key
+     * @param value the boolean
+     */
+    void putBoolean(@NonNull String key, boolean value);
+
+    /**
+     * Removes a key.
+     * @param key the key
+     */
+    void remove(@NonNull String key);
+
+    /** Removes every key */
+    void clear();
+}
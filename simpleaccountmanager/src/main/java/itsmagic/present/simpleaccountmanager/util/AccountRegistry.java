@@ -0,0 +1,312 @@
+package itsmagic.present.simpleaccountmanager.util;
+
+import android.accounts.Account;
+import android.accounts.AccountManager;
+import android.accounts.OnAccountsUpdateListener;
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import itsmagic.present.simpleaccountmanager.BuildConfig;
+
+/**
+ * An in-memory copy of the accounts in the {@link AccountManager}, keyed by account type and name.
+ * <p/>
+ * {@link AccountManager#getAccounts()} is a Binder call that returns every account on the device.
+ * The registry makes that call once, and then answers lookups from memory.
+ * It listens to the {@link AccountManager} through an {@link OnAccountsUpdateListener},
+ * which replaces the copy whenever an account is added or removed anywhere on the device.
+ * Changes made by this library call {@link #invalidate()}, which reloads the copy on a background thread.
+ * <p/>
+ * The accounts are only kept in memory while the listener is registered,
+ * which requires the {@link android.Manifest.permission#GET_ACCOUNTS} permission on older platforms.
+ * Otherwise every lookup calls the {@link AccountManager}, like before.
+ */
+public class AccountRegistry {
+
+    /** The log tag */
+    private static final String TAG = "AccountRegistry";
+
+    /** Use a singleton instance to make sure only one registry exists */
+    private static AccountRegistry mInstance = null;
+
+    /**
+     * Obtain the singleton instance of {@link AccountRegistry}.
+     * @param context the context
+     */
+    public static synchronized AccountRegistry getInstance(@NonNull Context context) {
+        if (mInstance == null) mInstance = new AccountRegistry(context.getApplicationContext());
+        return mInstance;
+    }
+
+    /** The application context */
+    private final Context mContext;
+
+    /** The thread that receives account updates and reloads the accounts */
+    private Handler mHandler = null;
+
+    /** True once the accounts update listener has been registered */
+    private boolean mIsListening = false;
+
+    /** The accounts by type and name, or null if they have to be reloaded */
+    private volatile Map<String, Map<String, Account>> mAccounts = null;
+
+    /** Increased on every invalidation, so that a reload started before it is discarded */
+    private int mGeneration = 0;
+
+    /** The number of lookups answered from memory */
+    private final AtomicLong mHitCount = new AtomicLong();
+
+    /** The number of {@link AccountManager#getAccounts()} calls made for a lookup */
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    /** The number of {@link AccountManager#getAccounts()} calls made in the background */
+    private final AtomicLong mReloadCount = new AtomicLong();
+
+    /** The number of times the accounts have been replaced by the listener or invalidated */
+    private final AtomicLong mUpdateCount = new AtomicLong();
+
+    /** The listeners that are notified after the listener has replaced the accounts */
+    private final List<OnAccountsUpdateListener> mUpdateListeners = new CopyOnWriteArrayList<OnAccountsUpdateListener>();
+
+    /** Receives the accounts of the device whenever they change */
+    private final OnAccountsUpdateListener mListener = new OnAccountsUpdateListener() {
+        @Override
+        public void onAccountsUpdated(Account[] accounts) {
+            mUpdateCount.incrementAndGet();
+            synchronized (AccountRegistry.this) {
+                mGeneration++;
+                mAccounts = index(accounts);
+            }
+            for (OnAccountsUpdateListener listener : mUpdateListeners) {
+                listener.onAccountsUpdated(accounts);
+            }
+        }
+    };
+
+    /** Reloads the accounts after an invalidation */
+    private final Runnable mReload = new Runnable() {
+        @Override
+        public void run() {
+            if (mAccounts != null) return;
+            mReloadCount.incrementAndGet();
+            load(AccountManager.get(mContext));
+        }
+    };
+
+    /**
+     * Private constructor.
+     * @param context the context
+     */
+    private AccountRegistry(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Obtain an account.
+     * @param accountManager the account manager, used when the accounts aren't in memory
+     * @param accountType the account type
+     * @param accountName the account name
+     * @return the account, or null if it doesn't exist
+     */
+    @Nullable
+    public Account getAccount(
+            @NonNull AccountManager accountManager,
+            @NonNull String accountType,
+            @Nullable String accountName) {
+
+        Map<String, Account> accounts = getAccounts(accountManager).get(accountType);
+        if (accounts == null) return null;
+        else return accounts.get(accountName);
+    }
+
+    /**
+     * Obtain the first account of a type, in the order of the {@link AccountManager}.
+     * @param accountManager the account manager, used when the accounts aren't in memory
+     * @param accountType the account type
+     * @return the account, or null if there is no account of the type
+     */
+    @Nullable
+    public Account getFirstAccount(
+            @NonNull AccountManager accountManager,
+            @NonNull String accountType) {
+
+        Map<String, Account> accounts = getAccounts(accountManager).get(accountType);
+        if (accounts == null || accounts.isEmpty()) return null;
+        else return accounts.values().iterator().next();
+    }
+
+    /**
+     * Obtain the accounts of a type, in the order of the {@link AccountManager}.
+     * @param accountManager the account manager, used when the accounts aren't in memory
+     * @param accountType the account type
+     * @return the accounts, which must not be modified
+     */
+    @NonNull
+    public Collection<Account> getAccounts(
+            @NonNull AccountManager accountManager,
+            @NonNull String accountType) {
+
+        Map<String, Account> accounts = getAccounts(accountManager).get(accountType);
+        if (accounts == null) return Collections.emptyList();
+        else return accounts.values();
+    }
+
+    /**
+     * Discards the accounts in memory and reloads them in the background.
+     * Call this after adding or removing an account,
+     * so that lookups see the change before the listener is notified.
+     */
+    public void invalidate() {
+        mUpdateCount.incrementAndGet();
+        Handler handler;
+        synchronized (this) {
+            mGeneration++;
+            mAccounts = null;
+            handler = mIsListening ? mHandler : null;
+        }
+        if (handler != null) handler.post(mReload);
+    }
+
+    /**
+     * Checks if the registry is notified of account changes made outside of this library.
+     * This is the case once an account has been looked up,
+     * unless the accounts update listener couldn't be registered.
+     * @return true if the accounts update listener is registered
+     */
+    public synchronized boolean isListening() {
+        return mIsListening;
+    }
+
+    /**
+     * Adds a listener that is notified on a background thread
+     * whenever an account is added or removed anywhere on the device,
+     * while the registry {@link #isListening() is listening}.
+     * @param listener the listener
+     */
+    public void addOnAccountsUpdatedListener(@NonNull OnAccountsUpdateListener listener) {
+        mUpdateListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added by {@link #addOnAccountsUpdatedListener(OnAccountsUpdateListener)}.
+     * @param listener the listener
+     */
+    public void removeOnAccountsUpdatedListener(@NonNull OnAccountsUpdateListener listener) {
+        mUpdateListeners.remove(listener);
+    }
+
+    /**
+     * Obtain the number of lookups answered from memory,
+     * each of which saved a {@link AccountManager#getAccounts()} call.
+     */
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    /** Obtain the number of lookups that had to call {@link AccountManager#getAccounts()} */
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    /** Obtain the number of {@link AccountManager#getAccounts()} calls made in the background */
+    public long getReloadCount() {
+        return mReloadCount.get();
+    }
+
+    /** Obtain the number of times the accounts in memory have been replaced or discarded */
+    public long getUpdateCount() {
+        return mUpdateCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return TAG + "{hits=" + getHitCount()
+                + ", misses=" + getMissCount()
+                + ", reloads=" + getReloadCount()
+                + ", updates=" + getUpdateCount() + "}";
+    }
+
+    /**
+     * Obtain the accounts by type and name, from memory if possible.
+     * @param accountManager the account manager
+     */
+    private Map<String, Map<String, Account>> getAccounts(AccountManager accountManager) {
+        Map<String, Map<String, Account>> accounts = mAccounts;
+        if (accounts != null) {
+            mHitCount.incrementAndGet();
+            return accounts;
+        }
+        mMissCount.incrementAndGet();
+        startListening();
+        return load(accountManager);
+    }
+
+    /**
+     * Loads the accounts from the account manager,
+     * and keeps them in memory unless they were invalidated in the meantime.
+     * @param accountManager the account manager
+     */
+    private Map<String, Map<String, Account>> load(AccountManager accountManager) {
+        int generation;
+        synchronized (this) {
+            generation = mGeneration;
+        }
+        Map<String, Map<String, Account>> accounts = index(accountManager.getAccounts());
+        synchronized (this) {
+            if (mIsListening && generation == mGeneration) mAccounts = accounts;
+        }
+        return accounts;
+    }
+
+    /**
+     * Registers the accounts update listener, if it isn't registered yet.
+     * The listener is registered with the application's account manager,
+     * so that it never holds on to the context of a caller.
+     */
+    private synchronized void startListening() {
+        if (mIsListening) return;
+        if (mHandler == null) {
+            HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            mHandler = new Handler(thread.getLooper());
+        }
+        try {
+            // Don't update immediately, the caller loads the accounts itself
+            AccountManager.get(mContext).addOnAccountsUpdatedListener(mListener, mHandler, false);
+            mIsListening = true;
+        } catch (SecurityException e) {
+            if (BuildConfig.DEBUG) Log.w(TAG, "Unable to listen to account updates, accounts won't be kept in memory", e);
+        }
+    }
+
+    /**
+     * Indexes accounts by type and name, keeping the order of the accounts.
+     * @param accounts the accounts
+     */
+    private static Map<String, Map<String, Account>> index(Account[] accounts) {
+        Map<String, Map<String, Account>> index = new HashMap<String, Map<String, Account>>();
+        for (Account account : accounts) {
+            Map<String, Account> accountsOfType = index.get(account.type);
+            if (accountsOfType == null) {
+                accountsOfType = new LinkedHashMap<String, Account>();
+                index.put(account.type, accountsOfType);
+            }
+            if (!accountsOfType.containsKey(account.name)) accountsOfType.put(account.name, account);
+        }
+        return Collections.unmodifiableMap(index);
+    }
+}
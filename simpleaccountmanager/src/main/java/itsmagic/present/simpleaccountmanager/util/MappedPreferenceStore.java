@@ -0,0 +1,323 @@
+package itsmagic.present.simpleaccountmanager.util;
+
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import itsmagic.present.simpleaccountmanager.BuildConfig;
+
+/**
+ * An {@link AccountPreferenceStore} backed by a memory-mapped, append-only file.
+ * <p/>
+ * The file is read once when the store is opened, after that every read is answered from memory.
+ * Every write appends a record to the mapped file, which the kernel persists even if the process dies right after.
+ * Each record carries a checksum, so a record that was only partly written is discarded when the file is opened again.
+ * When the file is full, the current values are written to a new file, which replaces the old one.
+ * <p/>
+ * The file starts with a header (magic, version),
+ * followed by records of (body length, CRC32 of the body, body),
+ * where the body is (operation, key length, key, value).
+ * A zero body length marks the end of the records.
+ */
+public class MappedPreferenceStore implements AccountPreferenceStore {
+
+    /** The log tag */
+    private static final String TAG = "MappedPreferenceStore";
+
+    /** Identifies the file, "SAMK" */
+    private static final int MAGIC = 0x53414d4b;
+
+    /** The version of the file format */
+    private static final int VERSION = 1;
+
+    /** The size of the file header */
+    private static final int HEADER_SIZE = 8;
+
+    /** The size of the record header, the body length and its checksum */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /** The smallest size of the file */
+    private static final int MIN_CAPACITY = 4096;
+
+    /** Stores a string */
+    private static final byte OP_PUT_STRING = 1;
+
+    /** Stores a boolean */
+    private static final byte OP_PUT_BOOLEAN = 2;
+
+    /** Removes a key */
+    private static final byte OP_REMOVE = 3;
+
+    /** The charset of the keys and strings */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** The file */
+    private final File mFile;
+
+    /** The current values by key */
+    private final Map<String, Object> mValues = new HashMap<String, Object>();
+
+    /** The mapped file */
+    private MappedByteBuffer mBuffer;
+
+    /** The end of the last record, where the next record is appended */
+    private int mPosition;
+
+    /**
+     * Opens the store, creating the file if it doesn't exist.
+     * @param file the file
+     * @param migratedPrefs the preferences whose values are moved to the store when the file is created, or null
+     * @throws IOException if the file can't be created or mapped
+     */
+    public MappedPreferenceStore(
+            @NonNull File file,
+            @Nullable SharedPreferences migratedPrefs) throws IOException {
+
+        mFile = file;
+        if (!mFile.exists()) {
+            if (migratedPrefs != null) {
+                for (Map.Entry<String, ?> entry : migratedPrefs.getAll().entrySet()) {
+                    Object value = entry.getValue();
+                    if (value instanceof String || value instanceof Boolean) mValues.put(entry.getKey(), value);
+                }
+            }
+            compact();
+
+            // The values are safely stored in the file, so the preferences aren't needed anymore
+            if (migratedPrefs != null) migratedPrefs.edit().clear().apply();
+        } else {
+            map();
+            if (!load()) {
+                if (BuildConfig.DEBUG) Log.w(TAG, "Unrecognized file " + mFile + ", starting empty");
+                mValues.clear();
+                compact();
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean contains(@NonNull String key) {
+        return mValues.containsKey(key);
+    }
+
+    @Nullable
+    @Override
+    public synchronized String getString(@NonNull String key) {
+        Object value = mValues.get(key);
+        if (value instanceof String) return (String) value;
+        else return null;
+    }
+
+    @Override
+    public synchronized void putString(@NonNull String key, @Nullable String value) {
+        if (value == null) {
+            remove(key);
+        } else if (!value.equals(mValues.get(key))) {
+            byte[] body = encode(OP_PUT_STRING, key, value);
+            mValues.put(key, value);
+            append(body);
+        }
+    }
+
+    @Override
+    public synchronized void putBoolean(@NonNull String key, boolean value) {
+        if (!Boolean.valueOf(value).equals(mValues.get(key))) {
+            byte[] body = encode(OP_PUT_BOOLEAN, key, value);
+            mValues.put(key, value);
+            append(body);
+        }
+    }
+
+    @Override
+    public synchronized void remove(@NonNull String key) {
+        if (mValues.containsKey(key)) {
+            byte[] body = encode(OP_REMOVE, key, null);
+            mValues.remove(key);
+            append(body);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        mValues.clear();
+        tryCompact();
+    }
+
+    /**
+     * Appends a record to the file, or rewrites the file if the record doesn't fit.
+     * @param body the record body
+     */
+    private void append(byte[] body) {
+        if (mBuffer == null || mPosition + RECORD_HEADER_SIZE + body.length > mBuffer.capacity()) {
+            tryCompact();
+            return;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        // Write the length last, so that the record is only read once the rest of it has been written
+        mBuffer.position(mPosition + RECORD_HEADER_SIZE);
+        mBuffer.put(body);
+        mBuffer.putInt(mPosition + 4, (int) crc.getValue());
+        mBuffer.putInt(mPosition, body.length);
+        mPosition += RECORD_HEADER_SIZE + body.length;
+    }
+
+    /** Rewrites the file, keeping the values in memory if that fails. */
+    private void tryCompact() {
+        try {
+            compact();
+        } catch (IOException e) {
+            // The values are written with the next successful compaction
+            if (BuildConfig.DEBUG) Log.e(TAG, "Unable to write " + mFile, e);
+            mBuffer = null;
+        }
+    }
+
+    /**
+     * Writes the current values to a new file, which replaces the old one, and maps it.
+     * The new file has at least as much free space as the values take up.
+     */
+    private void compact() throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+        records.write(header.array(), 0, HEADER_SIZE);
+        for (Map.Entry<String, Object> entry : mValues.entrySet()) {
+            Object value = entry.getValue();
+            byte[] body = encode(value instanceof Boolean ? OP_PUT_BOOLEAN : OP_PUT_STRING, entry.getKey(), value);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE).putInt(body.length).putInt((int) crc.getValue());
+            records.write(recordHeader.array(), 0, RECORD_HEADER_SIZE);
+            records.write(body, 0, body.length);
+        }
+
+        int capacity = MIN_CAPACITY;
+        while (capacity < records.size() * 2) capacity *= 2;
+
+        File temp = new File(mFile.getPath() + ".tmp");
+        RandomAccessFile file = new RandomAccessFile(temp, "rw");
+        try {
+            file.setLength(0);
+            file.write(records.toByteArray());
+            file.setLength(capacity);
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+        if (!temp.renameTo(mFile)) throw new IOException("Unable to replace " + mFile);
+
+        map();
+        mPosition = records.size();
+    }
+
+    /** Maps the whole file. */
+    private void map() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            // The mapping stays valid after the file has been closed
+            mBuffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Reads the values from the mapped file, up to the first record that is incomplete.
+     * @return false if the file isn't a store file
+     */
+    private boolean load() {
+        if (mBuffer.capacity() < HEADER_SIZE || mBuffer.getInt(0) != MAGIC || mBuffer.getInt(4) != VERSION) {
+            return false;
+        }
+
+        int position = HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        while (position + RECORD_HEADER_SIZE <= mBuffer.capacity()) {
+            int length = mBuffer.getInt(position);
+            if (length <= 0 || length > mBuffer.capacity() - position - RECORD_HEADER_SIZE) break;
+
+            byte[] body = new byte[length];
+            mBuffer.position(position + RECORD_HEADER_SIZE);
+            mBuffer.get(body);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != mBuffer.getInt(position + 4) || !apply(body)) break;
+            position += RECORD_HEADER_SIZE + length;
+        }
+
+        // Erase what's left of an incomplete record, so that it can't be mistaken for a record later
+        for (int i = position; i < mBuffer.capacity(); i++) {
+            if (mBuffer.get(i) != 0) mBuffer.put(i, (byte) 0);
+        }
+        mPosition = position;
+        return true;
+    }
+
+    /**
+     * Applies a record body to the values.
+     * @param body the record body
+     * @return false if the body is malformed
+     */
+    private boolean apply(byte[] body) {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        if (buffer.remaining() < 3) return false;
+        byte op = buffer.get();
+        int keyLength = buffer.getShort() & 0xffff;
+        if (buffer.remaining() < keyLength) return false;
+        String key = new String(body, buffer.position(), keyLength, UTF_8);
+        buffer.position(buffer.position() + keyLength);
+
+        switch (op) {
+            case OP_PUT_STRING:
+                mValues.put(key, new String(body, buffer.position(), buffer.remaining(), UTF_8));
+                return true;
+            case OP_PUT_BOOLEAN:
+                if (buffer.remaining() != 1) return false;
+                mValues.put(key, buffer.get() != 0);
+                return true;
+            case OP_REMOVE:
+                mValues.remove(key);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Encodes a record body.
+     * @param op the operation
+     * @param key the key
+     * @param value the string or boolean, or null for a removal
+     */
+    private static byte[] encode(byte op, String key, Object value) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        if (keyBytes.length > 0xffff) throw new IllegalArgumentException("Key is too long: " + key);
+
+        byte[] valueBytes;
+        if (op == OP_PUT_STRING) valueBytes = ((String) value).getBytes(UTF_8);
+        else if (op == OP_PUT_BOOLEAN) valueBytes = new byte[] { (byte) ((Boolean) value ? 1 : 0) };
+        else valueBytes = new byte[0];
+
+        return ByteBuffer.allocate(3 + keyBytes.length + valueBytes.length)
+                .put(op)
+                .putShort((short) keyBytes.length)
+                .put(keyBytes)
+                .put(valueBytes)
+                .array();
+    }
+}
@@ -0,0 +1,62 @@
+package itsmagic.present.simpleaccountmanager.util;
+
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * An {@link AccountPreferenceStore} backed by {@link SharedPreferences}.
+ * <p/>
+ * Writes are applied asynchronously.
+ * The first access blocks until the preferences file has been loaded.
+ */
+public class SharedPreferenceStore implements AccountPreferenceStore {
+
+    /** The {@link SharedPreferences} object */
+    private final SharedPreferences mPrefs;
+
+    /**
+     * Default constructor.
+     * @param prefs the shared preferences
+     */
+    public SharedPreferenceStore(@NonNull SharedPreferences prefs) {
+        mPrefs = prefs;
+    }
+
+    @Override
+    public boolean contains(@NonNull String key) {
+        return mPrefs.contains(key);
+    }
+
+    @Nullable
+    @Override
+    public String getString(@NonNull String key) {
+        try {
+            return mPrefs.getString(key, null);
+        } catch (ClassCastException e) {
+            // The key holds a boolean
+            return null;
+        }
+    }
+
+    @Override
+    public void putString(@NonNull String key, @Nullable String value) {
+        if (value == null) remove(key);
+        else mPrefs.edit().putString(key, value).apply();
+    }
+
+    @Override
+    public void putBoolean(@NonNull String key, boolean value) {
+        mPrefs.edit().putBoolean(key, value).apply();
+    }
+
+    @Override
+    public void remove(@NonNull String key) {
+        mPrefs.edit().remove(key).apply();
+    }
+
+    @Override
+    public void clear() {
+        mPrefs.edit().clear().apply();
+    }
+}
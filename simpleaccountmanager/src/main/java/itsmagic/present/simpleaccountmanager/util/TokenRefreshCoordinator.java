@@ -0,0 +1,390 @@
+package itsmagic.present.simpleaccountmanager.util;
+
+import android.accounts.Account;
+import android.accounts.AccountManager;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+import android.util.Pair;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import itsmagic.present.simpleaccountmanager.BuildConfig;
+
+/**
+ * Refreshes the auth tokens of accounts through a {@link Refresher} supplied by the app.
+ * <p/>
+ * Only one refresh runs per account at a time. Callers that need a new token while a refresh is running
+ * wait for that refresh and share its token, and callers that were handed a token that has been
+ * replaced since then get the new token without another refresh.
+ * So when many requests are rejected at once, the token is refreshed, and written to the
+ * {@link AccountManager}, only once.
+ * <p/>
+ * Tokens with a known expiry time are refreshed {@link #REFRESH_MARGIN_MILLIS ahead} of it:
+ * a refresh is scheduled for that time, and a token that is about to expire is never handed out.
+ * Tokens that live shorter than twice the margin are refreshed halfway through their remaining lifetime instead,
+ * and tokens that expire within {@link #MIN_REFRESH_DELAY_MILLIS} aren't refreshed ahead at all,
+ * so a short-lived token never makes the refreshes run back to back.
+ */
+public class TokenRefreshCoordinator {
+
+    /** The log tag */
+    private static final String TAG = "TokenRefreshCoordinator";
+
+    /** How long before its expiry time a token is refreshed */
+    public static final long REFRESH_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /** The shortest time between obtaining a token and refreshing it ahead of its expiry */
+    public static final long MIN_REFRESH_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    /** Use a singleton instance to make sure only one coordinator exists */
+    private static TokenRefreshCoordinator mInstance = null;
+
+    /** The refresher of the app, or null if tokens can't be refreshed */
+    private static volatile Refresher mRefresher = null;
+
+    /**
+     * Obtain the singleton instance of {@link TokenRefreshCoordinator}.
+     * @param context the context
+     */
+    public static synchronized TokenRefreshCoordinator getInstance(@NonNull Context context) {
+        if (mInstance == null) mInstance = new TokenRefreshCoordinator(context.getApplicationContext());
+        return mInstance;
+    }
+
+    /**
+     * Sets the refresher that obtains new tokens.
+     * @param refresher the refresher, or null to stop refreshing tokens
+     */
+    public static void setRefresher(@Nullable Refresher refresher) {
+        mRefresher = refresher;
+    }
+
+    /** The application context */
+    private final Context mContext;
+
+    /** The running refreshes by account */
+    private final ConcurrentHashMap<Account, FutureTask<String>> mRefreshes = new ConcurrentHashMap<Account, FutureTask<String>>();
+
+    /** The scheduled refreshes by account */
+    private final ConcurrentHashMap<Account, ScheduledFuture<?>> mScheduledRefreshes = new ConcurrentHashMap<Account, ScheduledFuture<?>>();
+
+    /** Runs the scheduled refreshes, created when the first refresh is scheduled */
+    private ScheduledThreadPoolExecutor mScheduler = null;
+
+    /** The number of refreshes made through the refresher */
+    private final AtomicLong mRefreshCount = new AtomicLong();
+
+    /** The number of callers that waited for a refresh started by another caller */
+    private final AtomicLong mSharedCount = new AtomicLong();
+
+    /** The number of callers whose token had already been refreshed by another caller */
+    private final AtomicLong mAlreadyRefreshedCount = new AtomicLong();
+
+    /**
+     * Private constructor.
+     * @param context the context
+     */
+    private TokenRefreshCoordinator(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Obtain the token of an account, refreshing it first if it expires within the
+     * {@link #REFRESH_MARGIN_MILLIS refresh margin}.
+     * @param account the account
+     * @return the token, or null if the account has no token or the user has to sign in again
+     * @throws IOException if the token had to be refreshed, but the refresh failed
+     */
+    @Nullable
+    @WorkerThread
+    public String getValidToken(@NonNull Account account) throws IOException {
+        AccountManager accountManager = AccountManager.get(mContext);
+        String authToken = accountManager.getUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN);
+        if (authToken == null || mRefresher == null || !isExpiring(accountManager, account)) return authToken;
+        else return refresh(account, authToken);
+    }
+
+    /**
+     * Refreshes the token of an account after it has been rejected.
+     * If the token has already been replaced since it was handed out, the new token is returned instead.
+     * @param account the account
+     * @param rejectedToken the rejected token, or null to refresh the current token
+     * @return the new token, or null if the user has to sign in again
+     * @throws IOException if the refresh failed
+     */
+    @Nullable
+    @WorkerThread
+    public String refreshToken(
+            @NonNull Account account,
+            @Nullable String rejectedToken) throws IOException {
+
+        if (mRefresher == null) return null;
+        if (rejectedToken == null) {
+            rejectedToken = AccountManager.get(mContext).getUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN);
+        }
+        return refresh(account, rejectedToken);
+    }
+
+    /**
+     * Stores the expiry time of the current token of an account,
+     * and schedules its refresh.
+     * @param account the account
+     * @param expiryTime the expiry time in milliseconds since the epoch
+     */
+    public void setTokenExpiry(
+            @NonNull Account account,
+            long expiryTime) {
+
+        AccountManager accountManager = AccountManager.get(mContext);
+        long refreshTime = getRefreshTime(expiryTime, System.currentTimeMillis());
+        accountManager.setUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN_EXPIRY, Long.toString(expiryTime));
+        // A token that can't be refreshed ahead is refreshed once it has expired
+        accountManager.setUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN_REFRESH_TIME,
+                Long.toString(refreshTime > 0 ? refreshTime : expiryTime));
+
+        if (refreshTime > 0) scheduleRefresh(account, refreshTime);
+        else cancelScheduledRefresh(account);
+    }
+
+    /** Obtain the number of refreshes made through the refresher. */
+    public long getRefreshCount() {
+        return mRefreshCount.get();
+    }
+
+    /** Obtain the number of callers that shared a refresh started by another caller. */
+    public long getSharedCount() {
+        return mSharedCount.get();
+    }
+
+    /** Obtain the number of callers whose token had already been refreshed by another caller. */
+    public long getAlreadyRefreshedCount() {
+        return mAlreadyRefreshedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return TAG + "{refreshes=" + getRefreshCount()
+                + ", shared=" + getSharedCount()
+                + ", alreadyRefreshed=" + getAlreadyRefreshedCount() + "}";
+    }
+
+    /**
+     * Refreshes the token of an account, or waits for the refresh that is already running.
+     * @param account the account
+     * @param staleToken the token that has to be replaced
+     */
+    private String refresh(
+            @NonNull final Account account,
+            @Nullable final String staleToken) throws IOException {
+
+        FutureTask<String> refresh = new FutureTask<String>(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return refreshOnce(account, staleToken);
+            }
+        });
+        FutureTask<String> running = mRefreshes.putIfAbsent(account, refresh);
+        if (running == null) {
+            // Run the refresh on this thread, other callers wait for it
+            try {
+                refresh.run();
+            } finally {
+                mRefreshes.remove(account, refresh);
+            }
+            running = refresh;
+        } else {
+            mSharedCount.incrementAndGet();
+        }
+
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the token refresh");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Refreshes the token of an account through the refresher, unless it has already been replaced,
+     * and writes the new token to the account manager.
+     * Never runs concurrently for the same account.
+     * @param account the account
+     * @param staleToken the token that has to be replaced
+     */
+    private String refreshOnce(
+            @NonNull Account account,
+            @Nullable String staleToken) throws IOException {
+
+        AccountManager accountManager = AccountManager.get(mContext);
+        String authToken = accountManager.getUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN);
+        if (authToken != null && !authToken.equals(staleToken) && !isExpiring(accountManager, account)) {
+            mAlreadyRefreshedCount.incrementAndGet();
+            return authToken;
+        }
+
+        Refresher refresher = mRefresher;
+        if (refresher == null) return null;
+
+        mRefreshCount.incrementAndGet();
+        Bundle accountData = AccountDataCache.getInstance(mContext).getAccountData(accountManager, account);
+        Pair<String, Long> refreshed = refresher.refresh(account, authToken, accountData);
+        if (refreshed == null || refreshed.first == null) {
+            // The user has to sign in again, forget the token so it isn't refreshed on every request
+            accountManager.setAuthToken(account, AccountConstants.KEY_ACCOUNT_TOKEN, null);
+            accountManager.setUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN, null);
+            accountManager.setUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN_EXPIRY, null);
+            accountManager.setUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN_REFRESH_TIME, null);
+            AccountDataCache.getInstance(mContext).invalidate(account);
+            cancelScheduledRefresh(account);
+            return null;
+        }
+
+        // Write the new token once, for every caller of this refresh
+        accountManager.setAuthToken(account, AccountConstants.KEY_ACCOUNT_TOKEN, refreshed.first);
+        accountManager.setUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN, refreshed.first);
+        AccountDataCache.getInstance(mContext).invalidate(account);
+        if (refreshed.second != null) {
+            setTokenExpiry(account, refreshed.second);
+        } else {
+            accountManager.setUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN_EXPIRY, null);
+            accountManager.setUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN_REFRESH_TIME, null);
+            cancelScheduledRefresh(account);
+        }
+        return refreshed.first;
+    }
+
+    /**
+     * Checks if the current token of an account has reached its refresh time.
+     * @param accountManager the account manager
+     * @param account the account
+     * @return true if the token has to be refreshed, false if it doesn't or its expiry time is unknown
+     */
+    private boolean isExpiring(AccountManager accountManager, Account account) {
+        String expiry = accountManager.getUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN_EXPIRY);
+        if (expiry == null) return false;
+        try {
+            long now = System.currentTimeMillis();
+            long expiryTime = Long.parseLong(expiry);
+            if (now >= expiryTime) return true;
+
+            // Tokens stored by older versions have no refresh time
+            String refreshTime = accountManager.getUserData(account, AccountConstants.KEY_ACCOUNT_TOKEN_REFRESH_TIME);
+            if (refreshTime == null) return now >= expiryTime - REFRESH_MARGIN_MILLIS;
+            else return now >= Long.parseLong(refreshTime);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Obtain the time a token is refreshed ahead of its expiry.
+     * That is the {@link #REFRESH_MARGIN_MILLIS refresh margin} before the expiry,
+     * but no sooner than halfway through the remaining lifetime.
+     * @param expiryTime the expiry time of the token in milliseconds since the epoch
+     * @param now the current time in milliseconds since the epoch
+     * @return the refresh time in milliseconds since the epoch,
+     * or 0 if the token expires too soon to be refreshed ahead
+     */
+    private static long getRefreshTime(long expiryTime, long now) {
+        long remaining = expiryTime - now;
+        long delay = Math.max(remaining - REFRESH_MARGIN_MILLIS, remaining / 2);
+        if (delay < MIN_REFRESH_DELAY_MILLIS) return 0;
+        else return now + delay;
+    }
+
+    /**
+     * Schedules the refresh of the token of an account, replacing any scheduled refresh.
+     * @param account the account
+     * @param refreshTime the refresh time of the token in milliseconds since the epoch
+     */
+    private void scheduleRefresh(
+            @NonNull final Account account,
+            long refreshTime) {
+
+        long delay = Math.max(0, refreshTime - System.currentTimeMillis());
+        ScheduledFuture<?> scheduled = getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    getValidToken(account);
+                } catch (IOException e) {
+                    // The token is refreshed again when it is requested
+                    if (BuildConfig.DEBUG) Log.w(TAG, "Unable to refresh the token of " + account.name, e);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+
+        ScheduledFuture<?> previous = mScheduledRefreshes.put(account, scheduled);
+        if (previous != null) previous.cancel(false);
+    }
+
+    /**
+     * Cancels the scheduled refresh of the token of an account.
+     * Call this when the account is removed.
+     * @param account the account
+     */
+    public void cancelScheduledRefresh(@NonNull Account account) {
+        ScheduledFuture<?> scheduled = mScheduledRefreshes.remove(account);
+        if (scheduled != null) scheduled.cancel(false);
+    }
+
+    /** Obtain the executor that runs the scheduled refreshes on a low priority thread. */
+    private synchronized ScheduledThreadPoolExecutor getScheduler() {
+        if (mScheduler == null) {
+            mScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, TAG);
+                }
+            });
+        }
+        return mScheduler;
+    }
+
+    /** Obtains new tokens from the server */
+    public interface Refresher {
+
+        /**
+         * Obtains a new token for an account.
+         * Called on a background thread, never concurrently for the same account.
+         * @param account the account
+         * @param authToken the current token, which may have been rejected or be about to expire
+         * @param accountData the account data
+         * @return the new token and its expiry time in milliseconds since the epoch (or null if it's unknown),
+         * or null if the user has to sign in again
+         * @throws IOException if the server couldn't be reached, the current token is kept
+         */
+        @Nullable
+        Pair<String, Long> refresh(
+                @NonNull Account account,
+                @Nullable String authToken,
+                @Nullable Bundle accountData) throws IOException;
+    }
+}
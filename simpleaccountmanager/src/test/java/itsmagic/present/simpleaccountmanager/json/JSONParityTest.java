@@ -0,0 +1,247 @@
+package itsmagic.present.simpleaccountmanager.json;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link JSONReader}, {@link JSONPushParser} and {@link JSONValidator}
+ * accept exactly the same input as {@link JSONTokener}, and build the same values.
+ */
+public class JSONParityTest {
+
+    /** The chunk sizes that the input is fed to the push parser with */
+    private static final int[] CHUNK_SIZES = {1, 2, 3, 7, Integer.MAX_VALUE};
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Documents that the tokener accepts */
+    private static final String[] VALID = {
+            "{}",
+            "[]",
+            "{\"a\":1}",
+            "[1,2,3]",
+            "{\"a\":{\"b\":[1,{\"c\":null}]}}",
+            "[true,false,null]",
+            "[\"\",\"a\",\"\\\"\\\\\\/\\b\\f\\n\\r\\t\"]",
+            "[\"\\u0041\\u00e9\\u20ac\\uD83D\\uDE00\"]",
+            "[\"\\u-001\"]",
+            "[\"caf\u00e9 \u20ac \uD83D\uDE00\"]",
+            "[0,-0,1,-1,2147483647,-2147483648,2147483648,-2147483649]",
+            "[9223372036854775807,-9223372036854775808,9223372036854775808]",
+            "[1.0,1.5,-1.5,1e3,1E-3,1.5e+10,0.1,123456789.123456789]",
+            "[0x1F,-0x1F,010,07]",
+            "{\"NaN\":\"NaN\",\"Infinity\":\"-Infinity\"}",
+            "[NaN,Infinity,-Infinity]",
+            "\ufeff{\"bom\":true}",
+            "  \t\r\n{ \"a\" : 1 , \"b\" : 2 }  ",
+            "{a:1,b:true,c:null,d:text}",
+            "{'a':'single quoted','b':\"mixed\"}",
+            "{\"a\"=1,\"b\"=>2;\"c\":3}",
+            "[1;2;3]",
+            "[,]",
+            "[1,,2]",
+            "[1,]",
+            "[,1]",
+            "{\"a\":1,}",
+            "// comment\n{\"a\":1}",
+            "/* block */[1,/* inside */2]",
+            "# hash comment\n[1]",
+            "[1] trailing content",
+            "{\"a\":1}{\"b\":2}",
+            "{\"a\":1,\"a\":1}",
+            "[{\"a\":[]},{\"b\":{}},[[[]]]]",
+            "{\"product\":{\"id\":10001,\"name\":\"Vintage Item #1\",\"current_bid\":150725.75,"
+                    + "\"is_closed\":false,\"end_time\":1514764860000,"
+                    + "\"images\":[\"https://example.com/products/1/0.jpg\"]}}",
+    };
+
+    /** Documents that the tokener rejects, or that aren't objects or arrays */
+    private static final String[] INVALID = {
+            "",
+            "   ",
+            "{",
+            "[",
+            "}",
+            "]",
+            "{\"a\"",
+            "{\"a\":",
+            "{\"a\":1",
+            "[1,2",
+            "{\"a\" 1}",
+            "{1:1}",
+            "{:1}",
+            "{\"a\":1 \"b\":2}",
+            "[1 2]",
+            "[\"unterminated]",
+            "[\"bad escape \\u12\"]",
+            "[\"bad escape \\uXYZW\"]",
+            "/* unterminated [1]",
+            "/ [1]",
+            "{\"a\":NaN}",
+            "{\"a\":Infinity}",
+            "\"string\"",
+            "1",
+            "true",
+            "null",
+    };
+
+    @Test
+    public void readerBuildsSameValues() throws Exception {
+        for (String json : getDocuments()) {
+            String expected = parseWithTokener(json);
+            String actual;
+            try {
+                actual = describe(new JSONReader(json).nextValue());
+            } catch (JSONException e) {
+                actual = describe(e);
+            }
+            assertEquals(json, expected, actual);
+        }
+    }
+
+    @Test
+    public void pushParserBuildsSameValues() throws Exception {
+        for (String json : getDocuments()) {
+            String expected = parseWithTokener(json);
+            for (int chunkSize : CHUNK_SIZES) {
+                assertEquals(json + " in chunks of " + chunkSize, expected, pushChars(json, chunkSize));
+                assertEquals(json + " in byte chunks of " + chunkSize, expected, pushBytes(json, chunkSize));
+            }
+        }
+    }
+
+    @Test
+    public void pushParserListensAtDepth() throws Exception {
+        final List<String> values = new ArrayList<String>();
+        JSONPushParser parser = new JSONPushParser(2, new JSONPushParser.Listener() {
+            @Override
+            public void onValue(String name, Object value) {
+                values.add(name + "=" + describe(value));
+            }
+        });
+        parser.feed("{\"items\":[{\"id\":1},{\"id\":2}],\"total\":2}");
+
+        assertEquals("[null={id=Integer:1}, null={id=Integer:2}]", values.toString());
+        assertEquals("{items=[], total=Integer:2}", describe(parser.end()));
+    }
+
+    @Test
+    public void validatorAcceptsSameDocuments() throws Exception {
+        for (String json : getDocuments()) {
+            Object value;
+            try {
+                value = new JSONTokener(json).nextValue();
+            } catch (JSONException e) {
+                value = null;
+            }
+            boolean expected = value instanceof JSONObject || value instanceof JSONArray;
+            assertEquals(json, expected, JSONValidator.isValid(json));
+        }
+        assertEquals(false, JSONValidator.isValid(null));
+    }
+
+    /**
+     * Obtain every document of the test, valid or not.
+     * <p/>
+     * Each valid document is also truncated at every position, which covers the end of input in every state.
+     */
+    private static List<String> getDocuments() {
+        List<String> documents = new ArrayList<String>();
+        Collections.addAll(documents, VALID);
+        Collections.addAll(documents, INVALID);
+        for (String json : VALID) {
+            for (int i = 1; i < json.length(); i++) {
+                documents.add(json.substring(0, i));
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * Parses a document with {@link JSONTokener}, the reference parser.
+     * @return the description of the value, or of the error
+     */
+    private static String parseWithTokener(String json) {
+        try {
+            return describe(new JSONTokener(json).nextValue());
+        } catch (JSONException e) {
+            return describe(e);
+        }
+    }
+
+    /**
+     * Parses a document with {@link JSONPushParser}, fed as characters.
+     * @return the description of the value, or of the error
+     */
+    private static String pushChars(String json, int chunkSize) {
+        JSONPushParser parser = new JSONPushParser(-1, null);
+        try {
+            for (int i = 0; i < json.length(); i += chunkSize) {
+                parser.feed(json.substring(i, (int) Math.min((long) i + chunkSize, json.length())));
+            }
+            return describe(parser.end());
+        } catch (JSONException e) {
+            return describe(e);
+        }
+    }
+
+    /**
+     * Parses a document with {@link JSONPushParser}, fed as UTF-8 bytes that may split a character.
+     * @return the description of the value, or of the error
+     */
+    private static String pushBytes(String json, int chunkSize) {
+        byte[] bytes = json.getBytes(UTF_8);
+        JSONPushParser parser = new JSONPushParser(-1, null);
+        try {
+            for (int i = 0; i < bytes.length; i += chunkSize) {
+                parser.feed(bytes, i, (int) Math.min((long) chunkSize, bytes.length - i));
+            }
+            return describe(parser.end());
+        } catch (JSONException e) {
+            return describe(e);
+        }
+    }
+
+    /**
+     * Describes a parsed value, including the type of every number,
+     * so that an Integer and a Long of the same value don't compare equal.
+     */
+    private static String describe(Object value) {
+        if (value == null) return "omitted";
+        if (value == JSONObject.NULL) return "null";
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            List<String> names = new ArrayList<String>(object.keySet());
+            Collections.sort(names);
+            StringBuilder builder = new StringBuilder("{");
+            for (String name : names) {
+                if (builder.length() > 1) builder.append(", ");
+                builder.append(name).append('=').append(describe(object.opt(name)));
+            }
+            return builder.append('}').toString();
+        }
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            StringBuilder builder = new StringBuilder("[");
+            for (int i = 0; i < array.length(); i++) {
+                if (i > 0) builder.append(", ");
+                builder.append(describe(array.opt(i)));
+            }
+            return builder.append(']').toString();
+        }
+        return value.getClass().getSimpleName() + ":" + value;
+    }
+
+    /**
+     * Describes a parse error. The messages differ between the parsers, so only the failure is compared.
+     */
+    private static String describe(JSONException e) {
+        return "error";
+    }
+}
@@ -0,0 +1,175 @@
+package itsmagic.present.simpleaccountmanager.util;
+
+import android.os.Bundle;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+
+import itsmagic.present.simpleaccountmanager.json.JSONException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that every value a {@link Bundle} can hold survives the {@link AccountDataCodec} round trip.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 23)
+public class AccountDataCodecTest {
+
+    @Test
+    public void roundTripsEveryType() throws Exception {
+        Bundle bundle = createBundle();
+        Bundle nested = createBundle();
+        nested.putBundle("empty_bundle", new Bundle());
+        bundle.putBundle("bundle", nested);
+
+        assertBundleEquals(bundle, AccountDataCodec.decode(AccountDataCodec.encode(bundle)));
+    }
+
+    @Test
+    public void roundTripsEmptyBundle() throws Exception {
+        Bundle decoded = AccountDataCodec.decode(AccountDataCodec.encode(new Bundle()));
+        assertTrue(decoded.isEmpty());
+    }
+
+    @Test
+    public void encodingIsRecognized() throws Exception {
+        assertTrue(AccountDataCodec.isEncoded(AccountDataCodec.encode(createBundle())));
+        assertFalse(AccountDataCodec.isEncoded("{\"name\":\"John\"}"));
+        assertFalse(AccountDataCodec.isEncoded(""));
+        assertFalse(AccountDataCodec.isEncoded(null));
+    }
+
+    @Test
+    public void decodesLegacyJson() throws Exception {
+        Bundle decoded = AccountDataCodec.decode("{\"name\":\"John\",\"age\":30}");
+        assertEquals("John", decoded.getString("name"));
+        assertEquals("30", decoded.getString("age"));
+    }
+
+    @Test
+    public void rejectsTruncatedData() throws Exception {
+        String encoded = AccountDataCodec.encode(createBundle());
+        for (int i = 1; i < encoded.length(); i++) {
+            try {
+                AccountDataCodec.decode(encoded.substring(0, i));
+                fail("Decoded data truncated at " + i);
+            } catch (JSONException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void toStringBundleKeepsJsonValues() throws Exception {
+        Bundle bundle = new Bundle();
+        bundle.putString("string", "text");
+        bundle.putInt("int", 5);
+        bundle.putBoolean("boolean", true);
+
+        Bundle strings = AccountDataCodec.toStringBundle(AccountDataCodec.decode(AccountDataCodec.encode(bundle)));
+        assertEquals("text", strings.getString("string"));
+        assertEquals("5", strings.getString("int"));
+        assertEquals("true", strings.getString("boolean"));
+    }
+
+    /**
+     * Creates a bundle with a value of every type, including the edge values of each type.
+     */
+    private static Bundle createBundle() {
+        byte[] allBytes = new byte[256];
+        for (int i = 0; i < allBytes.length; i++) allBytes[i] = (byte) i;
+
+        HashMap<String, Integer> serializable = new HashMap<String, Integer>();
+        serializable.put("one", 1);
+
+        Bundle bundle = new Bundle();
+        bundle.putString("null", null);
+        bundle.putString("string", "caf\u00e9 \u20ac \uD83D\uDE00 \u0000 \"quoted\" {json}");
+        bundle.putString("empty_string", "");
+        bundle.putCharSequence("char_sequence", new StringBuilder("builder"));
+        bundle.putBoolean("boolean", true);
+        bundle.putBoolean("boolean_false", false);
+        bundle.putByte("byte", Byte.MIN_VALUE);
+        bundle.putChar("char", '\uffff');
+        bundle.putShort("short", Short.MIN_VALUE);
+        bundle.putInt("int", Integer.MIN_VALUE);
+        bundle.putInt("int_max", Integer.MAX_VALUE);
+        bundle.putLong("long", Long.MIN_VALUE);
+        bundle.putLong("long_max", Long.MAX_VALUE);
+        bundle.putFloat("float", -Float.MAX_VALUE);
+        bundle.putFloat("float_nan", Float.NaN);
+        bundle.putDouble("double", Double.MIN_VALUE);
+        bundle.putDouble("double_negative_zero", -0.0);
+        bundle.putDouble("double_infinity", Double.NEGATIVE_INFINITY);
+        bundle.putBooleanArray("boolean_array", new boolean[] {true, false, true});
+        bundle.putByteArray("byte_array", allBytes);
+        bundle.putByteArray("empty_byte_array", new byte[0]);
+        bundle.putCharArray("char_array", new char[] {'a', '\u0000', '\uD83D', '\uDE00'});
+        bundle.putShortArray("short_array", new short[] {Short.MIN_VALUE, 0, Short.MAX_VALUE});
+        bundle.putIntArray("int_array", new int[] {Integer.MIN_VALUE, -1, 0, 1, Integer.MAX_VALUE});
+        bundle.putIntArray("empty_int_array", new int[0]);
+        bundle.putLongArray("long_array", new long[] {Long.MIN_VALUE, 0, Long.MAX_VALUE});
+        bundle.putFloatArray("float_array", new float[] {Float.MIN_VALUE, Float.NaN, Float.POSITIVE_INFINITY});
+        bundle.putDoubleArray("double_array", new double[] {-Double.MAX_VALUE, 0.1, Double.NaN});
+        bundle.putStringArray("string_array", new String[] {"a", null, ""});
+        bundle.putCharSequenceArray("char_sequence_array", new CharSequence[] {"a", new StringBuilder("b"), null});
+        bundle.putStringArrayList("string_list", new ArrayList<String>(Arrays.asList("a", null, "")));
+        bundle.putIntegerArrayList("integer_list", new ArrayList<Integer>(Arrays.asList(Integer.MIN_VALUE, null, 0)));
+        bundle.putCharSequenceArrayList("char_sequence_list",
+                new ArrayList<CharSequence>(Arrays.<CharSequence>asList("a", new StringBuilder("b"), null)));
+        bundle.putSerializable("serializable", serializable);
+        bundle.putSerializable("date", new Date(1514764800000L));
+        return bundle;
+    }
+
+    /**
+     * Asserts that two bundles have the same keys and values,
+     * where a {@link CharSequence} is decoded as a String with the same characters.
+     */
+    private static void assertBundleEquals(Bundle expected, Bundle actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (String key : expected.keySet()) {
+            Object expectedValue = normalize(expected.get(key));
+            Object actualValue = normalize(actual.get(key));
+            if (expectedValue instanceof Bundle) {
+                assertTrue(key, actualValue instanceof Bundle);
+                assertBundleEquals((Bundle) expectedValue, (Bundle) actualValue);
+            } else {
+                assertEquals(key, expectedValue == null ? null : expectedValue.getClass(),
+                        actualValue == null ? null : actualValue.getClass());
+                assertTrue(key + ": expected " + expectedValue + " but was " + actualValue,
+                        Arrays.deepEquals(new Object[] {expectedValue}, new Object[] {actualValue}));
+            }
+        }
+    }
+
+    /**
+     * Replaces the CharSequences in a value with Strings, as the codec stores their characters only.
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof CharSequence) {
+            return value.toString();
+        } else if (value instanceof CharSequence[]) {
+            CharSequence[] array = (CharSequence[]) value;
+            String[] strings = new String[array.length];
+            for (int i = 0; i < array.length; i++) strings[i] = array[i] == null ? null : array[i].toString();
+            return strings;
+        } else if (value instanceof ArrayList) {
+            ArrayList<Object> list = new ArrayList<Object>();
+            for (Object element : (ArrayList<?>) value) list.add(element instanceof CharSequence ? element.toString() : element);
+            return list;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,165 @@
+package itsmagic.present.simpleaccountmanager.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a {@link MappedPreferenceStore} keeps its values across reopening,
+ * and recovers the values before a record that was torn by a crash.
+ */
+public class MappedPreferenceStoreTest {
+
+    /** The size of the file header, magic and version */
+    private static final int HEADER_SIZE = 8;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("account", ".store");
+        if (!mFile.delete()) throw new IllegalStateException("Unable to delete " + mFile);
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+        new File(mFile.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void keepsValuesAfterReopening() throws Exception {
+        MappedPreferenceStore store = new MappedPreferenceStore(mFile, null);
+        store.putString("name", "john.doe@email.com");
+        store.putString("removed", "value");
+        store.putBoolean("selected", true);
+        store.remove("removed");
+        store.putString("name", "jane.doe@email.com");
+
+        store = new MappedPreferenceStore(mFile, null);
+        assertEquals("jane.doe@email.com", store.getString("name"));
+        assertTrue(store.contains("selected"));
+        assertFalse(store.contains("removed"));
+    }
+
+    @Test
+    public void keepsValuesAfterCompaction() throws Exception {
+        MappedPreferenceStore store = new MappedPreferenceStore(mFile, null);
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            value.append(i);
+            store.putString("key" + i % 10, value.toString());
+        }
+
+        store = new MappedPreferenceStore(mFile, null);
+        for (int i = 190; i < 200; i++) {
+            assertEquals(value.substring(0, value.length() - (199 - i) * 3), store.getString("key" + i % 10));
+        }
+    }
+
+    @Test
+    public void discardsTornRecord() throws Exception {
+        MappedPreferenceStore store = new MappedPreferenceStore(mFile, null);
+        store.putString("name", "john.doe@email.com");
+        int end = getRecordsEnd();
+        store.putString("token", "abcdef");
+        store.putBoolean("selected", true);
+
+        // The length of the token record made it to the disk, but its body is garbage
+        corrupt(end + 10);
+
+        store = new MappedPreferenceStore(mFile, null);
+        assertEquals("john.doe@email.com", store.getString("name"));
+        assertNull(store.getString("token"));
+        assertFalse(store.contains("selected"));
+
+        // Everything after the torn record is erased, so a record of the same length that is appended in its place
+        // doesn't bring back the records that followed it
+        store.putString("token", "ghijkl");
+        store = new MappedPreferenceStore(mFile, null);
+        assertEquals("john.doe@email.com", store.getString("name"));
+        assertEquals("ghijkl", store.getString("token"));
+        assertFalse(store.contains("selected"));
+    }
+
+    @Test
+    public void discardsRecordPastEndOfFile() throws Exception {
+        MappedPreferenceStore store = new MappedPreferenceStore(mFile, null);
+        store.putString("name", "john.doe@email.com");
+        int end = getRecordsEnd();
+
+        // A record length that points past the end of the file
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(end);
+            file.writeInt((int) file.length());
+        } finally {
+            file.close();
+        }
+
+        store = new MappedPreferenceStore(mFile, null);
+        assertEquals("john.doe@email.com", store.getString("name"));
+        store.putBoolean("selected", true);
+        store = new MappedPreferenceStore(mFile, null);
+        assertTrue(store.contains("selected"));
+    }
+
+    @Test
+    public void startsEmptyForUnrecognizedFile() throws Exception {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.writeBytes("not a store file");
+        } finally {
+            file.close();
+        }
+
+        MappedPreferenceStore store = new MappedPreferenceStore(mFile, null);
+        assertFalse(store.contains("name"));
+        store.putString("name", "john.doe@email.com");
+        store = new MappedPreferenceStore(mFile, null);
+        assertEquals("john.doe@email.com", store.getString("name"));
+    }
+
+    /**
+     * Obtain the end of the records in the file, which is followed by a zero length.
+     */
+    private int getRecordsEnd() throws Exception {
+        RandomAccessFile file = new RandomAccessFile(mFile, "r");
+        try {
+            int position = HEADER_SIZE;
+            file.seek(position);
+            int length;
+            while ((length = file.readInt()) != 0) {
+                position += 8 + length;
+                file.seek(position);
+            }
+            return position;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Flips a byte of the file.
+     * @param position the position of the byte
+     */
+    private void corrupt(int position) throws Exception {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xff);
+        } finally {
+            file.close();
+        }
+    }
+}